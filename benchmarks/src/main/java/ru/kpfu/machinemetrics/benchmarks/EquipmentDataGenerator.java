@@ -0,0 +1,62 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded synthetic samples of one equipment, laid out the way the repository returns them: the record before the
+ * period first, times truncated to minutes and sorted.
+ */
+public final class EquipmentDataGenerator {
+
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    private EquipmentDataGenerator() {
+    }
+
+    public static EquipmentDataBuffer generate(
+            long seed,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            Duration step,
+            Toggling toggling
+    ) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long stepSeconds = step.toSeconds();
+        long startSecond = start.toEpochSecond();
+        long endSecond = end.toEpochSecond();
+
+        EquipmentDataBuffer result = new EquipmentDataBuffer((int) ((endSecond - startSecond) / stepSeconds) + 2);
+        result.setEquipmentId(1L);
+
+        boolean enabled = random.nextBoolean();
+        result.add(startSecond - stepSeconds, 220d, enabled, true);
+        for (long time = startSecond + random.nextLong(stepSeconds); time < endSecond; time += stepSeconds) {
+            if (random.nextDouble() < toggling.getProbability()) {
+                enabled = !enabled;
+            }
+            result.add(time, enabled ? 200d + random.nextDouble() * 40 : 0d, enabled, true);
+        }
+        result.truncateTimes(SECONDS_PER_MINUTE);
+        result.sortByTime();
+        return result;
+    }
+
+    public enum Toggling {
+        SPARSE(0.001),
+        DENSE(0.3);
+
+        private final double probability;
+
+        Toggling(double probability) {
+            this.probability = probability;
+        }
+
+        public double getProbability() {
+            return probability;
+        }
+    }
+}
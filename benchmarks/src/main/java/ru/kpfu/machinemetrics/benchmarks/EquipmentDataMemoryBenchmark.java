@@ -0,0 +1,76 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples of one equipment loaded into the boxed {@link EquipmentData} list against {@link EquipmentDataBuffer}.
+ * <p>
+ * Run with {@code -prof gc}: {@code gc.alloc.rate.norm} divided by {@code samples} is the heap taken per sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EquipmentDataMemoryBenchmark {
+
+    private static final long SEED = 42;
+    private static final ZoneOffset ZONE = ZoneOffset.ofHours(3);
+    private static final long FIRST_SAMPLE = 1_680_000_000L;
+    private static final long STEP_SECONDS = 60;
+
+    @Param({"1440", "525600"})
+    private int samples;
+
+    @Benchmark
+    public List<EquipmentData> boxed() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<EquipmentData> result = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            long time = FIRST_SAMPLE + i * STEP_SECONDS;
+            result.add(
+                    EquipmentData.builder()
+                            .equipmentId(1L)
+                            .u(random.nextDouble() * 100)
+                            .enabled(random.nextBoolean())
+                            .time(OffsetDateTime.ofInstant(Instant.ofEpochSecond(time), ZONE))
+                            .duration(Duration.ofSeconds(STEP_SECONDS))
+                            .isReal(true)
+                            .build()
+            );
+        }
+        return result;
+    }
+
+    @Benchmark
+    public EquipmentDataBuffer columnar() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        EquipmentDataBuffer result = new EquipmentDataBuffer();
+        result.setEquipmentId(1L);
+        for (int i = 0; i < samples; i++) {
+            result.add(FIRST_SAMPLE + i * STEP_SECONDS, random.nextDouble() * 100, random.nextBoolean(), true);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.repository.LineProtocolEncoder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a batch of samples into the body of a write request, through {@code Point} like the client's
+ * {@code writePoints} does and through {@link LineProtocolEncoder}. Run with {@code -prof gc} to compare the
+ * allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineProtocolEncoderBenchmark {
+
+    private static final long SEED = 42;
+    private static final long START_SECOND = 1_685_566_800L;
+
+    @Param({"1", "1000"})
+    private int batchSize;
+
+    private List<EquipmentSample> samples;
+    private LineProtocolEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        samples = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            samples.add(new EquipmentSample(
+                    (long) random.nextInt(100),
+                    Instant.ofEpochSecond(START_SECOND + i, random.nextInt(1_000_000_000)),
+                    EquipmentInfluxDbData.builder()
+                            .u(Math.round(random.nextDouble() * 400_000) / 1000d)
+                            .enabled(random.nextBoolean())
+                            .build()
+            ));
+        }
+        encoder = new LineProtocolEncoder();
+    }
+
+    @Benchmark
+    public String point() {
+        List<String> lines = new ArrayList<>(samples.size());
+        for (var sample : samples) {
+            lines.add(Point.measurement("equipment_statistics")
+                    .addTag("equipment_id", sample.equipmentId().toString())
+                    .addField("u", sample.data().getU())
+                    .addField("enabled", sample.data().getEnabled())
+                    .time(sample.time(), WritePrecision.NS)
+                    .toLineProtocol());
+        }
+        return String.join("\n", lines);
+    }
+
+    @Benchmark
+    public String encoder() {
+        encoder.clear();
+        for (var sample : samples) {
+            encoder.encode(sample.equipmentId(), sample.time(), sample.data());
+        }
+        return encoder.toLineProtocol();
+    }
+
+    @Benchmark
+    public int encoderBytes() {
+        encoder.clear();
+        for (var sample : samples) {
+            encoder.encode(sample.equipmentId(), sample.time(), sample.data());
+        }
+        return encoder.size();
+    }
+}
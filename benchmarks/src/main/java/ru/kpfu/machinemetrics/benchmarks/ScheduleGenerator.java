@@ -0,0 +1,86 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import ru.kpfu.machinemetrics.model.Schedule;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded synthetic schedules: a global default, global and equipment weekdays, and {@code overrides} dated schedules
+ * spread over the period and over {@code equipmentCount} equipments.
+ */
+public final class ScheduleGenerator {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private ScheduleGenerator() {
+    }
+
+    public static List<Schedule> generate(
+            long seed,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            int equipmentCount,
+            int overrides
+    ) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Schedule> result = new ArrayList<>();
+        long id = 1;
+
+        result.add(schedule(random, id++, null, null, null));
+        for (int weekday = 1; weekday <= 7; weekday++) {
+            result.add(schedule(random, id++, weekday, null, null));
+            for (long equipmentId = 1; equipmentId <= equipmentCount; equipmentId++) {
+                result.add(schedule(random, id++, weekday, null, equipmentId));
+            }
+        }
+
+        OffsetDateTime firstDay = start.truncatedTo(ChronoUnit.DAYS);
+        long days = Math.max(1, ChronoUnit.DAYS.between(firstDay, end) + 1);
+        for (int i = 0; i < overrides; i++) {
+            OffsetDateTime date = firstDay.plusDays(random.nextLong(days));
+            Long equipmentId = random.nextInt(4) == 0 ? null : 1 + random.nextLong(equipmentCount);
+            result.add(schedule(random, id++, null, date, equipmentId));
+        }
+        return result;
+    }
+
+    /**
+     * The effective schedule of every day of the period, as {@code EquipmentDataService} passes it to the calculator.
+     */
+    public static Map<OffsetDateTime, Schedule> daily(long seed, OffsetDateTime start, OffsetDateTime end) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<OffsetDateTime, Schedule> result = new HashMap<>();
+        OffsetDateTime endDay = end.truncatedTo(ChronoUnit.DAYS);
+        long id = 1;
+        for (var day = start.truncatedTo(ChronoUnit.DAYS); !day.isAfter(endDay); day = day.plusDays(1)) {
+            result.put(day, schedule(random, id++, day.getDayOfWeek().getValue(), day, 1L));
+        }
+        return result;
+    }
+
+    private static Schedule schedule(
+            SplittableRandom random,
+            long id,
+            Integer weekday,
+            OffsetDateTime date,
+            Long equipmentId
+    ) {
+        int startTime = random.nextInt(MINUTES_PER_DAY / 2);
+        int endTime = startTime + random.nextInt(MINUTES_PER_DAY - startTime);
+        return Schedule.builder()
+                .id(id)
+                .weekday(weekday)
+                .date(date)
+                .equipmentId(equipmentId)
+                .isWorkday(random.nextInt(7) != 0)
+                .startTime(startTime)
+                .endTime(endTime)
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.repository.ScheduleRepository;
+import ru.kpfu.machinemetrics.service.ScheduleResolver;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the schedule of every day of the period, which is what {@code EquipmentDataService.getSchedules} does for
+ * every requested equipment. The first resolution after {@code invalidate()} also builds the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScheduleResolverBenchmark {
+
+    private static final long SEED = 42;
+    private static final int EQUIPMENT_COUNT = 50;
+    private static final OffsetDateTime END = OffsetDateTime.of(2023, 6, 1, 0, 0, 0, 0, ZoneOffset.ofHours(3));
+
+    @Param({"P1D", "P30D", "P365D"})
+    private String period;
+
+    @Param({"0", "100", "10000"})
+    private int overrides;
+
+    private OffsetDateTime start;
+    private ScheduleResolver scheduleResolver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        start = END.minus(Duration.parse(period));
+        List<Schedule> schedules = ScheduleGenerator.generate(SEED, start, END, EQUIPMENT_COUNT, overrides);
+        scheduleResolver = new ScheduleResolver(scheduleRepository(schedules));
+    }
+
+    @Benchmark
+    public void resolve(Blackhole blackhole) {
+        resolvePeriod(blackhole);
+    }
+
+    @Benchmark
+    public void invalidateAndResolve(Blackhole blackhole) {
+        scheduleResolver.invalidate();
+        resolvePeriod(blackhole);
+    }
+
+    private void resolvePeriod(Blackhole blackhole) {
+        OffsetDateTime endDay = END.truncatedTo(ChronoUnit.DAYS);
+        for (long equipmentId = 1; equipmentId <= EQUIPMENT_COUNT; equipmentId += 7) {
+            for (var day = start.truncatedTo(ChronoUnit.DAYS); !day.isAfter(endDay); day = day.plusDays(1)) {
+                blackhole.consume(scheduleResolver.resolve(equipmentId, day));
+            }
+        }
+    }
+
+    private static ScheduleRepository scheduleRepository(List<Schedule> schedules) {
+        return (ScheduleRepository) Proxy.newProxyInstance(
+                ScheduleRepository.class.getClassLoader(),
+                new Class<?>[]{ScheduleRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> schedules;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "ScheduleRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+}
@@ -0,0 +1,73 @@
+package ru.kpfu.machinemetrics.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.service.StatisticsCalculator;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatisticsCalculatorBenchmark {
+
+    private static final long SEED = 42;
+    private static final OffsetDateTime END = OffsetDateTime.of(2023, 6, 1, 0, 0, 0, 0, ZoneOffset.ofHours(3));
+
+    @Param({"PT1H", "P1D", "P30D", "P365D"})
+    private String period;
+
+    @Param({"PT10S", "PT1M"})
+    private String step;
+
+    @Param({"SPARSE", "DENSE"})
+    private EquipmentDataGenerator.Toggling toggling;
+
+    @Param({"true", "false"})
+    private boolean includeData;
+
+    private OffsetDateTime start;
+    private EquipmentDataBuffer equipmentData;
+    private Map<OffsetDateTime, Schedule> schedules;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        start = END.minus(Duration.parse(period));
+        equipmentData = EquipmentDataGenerator.generate(SEED, start, END, Duration.parse(step), toggling);
+        schedules = ScheduleGenerator.daily(SEED, start, END);
+    }
+
+    @Benchmark
+    public EquipmentStatisticsDto calculate() {
+        return StatisticsCalculator.calculate(
+                equipmentData,
+                List.of(),
+                new EquipmentDataBuffer(0),
+                schedules,
+                start,
+                END,
+                includeData
+        );
+    }
+}
@@ -7,21 +7,46 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.EncoderPoolProperties;
 import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
+import ru.kpfu.machinemetrics.properties.IngestionProperties;
+import ru.kpfu.machinemetrics.properties.PollingProperties;
+import ru.kpfu.machinemetrics.properties.ShardingProperties;
+import ru.kpfu.machinemetrics.properties.SpoolProperties;
+import ru.kpfu.machinemetrics.properties.StorageProperties;
+import ru.kpfu.machinemetrics.properties.WriterProperties;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.nio.file.Path;
 
 @Configuration
 @RequiredArgsConstructor
-@EnableConfigurationProperties({AppProperties.class, InfluxDbProperties.class})
+@EnableConfigurationProperties({
+        AppProperties.class,
+        InfluxDbProperties.class,
+        EncoderPoolProperties.class,
+        StorageProperties.class,
+        WriterProperties.class,
+        SpoolProperties.class,
+        IngestionProperties.class,
+        PollingProperties.class,
+        ShardingProperties.class
+})
 public class InfluxdAutoConfiguration {
 
     private final InfluxDbProperties influxDbProperties;
@@ -30,12 +55,22 @@ public class InfluxdAutoConfiguration {
 
     private final AppProperties appProperties;
 
+    private final StorageProperties storageProperties;
+
     @Bean
     @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
     public InfluxDBClient influxDBClient() {
         return InfluxDBClientFactory.create(influxDbProperties.getUrl(), influxDbProperties.getToken().toCharArray());
     }
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "app.storage.engine", havingValue = "embedded")
+    public SegmentStore segmentStore() {
+        return new SegmentStore(Path.of(storageProperties.getPath()));
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public ObjectMapper objectMapper() {
@@ -59,6 +94,27 @@ public class InfluxdAutoConfiguration {
         return new Queue(String.format("rk-%s-delete", appProperties.getName()), false);
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    public FanoutExchange replicaHeartbeatExchange() {
+        return new FanoutExchange(String.format("rk-%s-replicas", appProperties.getName()), false, false);
+    }
+
+    /**
+     * Queue of this replica only, which the broker deletes once the replica disconnects.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    public Queue replicaHeartbeatQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    public Binding replicaHeartbeatBinding() {
+        return BindingBuilder.bind(replicaHeartbeatQueue()).to(replicaHeartbeatExchange());
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -0,0 +1,21 @@
+package ru.kpfu.machinemetrics.listener;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.kpfu.machinemetrics.model.ReplicaHeartbeat;
+import ru.kpfu.machinemetrics.service.EquipmentShardService;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ReplicaHeartbeatListener {
+
+    private final EquipmentShardService equipmentShardService;
+
+    @RabbitListener(queues = "#{replicaHeartbeatQueue.name}")
+    public void listen(ReplicaHeartbeat in) {
+        equipmentShardService.onHeartbeat(in);
+    }
+}
@@ -0,0 +1,9 @@
+package ru.kpfu.machinemetrics.model;
+
+import java.time.Instant;
+
+/**
+ * One sample of an equipment waiting to be written.
+ */
+public record EquipmentSample(Long equipmentId, Instant time, EquipmentInfluxDbData data) {
+}
@@ -0,0 +1,10 @@
+package ru.kpfu.machinemetrics.model;
+
+import java.util.List;
+
+/**
+ * Samples that were accepted for writing but dropped before they reached the storage. The list is empty if the
+ * dropped samples are not known, such as when the oldest spool segments are dropped.
+ */
+public record EquipmentSamplesDroppedEvent(List<EquipmentSample> samples) {
+}
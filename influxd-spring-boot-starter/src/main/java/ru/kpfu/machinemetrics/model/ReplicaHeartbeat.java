@@ -0,0 +1,7 @@
+package ru.kpfu.machinemetrics.model;
+
+/**
+ * Heartbeat of a replica of the data service, or its goodbye when {@code leaving}.
+ */
+public record ReplicaHeartbeat(String replicaId, boolean leaving) {
+}
@@ -0,0 +1,15 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.encoder-pool")
+public class EncoderPoolProperties {
+
+    private int maxPooled = 8;
+
+    private int maxRetainedCapacity = 4 << 20;
+}
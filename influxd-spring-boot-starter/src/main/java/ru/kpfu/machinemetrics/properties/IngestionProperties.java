@@ -0,0 +1,40 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Which of the polled samples are written to the storage.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("app.ingestion")
+public class IngestionProperties {
+
+    private Mode mode = Mode.ALWAYS;
+
+    /**
+     * Smallest change of {@code u} since the last written sample that is written in the {@code changes} mode.
+     */
+    private double uDeadband = 1.0;
+
+    /**
+     * Longest time without a written sample in the {@code changes} mode.
+     */
+    private Duration heartbeat = Duration.ofMinutes(15);
+
+    public enum Mode {
+        /**
+         * Every polled sample is written.
+         */
+        ALWAYS,
+        /**
+         * A sample is written when {@code enabled} flips, {@code u} moves beyond {@code u-deadband} or
+         * {@code heartbeat} passed since the last written sample.
+         */
+        CHANGES
+    }
+}
@@ -0,0 +1,64 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Executor that polls the equipment on the cron ticks, off the scheduler thread.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("app.polling")
+public class PollingProperties {
+
+    private Threads threads = Threads.PLATFORM;
+
+    /**
+     * Threads of the platform pool.
+     */
+    private int poolSize = 8;
+
+    /**
+     * Polls of the platform pool waiting for a thread, above which a tick's polls are skipped.
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * Most equipments of a cron group polled by one task.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Longest time a poll runs before its thread is interrupted.
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+
+    /**
+     * Delay after the nominal tick from which the tick counts as late.
+     */
+    private Duration lateThreshold = Duration.ofSeconds(1);
+
+    /**
+     * Share of the cron period, from 0 to below 1, over which the polls of a tick are spread by equipment id.
+     */
+    private double jitter = 0;
+
+    /**
+     * Longest spread of the polls of a tick.
+     */
+    private Duration maxJitter = Duration.ofMinutes(1);
+
+    public enum Threads {
+        /**
+         * A fixed pool of {@code pool-size} threads.
+         */
+        PLATFORM,
+        /**
+         * A virtual thread per poll, or the platform pool where the runtime has no virtual threads.
+         */
+        VIRTUAL
+    }
+}
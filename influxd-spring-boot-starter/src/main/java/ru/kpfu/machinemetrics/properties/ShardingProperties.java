@@ -0,0 +1,40 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Split of the equipment between the replicas of the data service, which share {@code app.name}, its queues and its
+ * database.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("app.sharding")
+public class ShardingProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Id of this replica, such as the pod name, which keeps its share over restarts. A random one if not set.
+     */
+    private String replicaId;
+
+    /**
+     * Interval of the heartbeat, which also picks up the schedules changed through another replica. Spring reads it
+     * for the scheduling, so it has to be an ISO-8601 duration.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+    /**
+     * Time without a heartbeat after which a replica is taken for gone and its share is taken over.
+     */
+    private Duration replicaTimeout = Duration.ofSeconds(15);
+
+    /**
+     * Points of every replica on the hash ring; more points split the equipment more evenly.
+     */
+    private int virtualNodes = 128;
+}
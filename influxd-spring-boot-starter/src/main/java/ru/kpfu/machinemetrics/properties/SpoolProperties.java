@@ -0,0 +1,38 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * On-disk spool of the batching writer, which keeps the samples while the storage is unavailable.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("app.spool")
+public class SpoolProperties {
+
+    private boolean enabled = true;
+
+    private String path = "data/spool";
+
+    private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+    /**
+     * Size above which the oldest segments are dropped.
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(1);
+
+    /**
+     * Longest time appended samples stay in the page cache before the segment is synced to disk.
+     */
+    private Duration fsyncInterval = Duration.ofSeconds(1);
+
+    /**
+     * Pause before replaying again after the storage failed.
+     */
+    private Duration retryInterval = Duration.ofSeconds(5);
+}
@@ -0,0 +1,23 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.storage")
+public class StorageProperties {
+
+    private Engine engine = Engine.INFLUXDB;
+
+    /**
+     * Directory of the embedded engine, shared with the statistics service on the same host.
+     */
+    private String path = "data/segments";
+
+    public enum Engine {
+        INFLUXDB,
+        EMBEDDED
+    }
+}
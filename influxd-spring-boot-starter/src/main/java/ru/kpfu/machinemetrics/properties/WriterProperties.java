@@ -0,0 +1,44 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.writer")
+public class WriterProperties {
+
+    /**
+     * Whether samples are queued and written in batches rather than one request per sample.
+     */
+    private boolean enabled = true;
+
+    private int batchSize = 1000;
+
+    /**
+     * Longest time a queued sample waits for its batch to fill up.
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    private int queueCapacity = 10_000;
+
+    private Backpressure backpressure = Backpressure.BLOCK;
+
+    public enum Backpressure {
+        /**
+         * The polling task waits for room in the queue.
+         */
+        BLOCK,
+        /**
+         * The oldest queued sample is dropped.
+         */
+        DROP_OLDEST,
+        /**
+         * The queued samples and the sample are moved to the spool, see {@link SpoolProperties}.
+         */
+        SPILL
+    }
+}
@@ -0,0 +1,270 @@
+package ru.kpfu.machinemetrics.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.model.EquipmentSamplesDroppedEvent;
+import ru.kpfu.machinemetrics.properties.SpoolProperties;
+import ru.kpfu.machinemetrics.properties.WriterProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the samples and writes them to the storage engine in batches from a single thread, so a poll does not wait
+ * for a request per sample.
+ * <p>
+ * A batch is written once it has {@code batch-size} samples or its first sample waited {@code flush-interval}. A full
+ * queue is handled by {@code backpressure}. A batch that failed to be written goes to the spool, if it is enabled,
+ * and so do the following batches until the spool is replayed, which keeps the samples in order. Otherwise the batch
+ * is dropped. Dropped samples are published as an {@link EquipmentSamplesDroppedEvent}. The queue is written out on
+ * shutdown.
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(name = "app.writer.enabled", havingValue = "true", matchIfMissing = true)
+public class BatchingEquipmentStatisticsRepository implements EquipmentStatisticsRepository {
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final EquipmentStatisticsRepository storage;
+    private final WriterProperties writerProperties;
+    private final SpoolProperties spoolProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockingQueue<EquipmentSample> queue;
+    private final EquipmentSampleSpool spool;
+    private final Timer writeTimer;
+    private final Counter droppedCounter;
+    private final Counter spooledCounter;
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+    private volatile long retryAt = System.nanoTime();
+
+    public BatchingEquipmentStatisticsRepository(
+            @Qualifier(EquipmentStatisticsRepository.STORAGE) EquipmentStatisticsRepository storage,
+            WriterProperties writerProperties,
+            SpoolProperties spoolProperties,
+            ApplicationEventPublisher eventPublisher,
+            ObjectProvider<MeterRegistry> meterRegistryProvider
+    ) {
+        if (writerProperties.getBackpressure() == WriterProperties.Backpressure.SPILL && !spoolProperties.isEnabled()) {
+            throw new IllegalStateException("app.writer.backpressure=spill requires app.spool.enabled=true");
+        }
+        this.storage = storage;
+        this.writerProperties = writerProperties;
+        this.spoolProperties = spoolProperties;
+        this.eventPublisher = eventPublisher;
+        this.queue = new ArrayBlockingQueue<>(writerProperties.getQueueCapacity());
+        this.spool = spoolProperties.isEnabled()
+                ? new EquipmentSampleSpool(
+                        Path.of(spoolProperties.getPath()),
+                        spoolProperties.getSegmentSize().toBytes(),
+                        spoolProperties.getMaxSize().toBytes(),
+                        spoolProperties.getFsyncInterval()
+                )
+                : null;
+
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.writeTimer = Timer.builder("equipment-statistics.writer.write")
+                .description("Writes of a batch of samples to the storage")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("equipment-statistics.writer.dropped")
+                .description("Samples dropped because the queue or the spool was full or the write failed")
+                .register(meterRegistry);
+        this.spooledCounter = Counter.builder("equipment-statistics.writer.spooled")
+                .description("Samples appended to the spool")
+                .register(meterRegistry);
+        Gauge.builder("equipment-statistics.writer.queue-size", queue, BlockingQueue::size)
+                .description("Samples waiting to be written")
+                .register(meterRegistry);
+        if (spool != null) {
+            Gauge.builder("equipment-statistics.spool.size", spool, EquipmentSampleSpool::getPendingBytes)
+                    .description("Spooled samples waiting to be replayed")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("equipment-statistics.spool.replay-lag", spool, EquipmentSampleSpool::getReplayLagSeconds)
+                    .description("Age of the oldest spooled sample")
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+
+        this.flusher = new Thread(this::flush, "equipment-statistics-writer");
+        this.flusher.setDaemon(true);
+    }
+
+    @Override
+    public void save(Long equipmentId, Instant time, EquipmentInfluxDbData data) {
+        enqueue(new EquipmentSample(equipmentId, time, data));
+    }
+
+    @Override
+    public void saveAll(List<EquipmentSample> samples) {
+        samples.forEach(this::enqueue);
+    }
+
+    @PostConstruct
+    private void start() {
+        flusher.start();
+    }
+
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        running = false;
+        flusher.join(writerProperties.getFlushInterval().plus(SHUTDOWN_TIMEOUT).toMillis());
+        if (flusher.isAlive()) {
+            log.warn("Stopped with {} samples not written", queue.size());
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    private void enqueue(EquipmentSample sample) {
+        if (!running) {
+            writeOrSpool(List.of(sample));
+            return;
+        }
+        switch (writerProperties.getBackpressure()) {
+            case BLOCK -> {
+                try {
+                    queue.put(sample);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(List.of(sample));
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(sample)) {
+                    EquipmentSample oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(List.of(oldest));
+                    }
+                }
+            }
+            case SPILL -> {
+                if (!queue.offer(sample)) {
+                    List<EquipmentSample> samples = new ArrayList<>(queue.size() + 1);
+                    queue.drainTo(samples);
+                    samples.add(sample);
+                    spool(samples);
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        int batchSize = writerProperties.getBatchSize();
+        long flushIntervalNanos = writerProperties.getFlushInterval().toNanos();
+        while (running || !queue.isEmpty()) {
+            try {
+                boolean replay = running && spool != null && !spool.isEmpty() && System.nanoTime() - retryAt >= 0;
+                List<EquipmentSample> batch = new ArrayList<>(batchSize);
+                fill(batch, batchSize, replay ? 0 : flushIntervalNanos);
+                if (!batch.isEmpty()) {
+                    writeOrSpool(batch);
+                }
+                if (replay) {
+                    replay(batchSize);
+                }
+                if (spool != null) {
+                    spool.sync();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to write samples", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the first sample up to {@code waitNanos}, then for the batch to fill up until the first sample waited
+     * as long.
+     */
+    private void fill(List<EquipmentSample> batch, int batchSize, long waitNanos) throws InterruptedException {
+        EquipmentSample first = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        batch.add(first);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == batchSize || !running || remaining <= 0) {
+                return;
+            }
+            EquipmentSample next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeOrSpool(List<EquipmentSample> batch) {
+        if (spool != null && !spool.isEmpty()) {
+            spool(batch);
+            return;
+        }
+        try {
+            writeTimer.record(() -> storage.saveAll(batch));
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} samples", batch.size(), e);
+            if (spool != null) {
+                retryAt = System.nanoTime() + spoolProperties.getRetryInterval().toNanos();
+                spool(batch);
+            } else {
+                drop(batch);
+            }
+        }
+    }
+
+    private void replay(int batchSize) {
+        EquipmentSampleSpool.Batch spooled = spool.read(batchSize);
+        try {
+            writeTimer.record(() -> storage.saveAll(spooled.samples()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to replay {} spooled samples", spooled.samples().size(), e);
+            retryAt = System.nanoTime() + spoolProperties.getRetryInterval().toNanos();
+            return;
+        }
+        spool.commit(spooled);
+    }
+
+    private void spool(List<EquipmentSample> samples) {
+        int dropped = spool.append(samples);
+        spooledCounter.increment(samples.size());
+        if (dropped > 0) {
+            droppedCounter.increment(dropped);
+            eventPublisher.publishEvent(new EquipmentSamplesDroppedEvent(List.of()));
+        }
+    }
+
+    private void drop(List<EquipmentSample> samples) {
+        droppedCounter.increment(samples.size());
+        eventPublisher.publishEvent(new EquipmentSamplesDroppedEvent(List.copyOf(samples)));
+    }
+}
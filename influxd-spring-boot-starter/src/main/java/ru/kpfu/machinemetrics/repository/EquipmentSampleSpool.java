@@ -0,0 +1,336 @@
+package ru.kpfu.machinemetrics.repository;
+
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead spool of the samples not written to the storage yet: numbered append-only segment files of fixed-size
+ * records, replayed oldest first.
+ * <p>
+ * Appends are synced to disk at most once per {@code fsync-interval}, and a record cut short by a crash is truncated
+ * on open. The replay position is kept in a checkpoint file, so samples replayed after it was last written are
+ * replayed again after a restart. InfluxDB overwrites them, and the segment store repository skips samples not newer
+ * than the equipment's latest stored one. Above {@code max-size} the oldest segments are dropped.
+ */
+final class EquipmentSampleSpool {
+
+    private static final int RECORD_SIZE = 29;
+    private static final String SUFFIX = ".seg";
+    private static final int HAS_U = 1;
+    private static final int HAS_ENABLED = 2;
+    private static final int ENABLED = 4;
+
+    private final Path directory;
+    private final Path checkpointFile;
+    private final long segmentSize;
+    private final long maxSize;
+    private final long fsyncIntervalNanos;
+
+    private final Deque<Long> segments = new ArrayDeque<>();
+    private FileChannel output;
+    private long outputSize;
+    private long readOffset;
+    private boolean unsynced;
+    private long syncedAt = System.nanoTime();
+
+    private volatile long pendingBytes;
+    private volatile Instant oldestPendingTime;
+
+    EquipmentSampleSpool(Path directory, long segmentSize, long maxSize, Duration fsyncInterval) {
+        this.directory = directory;
+        this.checkpointFile = directory.resolve("checkpoint");
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        try {
+            Files.createDirectories(directory);
+            long[] checkpoint = readCheckpoint();
+            long next = checkpoint != null ? checkpoint[0] + 1 : 0;
+            try (Stream<Path> files = Files.list(directory)) {
+                for (long segment : files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(SUFFIX))
+                        .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                        .sorted()
+                        .toList()) {
+                    if (checkpoint != null && segment < checkpoint[0]) {
+                        Files.delete(segmentFile(segment));
+                    } else {
+                        segments.add(segment);
+                        next = Math.max(next, segment + 1);
+                    }
+                }
+            }
+            if (segments.isEmpty()) {
+                segments.add(next);
+            }
+            openOutput();
+            outputSize = output.size() - output.size() % RECORD_SIZE;
+            output.truncate(outputSize);
+
+            long bytes = 0;
+            for (long segment : segments) {
+                bytes += sizeOf(segment);
+            }
+            if (checkpoint != null && checkpoint[0] == segments.getFirst()) {
+                readOffset = Math.min(checkpoint[1], sizeOf(segments.getFirst()));
+            }
+            pendingBytes = bytes - readOffset;
+            advance();
+            updateOldestPendingTime();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isEmpty() {
+        return pendingBytes == 0;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    double getReplayLagSeconds() {
+        Instant oldest = oldestPendingTime;
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).toMillis() / 1000d);
+    }
+
+    /**
+     * Appends the samples and returns how many older samples were dropped to stay below {@code max-size}.
+     */
+    synchronized int append(List<EquipmentSample> samples) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        try {
+            if (outputSize >= segmentSize) {
+                roll();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(samples.size() * RECORD_SIZE);
+            samples.forEach(sample -> encode(buffer, sample));
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                outputSize += output.write(buffer, outputSize);
+            }
+            if (pendingBytes == 0) {
+                oldestPendingTime = samples.get(0).time();
+            }
+            pendingBytes += buffer.limit();
+            unsynced = true;
+            sync();
+            return dropOverflow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Syncs the appended samples to disk if the last sync was at least {@code fsync-interval} ago.
+     */
+    synchronized void sync() {
+        if (unsynced && System.nanoTime() - syncedAt >= fsyncIntervalNanos) {
+            force();
+        }
+    }
+
+    /**
+     * Up to {@code max} of the oldest samples, which stay in the spool until they are committed.
+     */
+    synchronized Batch read(int max) {
+        if (pendingBytes == 0) {
+            return new Batch(segments.getFirst(), readOffset, List.of());
+        }
+        long segment = segments.getFirst();
+        try (FileChannel input = FileChannel.open(segmentFile(segment), StandardOpenOption.READ)) {
+            int count = (int) Math.min(max, (sizeOf(segment) - readOffset) / RECORD_SIZE);
+            ByteBuffer buffer = readFully(input, readOffset, count * RECORD_SIZE);
+            List<EquipmentSample> samples = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                samples.add(decode(buffer));
+            }
+            return new Batch(segment, readOffset, samples);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes the batch from the spool, unless it was dropped meanwhile.
+     */
+    synchronized void commit(Batch batch) {
+        if (batch.samples().isEmpty() || batch.segment() != segments.getFirst() || batch.offset() != readOffset) {
+            return;
+        }
+        long bytes = (long) batch.samples().size() * RECORD_SIZE;
+        readOffset += bytes;
+        pendingBytes -= bytes;
+        try {
+            advance();
+            if (pendingBytes == 0) {
+                output.truncate(0);
+                outputSize = 0;
+                readOffset = 0;
+            }
+            writeCheckpoint();
+            updateOldestPendingTime();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void close() {
+        try {
+            force();
+            output.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void roll() throws IOException {
+        force();
+        output.close();
+        segments.add(segments.getLast() + 1);
+        openOutput();
+        outputSize = 0;
+        advance();
+        writeCheckpoint();
+    }
+
+    private int dropOverflow() throws IOException {
+        long dropped = 0;
+        while (pendingBytes > maxSize && segments.size() > 1) {
+            long segment = segments.removeFirst();
+            long bytes = sizeOf(segment) - readOffset;
+            Files.delete(segmentFile(segment));
+            pendingBytes -= bytes;
+            dropped += bytes / RECORD_SIZE;
+            readOffset = 0;
+        }
+        if (dropped > 0) {
+            writeCheckpoint();
+            updateOldestPendingTime();
+        }
+        return (int) dropped;
+    }
+
+    /**
+     * Deletes the replayed segments except the one being appended to.
+     */
+    private void advance() throws IOException {
+        while (segments.size() > 1 && readOffset >= sizeOf(segments.getFirst())) {
+            Files.delete(segmentFile(segments.removeFirst()));
+            readOffset = 0;
+        }
+    }
+
+    private void force() {
+        try {
+            output.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        unsynced = false;
+        syncedAt = System.nanoTime();
+    }
+
+    private void openOutput() throws IOException {
+        output = FileChannel.open(
+                segmentFile(segments.getLast()),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+    }
+
+    private long sizeOf(long segment) throws IOException {
+        return segment == segments.getLast() ? outputSize : Files.size(segmentFile(segment));
+    }
+
+    private void updateOldestPendingTime() throws IOException {
+        if (pendingBytes == 0) {
+            oldestPendingTime = null;
+            return;
+        }
+        try (FileChannel input = FileChannel.open(segmentFile(segments.getFirst()), StandardOpenOption.READ)) {
+            ByteBuffer buffer = readFully(input, readOffset, RECORD_SIZE);
+            oldestPendingTime = decode(buffer).time();
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+        return buffer.remaining() < 2 * Long.BYTES ? null : new long[]{buffer.getLong(), buffer.getLong()};
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path temporary = directory.resolve("checkpoint.tmp");
+        Files.write(temporary, ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(segments.getFirst())
+                .putLong(readOffset)
+                .array());
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+
+    private static ByteBuffer readFully(FileChannel input, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Spool segment ended before " + (position + length));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void encode(ByteBuffer buffer, EquipmentSample sample) {
+        EquipmentInfluxDbData data = sample.data();
+        int flags = (data.getU() != null ? HAS_U : 0)
+                | (data.getEnabled() != null ? HAS_ENABLED : 0)
+                | (Boolean.TRUE.equals(data.getEnabled()) ? ENABLED : 0);
+        buffer.putLong(sample.equipmentId())
+                .putLong(sample.time().getEpochSecond())
+                .putInt(sample.time().getNano())
+                .put((byte) flags)
+                .putDouble(data.getU() != null ? data.getU() : 0d);
+    }
+
+    private static EquipmentSample decode(ByteBuffer buffer) {
+        long equipmentId = buffer.getLong();
+        Instant time = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        int flags = buffer.get();
+        double u = buffer.getDouble();
+        return new EquipmentSample(equipmentId, time, EquipmentInfluxDbData.builder()
+                .u((flags & HAS_U) != 0 ? u : null)
+                .enabled((flags & HAS_ENABLED) != 0 ? (flags & ENABLED) != 0 : null)
+                .build());
+    }
+
+    /**
+     * Samples read from the spool at their position.
+     */
+    record Batch(long segment, long offset, List<EquipmentSample> samples) {
+    }
+}
@@ -1,21 +1,27 @@
 package ru.kpfu.machinemetrics.repository;
 
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.WriteApiBlocking;
-import com.influxdb.client.write.Point;
-import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Repository;
-import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
 
-@Repository
-@RequiredArgsConstructor
-public class EquipmentStatisticsRepository {
+import java.time.Instant;
+import java.util.List;
 
-    private final InfluxDBClient influxDBClient;
-    private final InfluxDbProperties influxDbProperties;
+/**
+ * Storage of equipment samples, selected by {@code app.storage.engine}.
+ */
+public interface EquipmentStatisticsRepository {
 
-    public void save(Point point) {
-        WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
-        writeApi.writePoint(influxDbProperties.getBucket(), influxDbProperties.getOrg(), point);
+    /**
+     * Qualifier of the engine repositories, which the batching writer wraps.
+     */
+    String STORAGE = "storage";
+
+    void save(Long equipmentId, Instant time, EquipmentInfluxDbData data);
+
+    /**
+     * Writes the samples in one request where the engine supports it.
+     */
+    default void saveAll(List<EquipmentSample> samples) {
+        samples.forEach(sample -> save(sample.equipmentId(), sample.time(), sample.data()));
     }
 }
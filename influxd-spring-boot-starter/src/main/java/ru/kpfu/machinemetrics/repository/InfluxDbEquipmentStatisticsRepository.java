@@ -0,0 +1,63 @@
+package ru.kpfu.machinemetrics.repository;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+@Qualifier(EquipmentStatisticsRepository.STORAGE)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
+public class InfluxDbEquipmentStatisticsRepository implements EquipmentStatisticsRepository {
+
+    private final InfluxDBClient influxDBClient;
+    private final InfluxDbProperties influxDbProperties;
+    private final LineProtocolEncoderPool lineProtocolEncoderPool;
+
+    @Override
+    public void save(Long equipmentId, Instant time, EquipmentInfluxDbData data) {
+        LineProtocolEncoder encoder = lineProtocolEncoderPool.acquire();
+        try {
+            encoder.encode(equipmentId, time, data);
+            write(encoder);
+        } finally {
+            lineProtocolEncoderPool.release(encoder);
+        }
+    }
+
+    @Override
+    public void saveAll(List<EquipmentSample> samples) {
+        LineProtocolEncoder encoder = lineProtocolEncoderPool.acquire();
+        try {
+            for (var sample : samples) {
+                encoder.encode(sample.equipmentId(), sample.time(), sample.data());
+            }
+            write(encoder);
+        } finally {
+            lineProtocolEncoderPool.release(encoder);
+        }
+    }
+
+    private void write(LineProtocolEncoder encoder) {
+        if (encoder.isEmpty()) {
+            return;
+        }
+        WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
+        writeApi.writeRecord(
+                influxDbProperties.getBucket(),
+                influxDbProperties.getOrg(),
+                WritePrecision.NS,
+                encoder.toLineProtocol()
+        );
+    }
+}
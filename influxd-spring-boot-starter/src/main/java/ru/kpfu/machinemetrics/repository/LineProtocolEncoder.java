@@ -0,0 +1,181 @@
+package ru.kpfu.machinemetrics.repository;
+
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Writes samples as InfluxDB line protocol straight into a reusable byte array, one line per sample, the same lines
+ * {@code Point} produces: {@code equipment_statistics,equipment_id=1 enabled=true,u=25.0 1683676800000000001}.
+ * <p>
+ * Nothing is allocated per sample once the array has grown, except for a value of {@code u} that needs more than nine
+ * fraction digits or is too large to be scaled exactly, which falls back to {@link Double#toString}. A sample without
+ * fields is skipped like {@code Point} does.
+ */
+public final class LineProtocolEncoder {
+
+    private static final byte[] PREFIX = ascii("equipment_statistics,equipment_id=");
+    private static final byte[] ENABLED_TRUE = ascii("enabled=true");
+    private static final byte[] ENABLED_FALSE = ascii("enabled=false");
+    private static final byte[] U = ascii("u=");
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int MAX_SCALE = 9;
+    private static final double MAX_EXACT = 1L << 53;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    private byte[] buffer;
+    private int size;
+
+    public LineProtocolEncoder() {
+        this(4096);
+    }
+
+    public LineProtocolEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    public void encode(Long equipmentId, Instant time, EquipmentInfluxDbData data) {
+        Double u = data.getU();
+        Boolean enabled = data.getEnabled();
+        boolean hasU = u != null && Double.isFinite(u);
+        if (!hasU && enabled == null) {
+            return;
+        }
+        if (size > 0) {
+            writeByte('\n');
+        }
+        write(PREFIX);
+        writeLong(equipmentId);
+        writeByte(' ');
+        if (enabled != null) {
+            write(enabled ? ENABLED_TRUE : ENABLED_FALSE);
+            if (hasU) {
+                writeByte(',');
+            }
+        }
+        if (hasU) {
+            write(U);
+            writeDouble(u);
+        }
+        writeByte(' ');
+        writeLong(time.getEpochSecond() * NANOS_PER_SECOND + time.getNano());
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * The encoded lines; the array is reused after {@link #clear()}.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * The encoded lines as the single string the write API takes.
+     */
+    public String toLineProtocol() {
+        return new String(buffer, 0, size, StandardCharsets.ISO_8859_1);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void writeDouble(double value) {
+        if (value == 0) {
+            writeDecimal(0, 0);
+            return;
+        }
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            double scaled = value * POWERS_OF_TEN[scale];
+            if (Math.abs(scaled) >= MAX_EXACT) {
+                break;
+            }
+            long digits = Math.round(scaled);
+            if ((double) digits / POWERS_OF_TEN[scale] == value) {
+                writeDecimal(digits, scale);
+                return;
+            }
+        }
+        write(ascii(Double.toString(value)));
+    }
+
+    /**
+     * Writes {@code digits / 10^scale} with at least one fraction digit.
+     */
+    private void writeDecimal(long digits, int scale) {
+        if (digits < 0) {
+            writeByte('-');
+            digits = -digits;
+        }
+        writeLong(digits / POWERS_OF_TEN[scale]);
+        writeByte('.');
+        if (scale == 0) {
+            writeByte('0');
+            return;
+        }
+        long fraction = digits % POWERS_OF_TEN[scale];
+        ensureCapacity(scale);
+        for (int i = size + scale - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        size += scale;
+    }
+
+    private void writeLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                write(ascii(Long.toString(value)));
+                return;
+            }
+            writeByte('-');
+            value = -value;
+        }
+        int length = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            length++;
+        }
+        ensureCapacity(length);
+        for (int i = size + length - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += length;
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(char value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.kpfu.machinemetrics.properties.EncoderPoolProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+@Component
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
+public class LineProtocolEncoderPool {
+
+    private final BlockingQueue<LineProtocolEncoder> encoders;
+    private final int maxRetainedCapacity;
+
+    public LineProtocolEncoderPool(EncoderPoolProperties encoderPoolProperties) {
+        this.encoders = new ArrayBlockingQueue<>(Math.max(1, encoderPoolProperties.getMaxPooled()));
+        this.maxRetainedCapacity = encoderPoolProperties.getMaxRetainedCapacity();
+    }
+
+    public LineProtocolEncoder acquire() {
+        LineProtocolEncoder encoder = encoders.poll();
+        return encoder != null ? encoder : new LineProtocolEncoder();
+    }
+
+    public void release(LineProtocolEncoder encoder) {
+        if (encoder == null || encoder.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        encoder.clear();
+        encoders.offer(encoder);
+    }
+}
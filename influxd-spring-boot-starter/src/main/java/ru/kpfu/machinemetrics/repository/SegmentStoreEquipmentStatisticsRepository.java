@@ -0,0 +1,88 @@
+package ru.kpfu.machinemetrics.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.segment.Sample;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Appends the samples to the embedded segment store, skipping those not newer than the equipment's latest stored
+ * sample. The store appends every sample it is given, so this keeps the samples the spool replays again after a
+ * restart, or of a batch that failed after part of it was stored, from being counted twice. Being the only writer
+ * of the store, the repository looks the latest time up once per equipment and tracks it afterwards.
+ */
+@Repository
+@Qualifier(EquipmentStatisticsRepository.STORAGE)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "embedded")
+public class SegmentStoreEquipmentStatisticsRepository implements EquipmentStatisticsRepository {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final SegmentStore segmentStore;
+    private final Map<Long, Long> lastTimes = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(Long equipmentId, Instant time, EquipmentInfluxDbData data) {
+        append(equipmentId, List.of(toSample(time, data)));
+    }
+
+    @Override
+    public void saveAll(List<EquipmentSample> samples) {
+        Map<Long, List<Sample>> equipmentSamples = new LinkedHashMap<>();
+        for (var sample : samples) {
+            equipmentSamples.computeIfAbsent(sample.equipmentId(), id -> new ArrayList<>())
+                    .add(toSample(sample.time(), sample.data()));
+        }
+        equipmentSamples.forEach(this::append);
+    }
+
+    /**
+     * Forgets the latest time when the append fails, as part of the samples may be stored already.
+     */
+    private void append(Long equipmentId, List<Sample> samples) {
+        try {
+            lastTimes.compute(equipmentId, (id, lastTime) -> {
+                long last = lastTime != null ? lastTime : findLastTime(id);
+                List<Sample> newer = new ArrayList<>(samples.size());
+                for (var sample : samples) {
+                    if (sample.time() > last) {
+                        newer.add(sample);
+                        last = sample.time();
+                    }
+                }
+                if (!newer.isEmpty()) {
+                    segmentStore.append(id, newer);
+                }
+                return last;
+            });
+        } catch (RuntimeException e) {
+            lastTimes.remove(equipmentId);
+            throw e;
+        }
+    }
+
+    private long findLastTime(Long equipmentId) {
+        Sample last = segmentStore.findLastBefore(equipmentId, Long.MAX_VALUE);
+        return last != null ? last.time() : Long.MIN_VALUE;
+    }
+
+    private static Sample toSample(Instant time, EquipmentInfluxDbData data) {
+        return new Sample(
+                time.getEpochSecond() * NANOS_PER_SECOND + time.getNano(),
+                data.getU() == null ? Double.NaN : data.getU(),
+                Boolean.TRUE.equals(data.getEnabled())
+        );
+    }
+}
@@ -2,18 +2,13 @@ package ru.kpfu.machinemetrics.service;
 
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.kpfu.machinemetrics.model.EquipmentSchedule;
 import ru.kpfu.machinemetrics.repository.EquipmentScheduleRepository;
-import ru.kpfu.machinemetrics.task.FetchDataServiceTask;
+import ru.kpfu.machinemetrics.task.CronGroupScheduler;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ScheduledFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -21,15 +16,16 @@ import java.util.concurrent.ScheduledFuture;
 public class EquipmentScheduleService {
 
     private final EquipmentScheduleRepository equipmentScheduleRepository;
-    private final TaskScheduler taskScheduler;
+    private final CronGroupScheduler cronGroupScheduler;
     private final EquipmentStatisticsService equipmentStatisticsService;
-
-    private ConcurrentMap<Long, ScheduledFuture<?>> equipmentIdToTask = new ConcurrentHashMap<>();
+    private final EquipmentShardService equipmentShardService;
 
     @PostConstruct
     private void initTasks() {
         List<EquipmentSchedule> equipmentSchedules = equipmentScheduleRepository.findAllByEnabledIsTrue();
-        equipmentSchedules.forEach(this::startTask);
+        equipmentSchedules.stream()
+                .filter(equipmentSchedule -> equipmentShardService.owns(equipmentSchedule.getId()))
+                .forEach(this::startTask);
     }
 
     public void delete(Long id) {
@@ -41,7 +37,7 @@ public class EquipmentScheduleService {
     public EquipmentSchedule save(EquipmentSchedule updatedEquipmentSchedule) {
         final Long equipmentInfoId = updatedEquipmentSchedule.getId();
         final EquipmentSchedule savedEquipmentSchedule = equipmentScheduleRepository.save(updatedEquipmentSchedule);
-        if (savedEquipmentSchedule.getEnabled()) {
+        if (savedEquipmentSchedule.getEnabled() && equipmentShardService.owns(equipmentInfoId)) {
             startTask(savedEquipmentSchedule);
         } else {
             stopTask(equipmentInfoId);
@@ -50,18 +46,12 @@ public class EquipmentScheduleService {
     }
 
     private void startTask(EquipmentSchedule equipmentSchedule) {
-        stopTask(equipmentSchedule.getId());
-        CronTrigger cronTrigger = new CronTrigger(equipmentSchedule.getCron());
-        Runnable fetchDataServiceTask = new FetchDataServiceTask(equipmentSchedule.getId(), equipmentStatisticsService);
-        ScheduledFuture<?> taskFuture = taskScheduler.schedule(fetchDataServiceTask, cronTrigger);
-        equipmentIdToTask.put(equipmentSchedule.getId(), taskFuture);
+        equipmentStatisticsService.forget(equipmentSchedule.getId());
+        cronGroupScheduler.schedule(equipmentSchedule.getId(), equipmentSchedule.getCron());
     }
 
     private void stopTask(Long id) {
-        final ScheduledFuture<?> taskFuture = equipmentIdToTask.get(id);
-        if (taskFuture != null) {
-            taskFuture.cancel(true);
-            equipmentIdToTask.remove(id);
-        }
+        cronGroupScheduler.unschedule(id);
+        equipmentStatisticsService.forget(id);
     }
 }
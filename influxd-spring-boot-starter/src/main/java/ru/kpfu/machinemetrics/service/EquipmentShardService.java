@@ -0,0 +1,179 @@
+package ru.kpfu.machinemetrics.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import ru.kpfu.machinemetrics.model.EquipmentSchedule;
+import ru.kpfu.machinemetrics.model.ReplicaHeartbeat;
+import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.ShardingProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentScheduleRepository;
+import ru.kpfu.machinemetrics.task.CronGroupScheduler;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the equipment between the replicas of the data service by consistent hashing, so each one is polled by one
+ * replica.
+ * <p>
+ * The replicas find each other through their heartbeats on the {@code rk-<name>-replicas} fanout exchange, which
+ * every replica reads through a queue of its own, so no table is added to the shared database. A replica answers the
+ * first heartbeat of another one with its own, so a joining replica learns its peers at once. On every heartbeat a
+ * replica rebuilds the ring from the replicas heard from within {@code replica-timeout} and schedules the enabled
+ * equipment it owns, unscheduling the rest. This rebalances the equipment after a replica joins, leaves or stops
+ * sending heartbeats, and applies the schedules saved by whichever replica consumed their message.
+ * <p>
+ * Until the replicas see the same ring, for up to a heartbeat interval, an equipment may be polled by two of them at
+ * the same nominal tick time. InfluxDB overwrites the second point of a series at a time, but each replica skips only
+ * the samples its own writes made stale, so the embedded segment store may keep both and count the duplicates.
+ */
+@Slf4j
+@Service
+public class EquipmentShardService {
+
+    private final ShardingProperties shardingProperties;
+    private final String name;
+    private final String replicaId;
+    private final String exchange;
+    private final RabbitTemplate rabbitTemplate;
+    private final EquipmentScheduleRepository equipmentScheduleRepository;
+    private final CronGroupScheduler cronGroupScheduler;
+    private final EquipmentStatisticsService equipmentStatisticsService;
+    private final Map<String, Instant> heartbeats = new ConcurrentHashMap<>();
+
+    private volatile ConsistentHashRing ring;
+
+    public EquipmentShardService(
+            ShardingProperties shardingProperties,
+            AppProperties appProperties,
+            RabbitTemplate rabbitTemplate,
+            EquipmentScheduleRepository equipmentScheduleRepository,
+            CronGroupScheduler cronGroupScheduler,
+            EquipmentStatisticsService equipmentStatisticsService
+    ) {
+        this.shardingProperties = shardingProperties;
+        this.name = appProperties.getName();
+        this.replicaId = StringUtils.hasText(shardingProperties.getReplicaId())
+                ? shardingProperties.getReplicaId()
+                : UUID.randomUUID().toString();
+        this.exchange = String.format("rk-%s-replicas", name);
+        this.rabbitTemplate = rabbitTemplate;
+        this.equipmentScheduleRepository = equipmentScheduleRepository;
+        this.cronGroupScheduler = cronGroupScheduler;
+        this.equipmentStatisticsService = equipmentStatisticsService;
+        this.ring = new ConsistentHashRing(List.of(replicaId), shardingProperties.getVirtualNodes());
+    }
+
+    @PostConstruct
+    private void join() {
+        if (shardingProperties.isEnabled()) {
+            heartbeat();
+        }
+    }
+
+    @PreDestroy
+    private void leave() {
+        if (!shardingProperties.isEnabled()) {
+            return;
+        }
+        try {
+            rabbitTemplate.convertAndSend(exchange, "", new ReplicaHeartbeat(replicaId, true));
+        } catch (RuntimeException e) {
+            log.warn("Cannot remove replica {} of {}, its share moves after the replica timeout", replicaId, name, e);
+        }
+    }
+
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * Whether this replica polls the equipment, which every replica does with sharding disabled.
+     */
+    public boolean owns(Long equipmentId) {
+        return !shardingProperties.isEnabled() || replicaId.equals(ring.owner(equipmentId));
+    }
+
+    @Scheduled(
+            fixedDelayString = "${app.sharding.heartbeat-interval:PT5S}",
+            initialDelayString = "${app.sharding.heartbeat-interval:PT5S}"
+    )
+    public void rebalance() {
+        if (!shardingProperties.isEnabled()) {
+            return;
+        }
+        try {
+            heartbeat();
+            reconcile();
+        } catch (RuntimeException e) {
+            log.error("Cannot rebalance the equipment of replica " + replicaId + " of " + name, e);
+        }
+    }
+
+    /**
+     * Sends the heartbeat of this replica and rebuilds the ring from the live replicas.
+     */
+    void heartbeat() {
+        rabbitTemplate.convertAndSend(exchange, "", new ReplicaHeartbeat(replicaId, false));
+
+        Instant timeout = Instant.now().minus(shardingProperties.getReplicaTimeout());
+        heartbeats.values().removeIf(heartbeatAt -> heartbeatAt.isBefore(timeout));
+        List<String> members = new ArrayList<>();
+        members.add(replicaId);
+        members.addAll(heartbeats.keySet());
+        ConsistentHashRing current = new ConsistentHashRing(members, shardingProperties.getVirtualNodes());
+        if (!current.getMembers().equals(ring.getMembers())) {
+            log.info("Replicas of {} are now {}", name, current.getMembers());
+            ring = current;
+        }
+    }
+
+    /**
+     * Records the heartbeat of another replica, answering it with this replica's one if that replica is new.
+     */
+    public void onHeartbeat(ReplicaHeartbeat heartbeat) {
+        if (!shardingProperties.isEnabled() || replicaId.equals(heartbeat.replicaId())) {
+            return;
+        }
+        if (heartbeat.leaving()) {
+            heartbeats.remove(heartbeat.replicaId());
+            return;
+        }
+        if (heartbeats.put(heartbeat.replicaId(), Instant.now()) == null) {
+            rabbitTemplate.convertAndSend(exchange, "", new ReplicaHeartbeat(replicaId, false));
+        }
+    }
+
+    /**
+     * Schedules the enabled equipment this replica owns and unschedules the rest.
+     */
+    void reconcile() {
+        Map<Long, String> owned = equipmentScheduleRepository.findAllByEnabledIsTrue().stream()
+                .filter(schedule -> schedule.getCron() != null && owns(schedule.getId()))
+                .collect(Collectors.toMap(EquipmentSchedule::getId, EquipmentSchedule::getCron));
+        Set<Long> scheduled = cronGroupScheduler.getEquipmentIds();
+        for (Long equipmentId : scheduled) {
+            if (!owned.containsKey(equipmentId)) {
+                cronGroupScheduler.unschedule(equipmentId);
+                equipmentStatisticsService.forget(equipmentId);
+            }
+        }
+        owned.forEach((equipmentId, cron) -> {
+            if (!scheduled.contains(equipmentId)) {
+                equipmentStatisticsService.forget(equipmentId);
+            }
+            cronGroupScheduler.schedule(equipmentId, cron);
+        });
+    }
+}
@@ -1,30 +1,154 @@
 package ru.kpfu.machinemetrics.service;
 
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.client.write.Point;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.model.EquipmentSamplesDroppedEvent;
+import ru.kpfu.machinemetrics.properties.IngestionProperties;
 import ru.kpfu.machinemetrics.repository.EquipmentStatisticsRepository;
 
-import java.time.OffsetDateTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Polls the equipment and writes the samples to the storage.
+ * <p>
+ * In the {@code changes} ingestion mode a sample that repeats the last written one is skipped. The statistics stretch
+ * every sample until the next one and take the last sample before a period as its initial state, so as long as every
+ * flip of {@code enabled} is written at its tick the uptime stays the same. The heartbeat keeps the gaps bounded.
+ * A sample whose write failed or was dropped is not taken as written, so the next one is written whatever it is.
+ */
+@Slf4j
 @RequiredArgsConstructor
 public abstract class EquipmentStatisticsService {
 
     private final EquipmentStatisticsRepository equipmentStatisticsRepository;
+    private final IngestionProperties ingestionProperties;
+
+    private final Map<Long, EquipmentSample> lastWritten = new ConcurrentHashMap<>();
 
     public final void process(Long equipmentId) {
         var data = getEquipmentInfluxDbData(equipmentId);
+        var sample = new EquipmentSample(equipmentId, Instant.now(), data);
+        if (accept(sample)) {
+            write(List.of(sample), () -> equipmentStatisticsRepository.save(equipmentId, sample.time(), data));
+        }
+    }
+
+    /**
+     * Polls the equipments with one {@link #getAllEquipmentInfluxDbData(Collection)} call and writes their samples as
+     * one batch with the same time.
+     */
+    public final void processAll(Collection<Long> equipmentIds) {
+        processAll(equipmentIds, null);
+    }
 
-        Point point = Point
-                .measurement("equipment_statistics")
-                .addTag("equipment_id", equipmentId.toString())
-                .addField("u", data.getU())
-                .addField("enabled", data.getEnabled())
-                .time(OffsetDateTime.now().toInstant(), WritePrecision.NS);
-        equipmentStatisticsRepository.save(point);
+    /**
+     * Same as {@link #processAll(Collection)}, with the samples written at {@code time}, such as the nominal time of
+     * the tick, or at the end of the poll if it is {@code null}.
+     */
+    public final void processAll(Collection<Long> equipmentIds, Instant time) {
+        if (equipmentIds.isEmpty()) {
+            return;
+        }
+        var data = getAllEquipmentInfluxDbData(equipmentIds);
+        var sampleTime = time != null ? time : Instant.now();
+        List<EquipmentSample> samples = new ArrayList<>(data.size());
+        data.forEach((equipmentId, equipmentData) -> {
+            var sample = new EquipmentSample(equipmentId, sampleTime, equipmentData);
+            if (equipmentData != null && accept(sample)) {
+                samples.add(sample);
+            }
+        });
+        if (!samples.isEmpty()) {
+            write(samples, () -> equipmentStatisticsRepository.saveAll(samples));
+        }
+    }
+
+    /**
+     * Drops the last written sample of the equipment, so the next one is written whatever it is.
+     */
+    public void forget(Long equipmentId) {
+        lastWritten.remove(equipmentId);
+    }
 
+    /**
+     * Forgets the dropped samples that are still taken as the last written ones, or all of them if the dropped samples
+     * are not known.
+     */
+    @EventListener
+    public void onSamplesDropped(EquipmentSamplesDroppedEvent event) {
+        if (event.samples().isEmpty()) {
+            lastWritten.clear();
+            return;
+        }
+        event.samples().forEach(sample -> lastWritten.remove(sample.equipmentId(), sample));
     }
 
     public abstract EquipmentInfluxDbData getEquipmentInfluxDbData(Long equipmentId);
+
+    /**
+     * Data of several equipments, for devices that answer for many of them in one request. An equipment missing from
+     * the result is not written. By default the equipments are polled one by one, skipping the ones that fail.
+     */
+    public Map<Long, EquipmentInfluxDbData> getAllEquipmentInfluxDbData(Collection<Long> equipmentIds) {
+        Map<Long, EquipmentInfluxDbData> result = new LinkedHashMap<>();
+        for (var equipmentId : equipmentIds) {
+            try {
+                result.put(equipmentId, getEquipmentInfluxDbData(equipmentId));
+            } catch (RuntimeException e) {
+                log.error("Cannot poll equipment " + equipmentId, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the sample is to be written.
+     */
+    private boolean accept(EquipmentSample sample) {
+        return ingestionProperties.getMode() != IngestionProperties.Mode.CHANGES
+                || changed(lastWritten.get(sample.equipmentId()), sample);
+    }
+
+    /**
+     * Writes the samples, taking them as the last written ones. They are taken before the write, so that a drop
+     * published while it runs is not overwritten, and forgotten again if it fails.
+     */
+    private void write(List<EquipmentSample> samples, Runnable write) {
+        if (ingestionProperties.getMode() != IngestionProperties.Mode.CHANGES) {
+            write.run();
+            return;
+        }
+        samples.forEach(sample -> lastWritten.put(sample.equipmentId(), sample));
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            samples.forEach(sample -> lastWritten.remove(sample.equipmentId(), sample));
+            throw e;
+        }
+    }
+
+    private boolean changed(EquipmentSample previous, EquipmentSample sample) {
+        if (previous == null
+                || !Objects.equals(previous.data().getEnabled(), sample.data().getEnabled())
+                || Duration.between(previous.time(), sample.time()).compareTo(ingestionProperties.getHeartbeat()) >= 0) {
+            return true;
+        }
+        Double previousU = previous.data().getU();
+        Double u = sample.data().getU();
+        if (previousU == null || u == null) {
+            return previousU != u;
+        }
+        return Math.abs(u - previousU) > ingestionProperties.getUDeadband();
+    }
 }
@@ -0,0 +1,109 @@
+package ru.kpfu.machinemetrics.task;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Schedules the equipment in groups by cron expression: each expression is parsed once and has one task on the
+ * {@link TaskScheduler}, which hands the whole group over to the {@link EquipmentPoller} on every tick, along with the
+ * nominal time of the tick and of the next one. Adding, removing and moving an equipment to another expression take
+ * constant time; a group is scheduled with its first equipment and cancelled with its last.
+ */
+@Component
+@RequiredArgsConstructor
+public class CronGroupScheduler {
+
+    private final TaskScheduler taskScheduler;
+    private final EquipmentPoller equipmentPoller;
+
+    private final Map<String, CronGroup> groups = new HashMap<>();
+    private final Map<Long, CronGroup> equipmentGroups = new HashMap<>();
+
+    /**
+     * Polls the equipment on the ticks of the cron expression from now on, instead of the ones it had.
+     */
+    public synchronized void schedule(Long equipmentId, String cron) {
+        String key = cron.trim();
+        CronGroup current = equipmentGroups.get(equipmentId);
+        if (current != null && current.cron.equals(key)) {
+            return;
+        }
+        CronGroup group = groups.get(key);
+        if (group == null) {
+            group = new CronGroup(key);
+        }
+        unschedule(equipmentId);
+        group.equipmentIds.add(equipmentId);
+        equipmentGroups.put(equipmentId, group);
+        if (group.future == null) {
+            groups.put(key, group);
+            group.future = taskScheduler.schedule(
+                    new FetchDataServiceTask(group.equipmentIds, group::getTick, equipmentPoller),
+                    group.trigger
+            );
+        }
+    }
+
+    public synchronized void unschedule(Long equipmentId) {
+        CronGroup group = equipmentGroups.remove(equipmentId);
+        if (group == null) {
+            return;
+        }
+        group.equipmentIds.remove(equipmentId);
+        if (group.equipmentIds.isEmpty()) {
+            groups.remove(group.cron);
+            if (group.future != null) {
+                group.future.cancel(false);
+            }
+        }
+    }
+
+    public synchronized Set<Long> getEquipmentIds() {
+        return Set.copyOf(equipmentGroups.keySet());
+    }
+
+    public synchronized int getGroupCount() {
+        return groups.size();
+    }
+
+    private static final class CronGroup {
+
+        private final String cron;
+        private final CronTrigger trigger;
+        private final Set<Long> equipmentIds = ConcurrentHashMap.newKeySet();
+        private ScheduledFuture<?> future;
+        private volatile Tick tick;
+
+        private CronGroup(String cron) {
+            this.cron = cron;
+            this.trigger = new CronTrigger(cron) {
+                @Override
+                public Instant nextExecution(TriggerContext triggerContext) {
+                    Instant next = super.nextExecution(triggerContext);
+                    tick = next == null
+                            ? null
+                            : new Tick(next, super.nextExecution(new SimpleTriggerContext(next, next, next)));
+                    return next;
+                }
+            };
+        }
+
+        /**
+         * The tick running now, which is the last one the scheduler asked the trigger for.
+         */
+        private Tick getTick() {
+            return tick;
+        }
+    }
+}
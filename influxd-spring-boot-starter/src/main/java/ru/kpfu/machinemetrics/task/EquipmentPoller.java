@@ -0,0 +1,237 @@
+package ru.kpfu.machinemetrics.task;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import ru.kpfu.machinemetrics.properties.PollingProperties;
+import ru.kpfu.machinemetrics.service.EquipmentStatisticsService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls the equipment of a cron tick on its own executor, so the scheduler thread only hands the tick over and a slow
+ * device delays nothing but its own batch.
+ * <p>
+ * A tick is split into batches of {@code batch-size} equipments. An equipment whose previous poll is still running is
+ * skipped and counted as an overrun, as are the batches the executor has no room for. A poll running longer than
+ * {@code timeout} has its thread interrupted; its equipment stays skipped until the poll returns.
+ * <p>
+ * With {@code jitter} above 0 every equipment is polled at its own offset within that share of the cron period, up to
+ * {@code max-jitter}, given by a hash of its id, so a fleet on one cron expression does not hit the devices and the
+ * storage in one burst. Only equipments whose offsets fall into the same {@value #SLOT_MILLIS} ms slot share a batch.
+ * The samples are still written at the nominal time of the tick.
+ */
+@Slf4j
+@Component
+public class EquipmentPoller {
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+    private static final long SLOT_MILLIS = 10;
+    private static final long SLOT_NANOS = TimeUnit.MILLISECONDS.toNanos(SLOT_MILLIS);
+
+    private final EquipmentStatisticsService equipmentStatisticsService;
+    private final PollingProperties pollingProperties;
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+    private final Timer pollTimer;
+    private final Counter lateCounter;
+    private final Counter overrunCounter;
+    private final Counter timeoutCounter;
+
+    public EquipmentPoller(
+            EquipmentStatisticsService equipmentStatisticsService,
+            PollingProperties pollingProperties,
+            ObjectProvider<MeterRegistry> meterRegistryProvider
+    ) {
+        if (pollingProperties.getJitter() < 0 || pollingProperties.getJitter() >= 1) {
+            throw new IllegalStateException("app.polling.jitter must be at least 0 and below 1");
+        }
+        this.equipmentStatisticsService = equipmentStatisticsService;
+        this.pollingProperties = pollingProperties;
+        this.executor = createExecutor(pollingProperties);
+        this.timer = new ScheduledThreadPoolExecutor(1, namedThreads("equipment-polling-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.pollTimer = Timer.builder("equipment-statistics.polling.poll")
+                .description("Polls of a batch of equipments")
+                .register(meterRegistry);
+        this.lateCounter = Counter.builder("equipment-statistics.polling.late")
+                .description("Ticks handed over later than the late threshold after their nominal time")
+                .register(meterRegistry);
+        this.overrunCounter = Counter.builder("equipment-statistics.polling.overrun")
+                .description("Equipment polls skipped because the previous one was still running or the executor was full")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("equipment-statistics.polling.timeout")
+                .description("Polls interrupted after the timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hands the equipment over to the executor for the tick, or for now if the tick is not known.
+     */
+    public void poll(Collection<Long> equipmentIds, Tick tick) {
+        Instant now = Instant.now();
+        Instant time = tick != null ? tick.time() : now;
+        if (Duration.between(time, now).compareTo(pollingProperties.getLateThreshold()) > 0) {
+            lateCounter.increment();
+        }
+        long spreadNanos = tick != null ? spreadNanos(tick.period()) : 0;
+        List<Long> ids = new ArrayList<>(equipmentIds);
+        if (spreadNanos > 0) {
+            ids.sort(Comparator.comparingDouble(EquipmentPoller::phase));
+        }
+        int batchSize = Math.max(1, pollingProperties.getBatchSize());
+        long delayNanos = Duration.between(now, time).toNanos();
+        List<Long> batch = new ArrayList<>(Math.min(batchSize, ids.size()));
+        long batchSlot = 0;
+        for (Long equipmentId : ids) {
+            long slot = (long) (phase(equipmentId) * spreadNanos) / SLOT_NANOS;
+            if (!batch.isEmpty() && (slot != batchSlot || batch.size() == batchSize)) {
+                schedule(List.copyOf(batch), time, delayNanos + batchSlot * SLOT_NANOS);
+                batch.clear();
+            }
+            if (batch.isEmpty()) {
+                batchSlot = slot;
+            }
+            batch.add(equipmentId);
+        }
+        if (!batch.isEmpty()) {
+            schedule(List.copyOf(batch), time, delayNanos + batchSlot * SLOT_NANOS);
+        }
+    }
+
+    private void schedule(List<Long> batch, Instant time, long delayNanos) {
+        if (delayNanos <= 0) {
+            submit(batch, time);
+            return;
+        }
+        try {
+            timer.schedule(() -> submit(batch, time), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            overrunCounter.increment(batch.size());
+        }
+    }
+
+    /**
+     * Position of the equipment within the spread, in [0, 1), which stays the same on every tick and every replica.
+     */
+    static double phase(long equipmentId) {
+        long z = equipmentId + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    private long spreadNanos(Duration period) {
+        long spreadNanos = (long) (period.toNanos() * pollingProperties.getJitter());
+        return Math.min(spreadNanos, pollingProperties.getMaxJitter().toNanos());
+    }
+
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        executor.shutdownNow();
+        timer.shutdownNow();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Stopped with {} equipment polls running", running.size());
+        }
+    }
+
+    private void submit(List<Long> equipmentIds, Instant time) {
+        List<Long> batch = new ArrayList<>(equipmentIds.size());
+        for (Long equipmentId : equipmentIds) {
+            if (running.add(equipmentId)) {
+                batch.add(equipmentId);
+            } else {
+                overrunCounter.increment();
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> poll(batch, time));
+        } catch (RejectedExecutionException e) {
+            running.removeAll(batch);
+            overrunCounter.increment(batch.size());
+        }
+    }
+
+    private void poll(List<Long> batch, Instant time) {
+        Thread thread = Thread.currentThread();
+        Object lock = new Object();
+        boolean[] done = {false};
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            synchronized (lock) {
+                if (!done[0]) {
+                    timeoutCounter.increment();
+                    thread.interrupt();
+                }
+            }
+        }, pollingProperties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            pollTimer.record(() -> equipmentStatisticsService.processAll(batch, time));
+        } catch (RuntimeException e) {
+            log.error("Cannot poll " + batch.size() + " equipments", e);
+        } finally {
+            synchronized (lock) {
+                done[0] = true;
+            }
+            timeout.cancel(false);
+            Thread.interrupted();
+            running.removeAll(batch);
+        }
+    }
+
+    private static ExecutorService createExecutor(PollingProperties pollingProperties) {
+        if (pollingProperties.getThreads() == PollingProperties.Threads.VIRTUAL) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                log.warn("Virtual threads are not available on Java {}, polling on a pool of {} threads",
+                        Runtime.version().feature(), pollingProperties.getPoolSize());
+            }
+        }
+        return new ThreadPoolExecutor(
+                pollingProperties.getPoolSize(),
+                pollingProperties.getPoolSize(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, pollingProperties.getQueueCapacity())),
+                namedThreads("equipment-polling-")
+        );
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name.endsWith("-") ? name + count.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,16 +1,24 @@
 package ru.kpfu.machinemetrics.task;
 
 import lombok.AllArgsConstructor;
-import ru.kpfu.machinemetrics.service.EquipmentStatisticsService;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Hands every equipment of a cron group over to the poller on its tick. The ids are read on every tick, so the group
+ * may change between ticks.
+ */
 @AllArgsConstructor
 public class FetchDataServiceTask implements Runnable {
 
-    private Long equipmentId;
-    private EquipmentStatisticsService equipmentStatisticsService;
+    private Collection<Long> equipmentIds;
+    private Supplier<Tick> tick;
+    private EquipmentPoller equipmentPoller;
 
     @Override
     public void run() {
-        equipmentStatisticsService.process(equipmentId);
+        equipmentPoller.poll(List.copyOf(equipmentIds), tick.get());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package ru.kpfu.machinemetrics.task;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Nominal time of a cron tick and of the one after it.
+ */
+public record Tick(Instant time, Instant next) {
+
+    public Duration period() {
+        return Duration.between(time, next);
+    }
+}
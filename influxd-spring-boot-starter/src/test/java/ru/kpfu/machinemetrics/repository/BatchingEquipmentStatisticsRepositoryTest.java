@@ -0,0 +1,73 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.properties.SpoolProperties;
+import ru.kpfu.machinemetrics.properties.WriterProperties;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(
+        classes = {
+                BatchingEquipmentStatisticsRepository.class,
+                BatchingEquipmentStatisticsRepositoryTest.StorageConfiguration.class
+        },
+        properties = {"app.writer.batch-size=3", "app.writer.flush-interval=200ms", "app.spool.enabled=false"}
+)
+public class BatchingEquipmentStatisticsRepositoryTest {
+
+    @Autowired
+    private EquipmentStatisticsRepository equipmentStatisticsRepository;
+
+    @Autowired
+    @Qualifier(EquipmentStatisticsRepository.STORAGE)
+    private EquipmentStatisticsRepository storageMock;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSaveWritesBatches() {
+        // given
+        EquipmentInfluxDbData givenData = EquipmentInfluxDbData.builder().u(25d).enabled(true).build();
+
+        // when
+        for (int i = 0; i < 7; i++) {
+            equipmentStatisticsRepository.save(1L, Instant.ofEpochSecond(i), givenData);
+        }
+
+        // then
+        ArgumentCaptor<List<EquipmentSample>> captor = ArgumentCaptor.forClass(List.class);
+        verify(storageMock, timeout(1000).times(3)).saveAll(captor.capture());
+        var actual = captor.getAllValues();
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).extracting(List::size).containsExactly(3, 3, 1);
+        softly.assertThat(actual.stream().flatMap(List::stream).map(sample -> sample.time().getEpochSecond()))
+                .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L);
+        softly.assertThat(actual.get(0).get(0).data()).isSameAs(givenData);
+        softly.assertAll();
+    }
+
+    @Configuration
+    @EnableConfigurationProperties({WriterProperties.class, SpoolProperties.class})
+    static class StorageConfiguration {
+
+        @Bean
+        @Qualifier(EquipmentStatisticsRepository.STORAGE)
+        EquipmentStatisticsRepository storage() {
+            return Mockito.mock(EquipmentStatisticsRepository.class);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class EquipmentSampleSpoolTest {
+
+    private static final int RECORD_SIZE = 29;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testReadReplaysInOrderAcrossSegmentsAndRestart() {
+        // given
+        Random random = new Random(20230510L);
+        List<EquipmentSample> givenSamples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            givenSamples.add(new EquipmentSample(
+                    (long) random.nextInt(5),
+                    Instant.ofEpochSecond(1_683_676_800L + i, random.nextInt(1_000_000_000)),
+                    EquipmentInfluxDbData.builder()
+                            .u(random.nextInt(5) == 0 ? null : random.nextDouble() * 100)
+                            .enabled(random.nextInt(5) == 0 ? null : random.nextBoolean())
+                            .build()
+            ));
+        }
+
+        // when
+        List<EquipmentSample> actual = new ArrayList<>();
+        EquipmentSampleSpool spool = open(givenSamples.size());
+        for (int i = 0; i < givenSamples.size(); ) {
+            int next = Math.min(i + 1 + random.nextInt(50), givenSamples.size());
+            spool.append(givenSamples.subList(i, next));
+            i = next;
+            if (random.nextInt(4) == 0) {
+                var batch = spool.read(30);
+                actual.addAll(batch.samples());
+                spool.commit(batch);
+            }
+        }
+        spool.close();
+        spool = open(givenSamples.size());
+        while (!spool.isEmpty()) {
+            var batch = spool.read(30);
+            actual.addAll(batch.samples());
+            spool.commit(batch);
+        }
+        spool.close();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).hasSize(givenSamples.size());
+        for (int i = 0; i < Math.min(actual.size(), givenSamples.size()); i++) {
+            softly.assertThat(actual.get(i).equipmentId()).isEqualTo(givenSamples.get(i).equipmentId());
+            softly.assertThat(actual.get(i).time()).isEqualTo(givenSamples.get(i).time());
+            softly.assertThat(actual.get(i).data().getU()).isEqualTo(givenSamples.get(i).data().getU());
+            softly.assertThat(actual.get(i).data().getEnabled()).isEqualTo(givenSamples.get(i).data().getEnabled());
+        }
+        softly.assertThat(spool.getReplayLagSeconds()).isZero();
+        softly.assertAll();
+    }
+
+    @Test
+    void testAppendDropsOldestSegmentsAboveMaxSize() {
+        // given
+        EquipmentInfluxDbData givenData = EquipmentInfluxDbData.builder().u(10d).enabled(true).build();
+        EquipmentSampleSpool spool = open(200);
+
+        // when
+        int actualDropped = 0;
+        for (int i = 0; i < 300; i++) {
+            actualDropped += spool.append(List.of(new EquipmentSample(1L, Instant.ofEpochSecond(i), givenData)));
+        }
+        List<EquipmentSample> actual = new ArrayList<>();
+        while (!spool.isEmpty()) {
+            var batch = spool.read(1000);
+            actual.addAll(batch.samples());
+            spool.commit(batch);
+        }
+        spool.close();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDropped).isPositive();
+        softly.assertThat(actual).hasSizeLessThanOrEqualTo(200);
+        softly.assertThat(actualDropped + actual.size()).isEqualTo(300);
+        softly.assertThat(actual.get(0).time()).isEqualTo(Instant.ofEpochSecond(actualDropped));
+        softly.assertAll();
+    }
+
+    private EquipmentSampleSpool open(int maxRecords) {
+        return new EquipmentSampleSpool(directory, 40 * RECORD_SIZE, (long) maxRecords * RECORD_SIZE, Duration.ZERO);
+    }
+}
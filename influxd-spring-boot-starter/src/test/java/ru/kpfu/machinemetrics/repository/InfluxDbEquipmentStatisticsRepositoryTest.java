@@ -0,0 +1,88 @@
+package ru.kpfu.machinemetrics.repository;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.properties.EncoderPoolProperties;
+import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(
+        classes = {
+                InfluxDbEquipmentStatisticsRepository.class,
+                InfluxDbProperties.class,
+                LineProtocolEncoderPool.class,
+                EncoderPoolProperties.class
+        }
+)
+public class InfluxDbEquipmentStatisticsRepositoryTest {
+
+    @Autowired
+    private EquipmentStatisticsRepository equipmentStatisticsRepository;
+
+    @MockBean
+    private InfluxDBClient influxDBClientMock;
+
+    @Autowired
+    private InfluxDbProperties influxDbProperties;
+
+    @Test
+    void testSave() {
+        // given
+        Instant givenTime = Instant.ofEpochSecond(1_683_676_800L, 1);
+        EquipmentInfluxDbData givenData = EquipmentInfluxDbData.builder().u(25d).enabled(true).build();
+
+        WriteApiBlocking writeApiBlockingMock = Mockito.mock(WriteApiBlocking.class);
+        when(influxDBClientMock.getWriteApiBlocking()).thenReturn(writeApiBlockingMock);
+        doNothing().when(writeApiBlockingMock).writeRecord(any(), any(), any(), any(String.class));
+
+        // when
+        equipmentStatisticsRepository.save(1L, givenTime, givenData);
+
+        // then
+        verify(influxDBClientMock, times(1)).getWriteApiBlocking();
+        verify(writeApiBlockingMock, times(1)).writeRecord(any(), any(), eq(WritePrecision.NS), eq(
+                "equipment_statistics,equipment_id=1 enabled=true,u=25.0 1683676800000000001"
+        ));
+    }
+
+    @Test
+    void testSaveAllWritesOneRecord() {
+        // given
+        Instant givenTime = Instant.ofEpochSecond(1_683_676_800L);
+        List<EquipmentSample> givenSamples = List.of(
+                new EquipmentSample(1L, givenTime, EquipmentInfluxDbData.builder().u(25.5).enabled(true).build()),
+                new EquipmentSample(2L, givenTime, EquipmentInfluxDbData.builder().enabled(false).build()),
+                new EquipmentSample(3L, givenTime, EquipmentInfluxDbData.builder().build())
+        );
+
+        WriteApiBlocking writeApiBlockingMock = Mockito.mock(WriteApiBlocking.class);
+        when(influxDBClientMock.getWriteApiBlocking()).thenReturn(writeApiBlockingMock);
+        doNothing().when(writeApiBlockingMock).writeRecord(any(), any(), any(), any(String.class));
+
+        // when
+        equipmentStatisticsRepository.saveAll(givenSamples);
+
+        // then
+        verify(writeApiBlockingMock, times(1)).writeRecord(any(), any(), eq(WritePrecision.NS), eq(
+                "equipment_statistics,equipment_id=1 enabled=true,u=25.5 1683676800000000000\n"
+                        + "equipment_statistics,equipment_id=2 enabled=false 1683676800000000000"
+        ));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.kpfu.machinemetrics.repository;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LineProtocolEncoderTest {
+
+    @Test
+    void testEncodeMatchesPoint() {
+        // given
+        Random random = new Random(20230510L);
+        LineProtocolEncoder encoder = new LineProtocolEncoder(16);
+        List<String> expected = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            long givenId = random.nextInt(1000);
+            Instant givenTime = Instant.ofEpochSecond(1_683_676_800L + i, random.nextInt(1_000_000_000));
+            EquipmentInfluxDbData givenData = EquipmentInfluxDbData.builder()
+                    .u(randomU(random))
+                    .enabled(random.nextInt(10) == 0 ? null : random.nextBoolean())
+                    .build();
+            encoder.encode(givenId, givenTime, givenData);
+            Point point = Point.measurement("equipment_statistics")
+                    .addTag("equipment_id", Long.toString(givenId))
+                    .addField("u", givenData.getU())
+                    .time(givenTime, WritePrecision.NS);
+            if (givenData.getEnabled() != null) {
+                point.addField("enabled", givenData.getEnabled());
+            }
+            String line = point.toLineProtocol();
+            if (!line.isEmpty()) {
+                expected.add(line);
+            }
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(encoder.toLineProtocol()).isEqualTo(String.join("\n", expected));
+        softly.assertAll();
+    }
+
+    private static Double randomU(Random random) {
+        return switch (random.nextInt(6)) {
+            case 0 -> null;
+            case 1 -> Math.round(random.nextDouble() * 400_000) / 1000d;
+            case 2 -> (double) random.nextInt(400);
+            case 3 -> -random.nextDouble() * 100;
+            case 4 -> Math.round(random.nextDouble() * 1_000_000) / 1_000_000_000d;
+            default -> random.nextDouble() * 400;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentStoreEquipmentStatisticsRepositoryTest {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testSaveAllSkipsReplayedSamplesAfterRestart() {
+        // given
+        Long givenId = 1L;
+        Instant givenTime = Instant.parse("2023-05-10T10:00:00Z");
+        List<EquipmentSample> givenSamples = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            givenSamples.add(new EquipmentSample(
+                    givenId,
+                    givenTime.plusSeconds(i * 60L),
+                    EquipmentInfluxDbData.builder().u(10d * i).enabled(true).build()
+            ));
+        }
+        try (SegmentStore segmentStore = new SegmentStore(directory)) {
+            new SegmentStoreEquipmentStatisticsRepository(segmentStore).saveAll(givenSamples.subList(0, 3));
+        }
+
+        // when
+        List<Long> actual = new ArrayList<>();
+        try (SegmentStore segmentStore = new SegmentStore(directory)) {
+            var repository = new SegmentStoreEquipmentStatisticsRepository(segmentStore);
+            repository.saveAll(givenSamples.subList(1, 4));
+            repository.saveAll(givenSamples.subList(2, 4));
+            segmentStore.scan(givenId, Long.MIN_VALUE, Long.MAX_VALUE, (time, u, enabled) -> actual.add(time));
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).hasSize(givenSamples.size());
+        for (int i = 0; i < Math.min(actual.size(), givenSamples.size()); i++) {
+            softly.assertThat(actual.get(i)).isEqualTo(givenSamples.get(i).time().getEpochSecond() * NANOS_PER_SECOND);
+        }
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsistentHashRingTest {
+
+    private static final int EQUIPMENT_COUNT = 10_000;
+
+    @Test
+    void testOwnerSplitsEquipmentEvenly() {
+        // given
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+
+        // when
+        Map<String, Integer> shares = new HashMap<>();
+        for (long equipmentId = 1; equipmentId <= EQUIPMENT_COUNT; equipmentId++) {
+            shares.merge(ring.owner(equipmentId), 1, Integer::sum);
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(shares).containsOnlyKeys("a", "b", "c");
+        softly.assertThat(shares.values()).allSatisfy(share ->
+                assertThat(share).isBetween(EQUIPMENT_COUNT / 4, EQUIPMENT_COUNT * 5 / 12));
+        softly.assertAll();
+    }
+
+    @Test
+    void testJoinMovesEquipmentOnlyToNewReplica() {
+        // given
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("d", "c", "b", "a"), 128);
+
+        // when
+        int moved = 0;
+        int movedElsewhere = 0;
+        for (long equipmentId = 1; equipmentId <= EQUIPMENT_COUNT; equipmentId++) {
+            String owner = after.owner(equipmentId);
+            if (!owner.equals(before.owner(equipmentId))) {
+                moved++;
+                if (!owner.equals("d")) {
+                    movedElsewhere++;
+                }
+            }
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(moved).isBetween(EQUIPMENT_COUNT / 6, EQUIPMENT_COUNT / 3);
+        softly.assertThat(movedElsewhere).isZero();
+        softly.assertThat(after.getMembers()).containsExactly("a", "b", "c", "d");
+        softly.assertThat(new ConsistentHashRing(List.of(), 128).owner(1L)).isNull();
+        softly.assertAll();
+    }
+}
@@ -10,20 +10,39 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.support.CronTrigger;
 import ru.kpfu.machinemetrics.model.EquipmentSchedule;
+import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.PollingProperties;
+import ru.kpfu.machinemetrics.properties.ShardingProperties;
 import ru.kpfu.machinemetrics.repository.EquipmentScheduleRepository;
+import ru.kpfu.machinemetrics.task.CronGroupScheduler;
+import ru.kpfu.machinemetrics.task.EquipmentPoller;
 import ru.kpfu.machinemetrics.task.FetchDataServiceTask;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ScheduledFuture;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-@SpringBootTest(classes = {EquipmentScheduleService.class})
+@SpringBootTest(
+        classes = {
+                EquipmentScheduleService.class,
+                CronGroupScheduler.class,
+                EquipmentPoller.class,
+                PollingProperties.class,
+                EquipmentShardService.class,
+                ShardingProperties.class,
+                AppProperties.class
+        }
+)
 public class EquipmentScheduleServiceTest {
 
     @Autowired
@@ -74,7 +93,8 @@ public class EquipmentScheduleServiceTest {
         softly.assertThat(actualEquipmentSchedule.getCron()).isEqualTo(savedEquipmentSchedule.getCron());
         softly.assertThat(actualEquipmentSchedule.getEnabled()).isEqualTo(savedEquipmentSchedule.getEnabled());
         verify(taskScheduler, times(1)).schedule(any(FetchDataServiceTask.class), any(CronTrigger.class));
-        verify(equipmentStatisticsService, times(1)).process(equipmentSchedule.getId());
+        verify(equipmentStatisticsService, timeout(1000).times(1))
+                .processAll(eq(List.of(equipmentSchedule.getId())), any(Instant.class));
 
         // given
         equipmentSchedule.setCron(null);
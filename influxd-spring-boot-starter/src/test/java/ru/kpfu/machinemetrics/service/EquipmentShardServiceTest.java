@@ -0,0 +1,180 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import ru.kpfu.machinemetrics.model.EquipmentSchedule;
+import ru.kpfu.machinemetrics.model.ReplicaHeartbeat;
+import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.ShardingProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentScheduleRepository;
+import ru.kpfu.machinemetrics.task.CronGroupScheduler;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class EquipmentShardServiceTest {
+
+    private static final String NAME = "random-1";
+    private static final String CRON = "0 * * * * *";
+    private static final String EXCHANGE = "rk-random-1-replicas";
+
+    private ShardingProperties shardingProperties;
+    private AppProperties appProperties;
+    private RabbitTemplate rabbitTemplateMock;
+    private EquipmentScheduleRepository equipmentScheduleRepositoryMock;
+    private CronGroupScheduler cronGroupSchedulerMock;
+    private EquipmentStatisticsService equipmentStatisticsServiceMock;
+
+    @BeforeEach
+    void setUp() {
+        shardingProperties = new ShardingProperties();
+        shardingProperties.setEnabled(true);
+        shardingProperties.setReplicaId("a");
+        appProperties = new AppProperties();
+        appProperties.setName(NAME);
+        rabbitTemplateMock = mock(RabbitTemplate.class);
+        equipmentScheduleRepositoryMock = mock(EquipmentScheduleRepository.class);
+        cronGroupSchedulerMock = mock(CronGroupScheduler.class);
+        equipmentStatisticsServiceMock = mock(EquipmentStatisticsService.class);
+    }
+
+    @Test
+    void testOwnsEverythingWhenDisabled() {
+        // given
+        shardingProperties.setEnabled(false);
+        EquipmentShardService equipmentShardService = createService();
+
+        // when
+        equipmentShardService.rebalance();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(LongStream.rangeClosed(1, 100).allMatch(equipmentShardService::owns)).isTrue();
+        softly.assertAll();
+        verifyNoInteractions(rabbitTemplateMock, cronGroupSchedulerMock);
+    }
+
+    @Test
+    void testHeartbeatSendsReplica() {
+        // given
+        EquipmentShardService equipmentShardService = createService();
+
+        // when
+        equipmentShardService.heartbeat();
+
+        // then
+        verify(rabbitTemplateMock).convertAndSend(EXCHANGE, "", new ReplicaHeartbeat("a", false));
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(LongStream.rangeClosed(1, 100).allMatch(equipmentShardService::owns)).isTrue();
+        softly.assertAll();
+    }
+
+    @Test
+    void testOnHeartbeatAnswersNewReplicaOnly() {
+        // given
+        EquipmentShardService equipmentShardService = createService();
+
+        // when
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("a", false));
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("b", false));
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("b", false));
+
+        // then
+        verify(rabbitTemplateMock, times(1)).convertAndSend(EXCHANGE, "", new ReplicaHeartbeat("a", false));
+    }
+
+    @Test
+    void testRebalanceTakesOverShareOfLeftReplica() {
+        // given
+        List<EquipmentSchedule> givenSchedules = LongStream.rangeClosed(1, 40)
+                .mapToObj(id -> EquipmentSchedule.builder().id(id).cron(CRON).enabled(true).build())
+                .toList();
+        when(equipmentScheduleRepositoryMock.findAllByEnabledIsTrue()).thenReturn(givenSchedules);
+        when(cronGroupSchedulerMock.getEquipmentIds()).thenReturn(Set.of());
+        EquipmentShardService equipmentShardService = createService();
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("b", false));
+        equipmentShardService.heartbeat();
+
+        // when
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("b", true));
+        equipmentShardService.rebalance();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(LongStream.rangeClosed(1, 40).allMatch(equipmentShardService::owns)).isTrue();
+        softly.assertAll();
+        givenSchedules.forEach(schedule -> verify(cronGroupSchedulerMock).schedule(schedule.getId(), CRON));
+    }
+
+    @Test
+    void testRebalanceHandsOverShareOfJoinedReplica() {
+        // given
+        List<EquipmentSchedule> givenSchedules = LongStream.rangeClosed(1, 40)
+                .mapToObj(id -> EquipmentSchedule.builder().id(id).cron(CRON).enabled(true).build())
+                .toList();
+        Set<Long> givenScheduled = givenSchedules.stream().map(EquipmentSchedule::getId).collect(Collectors.toSet());
+        when(equipmentScheduleRepositoryMock.findAllByEnabledIsTrue()).thenReturn(givenSchedules);
+        when(cronGroupSchedulerMock.getEquipmentIds()).thenReturn(givenScheduled);
+        EquipmentShardService equipmentShardService = createService();
+        equipmentShardService.onHeartbeat(new ReplicaHeartbeat("b", false));
+        ConsistentHashRing expectedRing = new ConsistentHashRing(List.of("a", "b"), shardingProperties.getVirtualNodes());
+
+        // when
+        equipmentShardService.rebalance();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        for (Long equipmentId : givenScheduled) {
+            boolean owned = expectedRing.owner(equipmentId).equals("a");
+            softly.assertThat(equipmentShardService.owns(equipmentId)).isEqualTo(owned);
+            verify(cronGroupSchedulerMock, times(owned ? 1 : 0)).schedule(equipmentId, CRON);
+            verify(cronGroupSchedulerMock, times(owned ? 0 : 1)).unschedule(equipmentId);
+            verify(equipmentStatisticsServiceMock, times(owned ? 0 : 1)).forget(equipmentId);
+        }
+        softly.assertThat(givenScheduled.stream().filter(equipmentShardService::owns).count()).isBetween(5L, 35L);
+        softly.assertAll();
+    }
+
+    @Test
+    void testRebalanceSchedulesEquipmentSavedByOtherReplica() {
+        // given
+        shardingProperties.setReplicaId("b");
+        when(equipmentScheduleRepositoryMock.findAllByEnabledIsTrue()).thenReturn(List.of(
+                EquipmentSchedule.builder().id(7L).cron(CRON).enabled(true).build()
+        ));
+        when(cronGroupSchedulerMock.getEquipmentIds()).thenReturn(Set.of());
+        EquipmentShardService equipmentShardService = createService();
+
+        // when
+        equipmentShardService.rebalance();
+
+        // then
+        verify(equipmentStatisticsServiceMock).forget(7L);
+        verify(cronGroupSchedulerMock).schedule(7L, CRON);
+        verify(cronGroupSchedulerMock, never()).unschedule(any());
+        verify(rabbitTemplateMock, never()).convertAndSend(EXCHANGE, "", new ReplicaHeartbeat("b", true));
+    }
+
+    private EquipmentShardService createService() {
+        return new EquipmentShardService(
+                shardingProperties,
+                appProperties,
+                rabbitTemplateMock,
+                equipmentScheduleRepositoryMock,
+                cronGroupSchedulerMock,
+                equipmentStatisticsServiceMock
+        );
+    }
+}
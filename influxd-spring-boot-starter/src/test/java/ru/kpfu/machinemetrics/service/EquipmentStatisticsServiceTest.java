@@ -0,0 +1,197 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.stereotype.Service;
+import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.model.EquipmentSample;
+import ru.kpfu.machinemetrics.model.EquipmentSamplesDroppedEvent;
+import ru.kpfu.machinemetrics.properties.IngestionProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentStatisticsRepository;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(
+        classes = {EquipmentStatisticsServiceTest.TestEquipmentStatisticsService.class},
+        properties = {"app.ingestion.mode=changes", "app.ingestion.u-deadband=1.0", "app.ingestion.heartbeat=1h"}
+)
+public class EquipmentStatisticsServiceTest {
+
+    @Autowired
+    private TestEquipmentStatisticsService equipmentStatisticsService;
+
+    @MockBean
+    private EquipmentStatisticsRepository equipmentStatisticsRepositoryMock;
+
+    @Test
+    void testProcessWritesChangesOnly() {
+        // given
+        Long givenId = 1L;
+        equipmentStatisticsService.forget(givenId);
+        equipmentStatisticsService.data.addAll(List.of(
+                data(20d, true),
+                data(20.5, true),
+                data(21.2, true),
+                data(21.2, false),
+                data(21.2, false),
+                data(null, false)
+        ));
+
+        // when
+        for (int i = 0; i < 6; i++) {
+            equipmentStatisticsService.process(givenId);
+        }
+
+        // then
+        ArgumentCaptor<EquipmentInfluxDbData> captor = ArgumentCaptor.forClass(EquipmentInfluxDbData.class);
+        verify(equipmentStatisticsRepositoryMock, times(4)).save(eq(givenId), any(Instant.class), captor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(captor.getAllValues()).extracting(EquipmentInfluxDbData::getU)
+                .containsExactly(20d, 21.2, 21.2, null);
+        softly.assertThat(captor.getAllValues()).extracting(EquipmentInfluxDbData::getEnabled)
+                .containsExactly(true, true, false, false);
+        softly.assertAll();
+    }
+
+    @Test
+    void testForgetWritesNextSample() {
+        // given
+        Long givenId = 2L;
+        equipmentStatisticsService.data.addAll(List.of(data(20d, true), data(20d, true)));
+        equipmentStatisticsService.process(givenId);
+
+        // when
+        equipmentStatisticsService.forget(givenId);
+        equipmentStatisticsService.process(givenId);
+
+        // then
+        verify(equipmentStatisticsRepositoryMock, times(2)).save(eq(givenId), any(Instant.class), any());
+    }
+
+    @Test
+    void testProcessRewritesSampleAfterFailedWrite() {
+        // given
+        Long givenId = 8L;
+        equipmentStatisticsService.data.addAll(List.of(data(20d, true), data(20d, true)));
+        doThrow(new IllegalStateException("Storage is down")).doNothing()
+                .when(equipmentStatisticsRepositoryMock).save(eq(givenId), any(Instant.class), any());
+        assertThatThrownBy(() -> equipmentStatisticsService.process(givenId)).isInstanceOf(IllegalStateException.class);
+
+        // when
+        equipmentStatisticsService.process(givenId);
+
+        // then
+        verify(equipmentStatisticsRepositoryMock, times(2)).save(eq(givenId), any(Instant.class), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessAllRewritesDroppedSamples() {
+        // given
+        equipmentStatisticsService.data.addAll(List.of(
+                data(20d, true),
+                data(30d, true),
+                data(20d, true),
+                data(30d, true)
+        ));
+        ArgumentCaptor<List<EquipmentSample>> captor = ArgumentCaptor.forClass(List.class);
+        doNothing().when(equipmentStatisticsRepositoryMock).saveAll(captor.capture());
+        equipmentStatisticsService.processAll(List.of(9L, 10L));
+
+        // when
+        var dropped = captor.getValue().get(0);
+        equipmentStatisticsService.onSamplesDropped(new EquipmentSamplesDroppedEvent(List.of(dropped)));
+        equipmentStatisticsService.processAll(List.of(9L, 10L));
+
+        // then
+        verify(equipmentStatisticsRepositoryMock, times(2)).saveAll(any());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(captor.getAllValues().get(1)).extracting(EquipmentSample::equipmentId).containsExactly(9L);
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessAllWritesOneBatch() {
+        // given
+        equipmentStatisticsService.data.addAll(List.of(data(20d, true), data(30d, false)));
+        equipmentStatisticsService.failing.add(4L);
+
+        // when
+        equipmentStatisticsService.processAll(List.of(3L, 4L, 5L));
+
+        // then
+        ArgumentCaptor<List<EquipmentSample>> captor = ArgumentCaptor.forClass(List.class);
+        verify(equipmentStatisticsRepositoryMock, times(1)).saveAll(captor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(captor.getValue()).extracting(EquipmentSample::equipmentId).containsExactly(3L, 5L);
+        softly.assertThat(captor.getValue()).extracting(EquipmentSample::time).containsOnly(captor.getValue().get(0).time());
+        softly.assertThat(captor.getValue()).extracting(sample -> sample.data().getU()).containsExactly(20d, 30d);
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessAllWritesAtTickTime() {
+        // given
+        Instant givenTickTime = Instant.parse("2023-03-01T10:00:00Z");
+        equipmentStatisticsService.data.addAll(List.of(data(20d, true), data(30d, false)));
+
+        // when
+        equipmentStatisticsService.processAll(List.of(6L, 7L), givenTickTime);
+
+        // then
+        ArgumentCaptor<List<EquipmentSample>> captor = ArgumentCaptor.forClass(List.class);
+        verify(equipmentStatisticsRepositoryMock, times(1)).saveAll(captor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(captor.getValue())
+                .extracting(EquipmentSample::time)
+                .containsExactly(givenTickTime, givenTickTime);
+        softly.assertAll();
+    }
+
+    private static EquipmentInfluxDbData data(Double u, Boolean enabled) {
+        return EquipmentInfluxDbData.builder().u(u).enabled(enabled).build();
+    }
+
+    @Service
+    @EnableConfigurationProperties(IngestionProperties.class)
+    static class TestEquipmentStatisticsService extends EquipmentStatisticsService {
+
+        private final Deque<EquipmentInfluxDbData> data = new ArrayDeque<>();
+        private final Set<Long> failing = new HashSet<>();
+
+        TestEquipmentStatisticsService(
+                EquipmentStatisticsRepository equipmentStatisticsRepository,
+                IngestionProperties ingestionProperties
+        ) {
+            super(equipmentStatisticsRepository, ingestionProperties);
+        }
+
+        @Override
+        public EquipmentInfluxDbData getEquipmentInfluxDbData(Long equipmentId) {
+            if (failing.contains(equipmentId)) {
+                throw new IllegalStateException("Device " + equipmentId + " does not answer");
+            }
+            return data.poll();
+        }
+    }
+}
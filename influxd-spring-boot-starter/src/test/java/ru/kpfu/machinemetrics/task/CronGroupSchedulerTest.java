@@ -0,0 +1,138 @@
+package ru.kpfu.machinemetrics.task;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CronGroupSchedulerTest {
+
+    private static final String EVERY_SECOND = "* * * * * *";
+    private static final String EVERY_MINUTE = "0 * * * * *";
+
+    private TaskScheduler taskSchedulerMock;
+    private EquipmentPoller equipmentPollerMock;
+    private ScheduledFuture<?> everySecondFuture;
+    private ScheduledFuture<?> everyMinuteFuture;
+    private CronGroupScheduler cronGroupScheduler;
+
+    @BeforeEach
+    void setUp() {
+        taskSchedulerMock = mock(TaskScheduler.class);
+        equipmentPollerMock = mock(EquipmentPoller.class);
+        everySecondFuture = mock(ScheduledFuture.class);
+        everyMinuteFuture = mock(ScheduledFuture.class);
+        doReturn(everySecondFuture, everyMinuteFuture).when(taskSchedulerMock).schedule(any(Runnable.class), any(Trigger.class));
+        cronGroupScheduler = new CronGroupScheduler(taskSchedulerMock, equipmentPollerMock);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testScheduleGroupsByCron() {
+        // when
+        cronGroupScheduler.schedule(1L, EVERY_SECOND);
+        cronGroupScheduler.schedule(2L, EVERY_SECOND);
+        cronGroupScheduler.schedule(3L, " " + EVERY_SECOND);
+
+        // then
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskSchedulerMock, times(1)).schedule(captor.capture(), any(Trigger.class));
+        captor.getValue().run();
+
+        ArgumentCaptor<Collection<Long>> batchCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(equipmentPollerMock, times(1)).poll(batchCaptor.capture(), any());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(cronGroupScheduler.getGroupCount()).isEqualTo(1);
+        softly.assertThat(batchCaptor.getValue()).containsExactlyInAnyOrder(1L, 2L, 3L);
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testScheduleMovesEquipmentToNewCron() {
+        // given
+        cronGroupScheduler.schedule(1L, EVERY_SECOND);
+        cronGroupScheduler.schedule(2L, EVERY_SECOND);
+
+        // when
+        cronGroupScheduler.schedule(1L, EVERY_MINUTE);
+        cronGroupScheduler.schedule(2L, EVERY_MINUTE);
+
+        // then
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskSchedulerMock, times(2)).schedule(captor.capture(), any(Trigger.class));
+        captor.getAllValues().get(1).run();
+
+        ArgumentCaptor<Collection<Long>> batchCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(equipmentPollerMock, times(1)).poll(batchCaptor.capture(), any());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(cronGroupScheduler.getGroupCount()).isEqualTo(1);
+        softly.assertThat(batchCaptor.getValue()).containsExactlyInAnyOrder(1L, 2L);
+        softly.assertAll();
+        verify(everySecondFuture, times(1)).cancel(anyBoolean());
+        verify(everyMinuteFuture, never()).cancel(anyBoolean());
+    }
+
+    @Test
+    void testTickPassesNominalTime() {
+        // given
+        cronGroupScheduler.schedule(1L, EVERY_MINUTE);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Trigger> triggerCaptor = ArgumentCaptor.forClass(Trigger.class);
+        verify(taskSchedulerMock).schedule(captor.capture(), triggerCaptor.capture());
+        Instant givenTickTime = triggerCaptor.getValue().nextExecution(new SimpleTriggerContext());
+
+        // when
+        captor.getValue().run();
+
+        // then
+        ArgumentCaptor<Tick> tickCaptor = ArgumentCaptor.forClass(Tick.class);
+        verify(equipmentPollerMock, times(1)).poll(eq(List.of(1L)), tickCaptor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(givenTickTime.getEpochSecond() % 60).isZero();
+        softly.assertThat(tickCaptor.getValue().time()).isEqualTo(givenTickTime);
+        softly.assertThat(tickCaptor.getValue().period()).isEqualTo(Duration.ofMinutes(1));
+        softly.assertAll();
+    }
+
+    @Test
+    void testUnscheduleCancelsEmptyGroup() {
+        // given
+        cronGroupScheduler.schedule(1L, EVERY_SECOND);
+        cronGroupScheduler.schedule(2L, EVERY_SECOND);
+
+        // when
+        cronGroupScheduler.unschedule(1L);
+        cronGroupScheduler.unschedule(3L);
+
+        // then
+        verify(everySecondFuture, never()).cancel(anyBoolean());
+
+        // when
+        cronGroupScheduler.unschedule(2L);
+
+        // then
+        verify(everySecondFuture, times(1)).cancel(anyBoolean());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(cronGroupScheduler.getGroupCount()).isZero();
+        softly.assertAll();
+    }
+}
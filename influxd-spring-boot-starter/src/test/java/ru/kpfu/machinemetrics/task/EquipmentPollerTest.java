@@ -0,0 +1,195 @@
+package ru.kpfu.machinemetrics.task;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.kpfu.machinemetrics.properties.PollingProperties;
+import ru.kpfu.machinemetrics.service.EquipmentStatisticsService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EquipmentPollerTest {
+
+    private EquipmentStatisticsService equipmentStatisticsServiceMock;
+    private PollingProperties pollingProperties;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        equipmentStatisticsServiceMock = mock(EquipmentStatisticsService.class);
+        pollingProperties = new PollingProperties();
+        pollingProperties.setBatchSize(1);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testPollSkipsEquipmentStillRunning() throws InterruptedException {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS))
+                .when(equipmentStatisticsServiceMock).processAll(eq(List.of(1L)), any());
+        EquipmentPoller equipmentPoller = createPoller();
+        equipmentPoller.poll(List.of(1L), tick(Instant.now()));
+        verify(equipmentStatisticsServiceMock, timeout(1000)).processAll(eq(List.of(1L)), any());
+
+        // when
+        equipmentPoller.poll(List.of(1L, 2L), tick(Instant.now()));
+
+        // then
+        verify(equipmentStatisticsServiceMock, timeout(1000)).processAll(eq(List.of(2L)), any());
+        release.countDown();
+        verify(equipmentStatisticsServiceMock, times(1)).processAll(eq(List.of(1L)), any());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(meterRegistry.counter("equipment-statistics.polling.overrun").count()).isEqualTo(1);
+        softly.assertThat(meterRegistry.counter("equipment-statistics.polling.late").count()).isZero();
+        softly.assertAll();
+    }
+
+    @Test
+    void testPollInterruptsAfterTimeout() {
+        // given
+        pollingProperties.setTimeout(Duration.ofMillis(100));
+        AtomicBoolean interrupted = new AtomicBoolean();
+        doAnswer(invocation -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        }).when(equipmentStatisticsServiceMock).processAll(eq(List.of(1L)), any());
+        EquipmentPoller equipmentPoller = createPoller();
+
+        // when
+        equipmentPoller.poll(List.of(1L), tick(Instant.now()));
+        verify(equipmentStatisticsServiceMock, timeout(1000)).processAll(eq(List.of(1L)), any());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!interrupted.get() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(interrupted).isTrue();
+        softly.assertThat(meterRegistry.counter("equipment-statistics.polling.timeout").count()).isEqualTo(1);
+        softly.assertAll();
+    }
+
+    @Test
+    void testPollCountsLateTick() {
+        // given
+        EquipmentPoller equipmentPoller = createPoller();
+
+        // when
+        equipmentPoller.poll(List.of(1L), tick(Instant.now().minusSeconds(5)));
+
+        // then
+        verify(equipmentStatisticsServiceMock, timeout(1000)).processAll(eq(List.of(1L)), any());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(meterRegistry.counter("equipment-statistics.polling.late").count()).isEqualTo(1);
+        softly.assertAll();
+    }
+
+    @Test
+    void testPollSpreadsTickAndWritesAtNominalTime() {
+        // given
+        pollingProperties.setJitter(0.5);
+        List<Long> startedAt = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> startedAt.add(System.nanoTime()))
+                .when(equipmentStatisticsServiceMock).processAll(any(), any());
+        EquipmentPoller equipmentPoller = createPoller();
+        Instant givenTickTime = Instant.now();
+        long tickNanos = System.nanoTime();
+        Tick givenTick = new Tick(givenTickTime, givenTickTime.plusSeconds(2));
+
+        // when
+        equipmentPoller.poll(LongStream.rangeClosed(1, 20).boxed().toList(), givenTick);
+
+        // then
+        verify(equipmentStatisticsServiceMock, timeout(2000).times(20)).processAll(any(), eq(givenTickTime));
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(Collections.max(startedAt) - tickNanos).isBetween(
+                TimeUnit.MILLISECONDS.toNanos(300),
+                TimeUnit.MILLISECONDS.toNanos(1500)
+        );
+        softly.assertAll();
+    }
+
+    @Test
+    void testPollSpreadsFleetSmallerThanBatch() throws InterruptedException {
+        // given
+        pollingProperties.setJitter(0.5);
+        pollingProperties.setBatchSize(100);
+        CountDownLatch polled = new CountDownLatch(20);
+        List<Long> startedAt = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            startedAt.add(System.nanoTime());
+            invocation.<List<Long>>getArgument(0).forEach(equipmentId -> polled.countDown());
+            return null;
+        }).when(equipmentStatisticsServiceMock).processAll(any(), any());
+        EquipmentPoller equipmentPoller = createPoller();
+        Instant givenTickTime = Instant.now();
+        Tick givenTick = new Tick(givenTickTime, givenTickTime.plusSeconds(2));
+
+        // when
+        equipmentPoller.poll(LongStream.rangeClosed(1, 20).boxed().toList(), givenTick);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(polled.await(2, TimeUnit.SECONDS)).isTrue();
+        softly.assertThat(startedAt).hasSizeGreaterThan(10);
+        softly.assertThat(Collections.max(startedAt) - Collections.min(startedAt))
+                .isGreaterThan(TimeUnit.MILLISECONDS.toNanos(300));
+        softly.assertAll();
+    }
+
+    @Test
+    void testPhaseIsUniform() {
+        // given
+        int[] buckets = new int[10];
+
+        // when
+        for (long equipmentId = 1; equipmentId <= 10_000; equipmentId++) {
+            buckets[(int) (EquipmentPoller.phase(equipmentId) * buckets.length)]++;
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(EquipmentPoller.phase(42L)).isEqualTo(EquipmentPoller.phase(42L));
+        for (int count : buckets) {
+            softly.assertThat(count).isBetween(800, 1200);
+        }
+        softly.assertAll();
+    }
+
+    private static Tick tick(Instant time) {
+        return new Tick(time, time.plusSeconds(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private EquipmentPoller createPoller() {
+        ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+        when(meterRegistryProvider.getIfAvailable(any())).thenReturn(meterRegistry);
+        return new EquipmentPoller(equipmentStatisticsServiceMock, pollingProperties, meterRegistryProvider);
+    }
+}
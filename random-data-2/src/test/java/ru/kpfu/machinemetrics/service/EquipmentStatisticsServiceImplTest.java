@@ -26,11 +26,11 @@ public class EquipmentStatisticsServiceImplTest {
     @Test
     public void testGenerateData() {
         // given
-        doNothing().when(equipmentStatisticsRepositoryMock).save(any());
+        doNothing().when(equipmentStatisticsRepositoryMock).save(any(), any(), any());
 
         // expect
         assertThatCode(() -> equipmentStatisticsService.process(1L)).doesNotThrowAnyException();
-        verify(equipmentStatisticsRepositoryMock).save(any());
+        verify(equipmentStatisticsRepositoryMock).save(any(), any(), any());
     }
 
 }
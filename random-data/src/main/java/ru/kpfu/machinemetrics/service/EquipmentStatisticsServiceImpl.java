@@ -2,6 +2,7 @@ package ru.kpfu.machinemetrics.service;
 
 import org.springframework.stereotype.Service;
 import ru.kpfu.machinemetrics.model.EquipmentInfluxDbData;
+import ru.kpfu.machinemetrics.properties.IngestionProperties;
 import ru.kpfu.machinemetrics.repository.EquipmentStatisticsRepository;
 
 import java.util.Random;
@@ -13,8 +14,11 @@ public class EquipmentStatisticsServiceImpl extends EquipmentStatisticsService {
     private static Double currValue = 0.0;
     private static int t = 1;
     private static int rate = 1;
-    public EquipmentStatisticsServiceImpl(EquipmentStatisticsRepository equipmentStatisticsRepository) {
-        super(equipmentStatisticsRepository);
+    public EquipmentStatisticsServiceImpl(
+            EquipmentStatisticsRepository equipmentStatisticsRepository,
+            IngestionProperties ingestionProperties
+    ) {
+        super(equipmentStatisticsRepository, ingestionProperties);
     }
 
     @Override
@@ -0,0 +1,7 @@
+package ru.kpfu.machinemetrics.segment;
+
+/**
+ * One sample of an equipment. {@code time} is in epoch nanoseconds and a missing {@code u} is {@link Double#NaN}.
+ */
+public record Sample(long time, double u, boolean enabled) {
+}
@@ -0,0 +1,7 @@
+package ru.kpfu.machinemetrics.segment;
+
+@FunctionalInterface
+public interface SampleConsumer {
+
+    void accept(long time, double u, boolean enabled);
+}
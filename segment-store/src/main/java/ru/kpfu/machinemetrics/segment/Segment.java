@@ -0,0 +1,223 @@
+package ru.kpfu.machinemetrics.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * One memory-mapped file with the samples of one equipment for one UTC day.
+ * <p>
+ * The file starts with a header holding the offset of the committed end, followed by blocks. Every append writes one
+ * block and only then moves the committed end, so readers in other processes never see a half written block and a
+ * torn append is overwritten by the next one. A block is
+ * <pre>
+ * int length, int count, long minTime, long maxTime, long firstTime,
+ * count - 1 zig-zag varint time deltas, enabled bits, u presence bits, u of the samples that have it
+ * </pre>
+ */
+final class Segment implements Closeable {
+
+    static final int MAGIC = 0x4d4d5353;
+    static final int VERSION = 1;
+
+    private static final int END_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 3 * 8;
+
+    private final long day;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long end;
+
+    private Segment(long day, FileChannel channel, MappedByteBuffer buffer, long end) {
+        this.day = day;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.end = end;
+    }
+
+    static Segment open(Path path, long day, int initialSize) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        try {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, initialSize));
+            long end;
+            if (size < HEADER_SIZE) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(END_OFFSET, HEADER_SIZE);
+                end = HEADER_SIZE;
+            } else {
+                end = readEnd(buffer, path);
+            }
+            return new Segment(day, channel, buffer, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getDay() {
+        return day;
+    }
+
+    synchronized void append(List<Sample> samples, int from, int to) throws IOException {
+        ByteBuffer block = encode(samples, from, to);
+        long newEnd = end + block.remaining();
+        if (newEnd > buffer.capacity()) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(newEnd, 2L * buffer.capacity()));
+        }
+        buffer.put((int) end, block, 0, block.remaining());
+        buffer.putLong(END_OFFSET, newEnd);
+        end = newEnd;
+    }
+
+    synchronized void scan(long from, long to, SampleConsumer consumer) {
+        decode(buffer, end, from, to, consumer);
+    }
+
+    synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Reads a segment that is not open for writing in this process.
+     */
+    static void scan(Path path, long from, long to, SampleConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            decode(buffer, Math.min(readEnd(buffer, path), size), from, to, consumer);
+        }
+    }
+
+    private static long readEnd(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        return buffer.getLong(END_OFFSET);
+    }
+
+    private static ByteBuffer encode(List<Sample> samples, int from, int to) {
+        int count = to - from;
+        int bitsLength = (count + 7) / 8;
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + count * (10 + 8) + 2 * bitsLength);
+        byte[] enabled = new byte[bitsLength];
+        byte[] uPresent = new byte[bitsLength];
+
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            minTime = Math.min(minTime, samples.get(i).time());
+            maxTime = Math.max(maxTime, samples.get(i).time());
+        }
+        block.position(4);
+        block.putInt(count);
+        block.putLong(minTime);
+        block.putLong(maxTime);
+        block.putLong(samples.get(from).time());
+        for (int i = from + 1; i < to; i++) {
+            putVarLong(block, samples.get(i).time() - samples.get(i - 1).time());
+        }
+        for (int i = 0; i < count; i++) {
+            var sample = samples.get(from + i);
+            if (sample.enabled()) {
+                enabled[i >> 3] |= (byte) (1 << (i & 7));
+            }
+            if (!Double.isNaN(sample.u())) {
+                uPresent[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        block.put(enabled);
+        block.put(uPresent);
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(samples.get(i).u())) {
+                block.putDouble(samples.get(i).u());
+            }
+        }
+        block.putInt(0, block.position() - 4);
+        block.flip();
+        return block;
+    }
+
+    private static void decode(ByteBuffer buffer, long end, long from, long to, SampleConsumer consumer) {
+        ByteBuffer data = buffer.duplicate();
+        int position = HEADER_SIZE;
+        long[] times = new long[0];
+        while (position + BLOCK_HEADER_SIZE <= end) {
+            int length = data.getInt(position);
+            int next = position + 4 + length;
+            if (length < BLOCK_HEADER_SIZE - 4 || next > end) {
+                return;
+            }
+            int count = data.getInt(position + 4);
+            long minTime = data.getLong(position + 8);
+            long maxTime = data.getLong(position + 16);
+            if (maxTime < from || minTime >= to) {
+                position = next;
+                continue;
+            }
+
+            if (times.length < count) {
+                times = new long[count];
+            }
+            data.position(position + 24);
+            times[0] = data.getLong();
+            for (int i = 1; i < count; i++) {
+                times[i] = times[i - 1] + getVarLong(data);
+            }
+            int bitsLength = (count + 7) / 8;
+            int enabledOffset = data.position();
+            int uPresentOffset = enabledOffset + bitsLength;
+            data.position(uPresentOffset + bitsLength);
+            for (int i = 0; i < count; i++) {
+                boolean enabled = (data.get(enabledOffset + (i >> 3)) & (1 << (i & 7))) != 0;
+                double u = (data.get(uPresentOffset + (i >> 3)) & (1 << (i & 7))) != 0 ? data.getDouble() : Double.NaN;
+                if (times[i] >= from && times[i] < to) {
+                    consumer.accept(times[i], u, enabled);
+                }
+            }
+            position = next;
+        }
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        buffer.put((byte) zigZag);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
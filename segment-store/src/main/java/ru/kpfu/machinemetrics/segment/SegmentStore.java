@@ -0,0 +1,276 @@
+package ru.kpfu.machinemetrics.segment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of equipment samples partitioned by equipment and UTC day: {@code <directory>/<equipmentId>/<epochDay>.seg}.
+ * <p>
+ * Only one process may append to a directory, any number of processes may read it. Samples are returned in append
+ * order, which is time order as long as every equipment's samples are appended in time order.
+ */
+public class SegmentStore implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final long NANOS_PER_DAY = 86_400L * 1_000_000_000L;
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int initialSegmentSize;
+    private final Map<Long, Segment> writers = new ConcurrentHashMap<>();
+
+    public SegmentStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SegmentStore(Path directory, int initialSegmentSize) {
+        this.directory = directory;
+        this.initialSegmentSize = initialSegmentSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void append(long equipmentId, long time, double u, boolean enabled) {
+        append(equipmentId, List.of(new Sample(time, u, enabled)));
+    }
+
+    /**
+     * Appends the samples as one block per day they fall into.
+     */
+    public void append(long equipmentId, List<Sample> samples) {
+        int from = 0;
+        while (from < samples.size()) {
+            long day = toDay(samples.get(from).time());
+            int to = from + 1;
+            while (to < samples.size() && toDay(samples.get(to).time()) == day) {
+                to++;
+            }
+            append(equipmentId, day, samples, from, to);
+            from = to;
+        }
+    }
+
+    private synchronized void append(long equipmentId, long day, List<Sample> samples, int from, int to) {
+        try {
+            Segment current = writers.get(equipmentId);
+            if (current != null && current.getDay() > day) {
+                try (Segment late = openWriter(equipmentId, day)) {
+                    late.append(samples, from, to);
+                }
+                return;
+            }
+            if (current == null || current.getDay() != day) {
+                Segment opened = openWriter(equipmentId, day);
+                writers.put(equipmentId, opened);
+                if (current != null) {
+                    current.close();
+                }
+                current = opened;
+            }
+            current.append(samples, from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment openWriter(long equipmentId, long day) throws IOException {
+        Path equipmentDirectory = directory.resolve(Long.toString(equipmentId));
+        Files.createDirectories(equipmentDirectory);
+        return Segment.open(equipmentDirectory.resolve(day + SUFFIX), day, initialSegmentSize);
+    }
+
+    /**
+     * Passes the samples with {@code from <= time < to} to the consumer.
+     */
+    public void scan(long equipmentId, long from, long to, SampleConsumer consumer) {
+        if (from >= to) {
+            return;
+        }
+        long fromDay = toDay(from);
+        long toDay = toDay(to - 1);
+        for (long day : getDays(equipmentId)) {
+            if (day >= fromDay && day <= toDay) {
+                scan(equipmentId, day, from, to, consumer);
+            }
+        }
+    }
+
+    /**
+     * Latest sample with {@code time < before}, or {@code null}.
+     */
+    public Sample findLastBefore(long equipmentId, long before) {
+        long beforeDay = toDay(before);
+        List<Long> days = getDays(equipmentId);
+        for (int i = days.size() - 1; i >= 0; i--) {
+            if (days.get(i) > beforeDay) {
+                continue;
+            }
+            var last = new Sample[1];
+            scan(equipmentId, days.get(i), Long.MIN_VALUE, before, (time, u, enabled) -> {
+                if (last[0] == null || time >= last[0].time()) {
+                    last[0] = new Sample(time, u, enabled);
+                }
+            });
+            if (last[0] != null) {
+                return last[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Earliest sample, or {@code null}.
+     */
+    public Sample findFirst(long equipmentId) {
+        for (long day : getDays(equipmentId)) {
+            var first = new Sample[1];
+            scan(equipmentId, day, Long.MIN_VALUE, Long.MAX_VALUE, (time, u, enabled) -> {
+                if (first[0] == null || time < first[0].time()) {
+                    first[0] = new Sample(time, u, enabled);
+                }
+            });
+            if (first[0] != null) {
+                return first[0];
+            }
+        }
+        return null;
+    }
+
+    private void scan(long equipmentId, long day, long from, long to, SampleConsumer consumer) {
+        Segment writer = writers.get(equipmentId);
+        if (writer != null && writer.getDay() == day) {
+            writer.scan(from, to, consumer);
+            return;
+        }
+        try {
+            Segment.scan(directory.resolve(Long.toString(equipmentId)).resolve(day + SUFFIX), from, to, consumer);
+        } catch (NoSuchFileException e) {
+            // deleted while reading
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<Long> getEquipmentIds() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(file -> file.getFileName().toString())
+                    .filter(SegmentStore::isNumber)
+                    .map(Long::valueOf)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void delete(long equipmentId) {
+        Path equipmentDirectory = directory.resolve(Long.toString(equipmentId));
+        try {
+            Segment writer = writers.remove(equipmentId);
+            if (writer != null) {
+                writer.close();
+            }
+            if (!Files.exists(equipmentDirectory)) {
+                return;
+            }
+            try (Stream<Path> files = Files.list(equipmentDirectory)) {
+                for (var file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(equipmentDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the days of the equipment that lie entirely in {@code from <= time < to}, and the equipment once no day
+     * is left.
+     */
+    public synchronized void delete(long equipmentId, long from, long to) {
+        long fromDay = -Math.floorDiv(-from, NANOS_PER_DAY);
+        long toDay = Math.floorDiv(to, NANOS_PER_DAY);
+        Path equipmentDirectory = directory.resolve(Long.toString(equipmentId));
+        try {
+            Segment writer = writers.get(equipmentId);
+            if (writer != null && writer.getDay() >= fromDay && writer.getDay() < toDay) {
+                writers.remove(equipmentId);
+                writer.close();
+            }
+            List<Long> days = getDays(equipmentId);
+            for (long day : days) {
+                if (day >= fromDay && day < toDay) {
+                    Files.deleteIfExists(equipmentDirectory.resolve(day + SUFFIX));
+                }
+            }
+            if (!days.isEmpty() && getDays(equipmentId).isEmpty() && !writers.containsKey(equipmentId)) {
+                delete(equipmentId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the open segments to the disk.
+     */
+    public void flush() {
+        writers.values().forEach(Segment::force);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            for (var writer : writers.values()) {
+                writer.close();
+            }
+            writers.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Long> getDays(long equipmentId) {
+        Path equipmentDirectory = directory.resolve(Long.toString(equipmentId));
+        if (!Files.isDirectory(equipmentDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(equipmentDirectory)) {
+            List<Long> result = new ArrayList<>();
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> name.substring(0, name.length() - SUFFIX.length()))
+                    .filter(SegmentStore::isNumber)
+                    .forEach(name -> result.add(Long.valueOf(name)));
+            result.sort(Comparator.naturalOrder());
+            return result;
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isNumber(String name) {
+        return !name.isEmpty() && name.chars().allMatch(c -> c == '-' || Character.isDigit(c));
+    }
+
+    private static long toDay(long time) {
+        return Math.floorDiv(time, NANOS_PER_DAY);
+    }
+}
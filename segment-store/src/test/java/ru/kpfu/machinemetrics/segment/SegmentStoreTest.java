@@ -0,0 +1,126 @@
+package ru.kpfu.machinemetrics.segment;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SegmentStoreTest {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final long BASE_TIME = 1_683_676_800_000_000_000L;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testScanReturnsAppendedSamplesInRange() {
+        // given
+        Random random = new Random(20230510L);
+        List<Sample> givenSamples = new ArrayList<>();
+        long time = BASE_TIME;
+        for (int i = 0; i < 5000; i++) {
+            time += 1 + random.nextInt(10) * NANOS_PER_MINUTE;
+            givenSamples.add(new Sample(time, random.nextInt(5) == 0 ? Double.NaN : random.nextDouble() * 100, random.nextBoolean()));
+        }
+        long givenFrom = givenSamples.get(1000).time();
+        long givenTo = givenSamples.get(4000).time();
+
+        // when
+        List<Sample> actual = new ArrayList<>();
+        try (SegmentStore store = new SegmentStore(directory, 1024)) {
+            for (int i = 0; i < givenSamples.size(); ) {
+                int next = Math.min(i + 1 + random.nextInt(50), givenSamples.size());
+                store.append(1L, givenSamples.subList(i, next));
+                i = next;
+            }
+        }
+        try (SegmentStore store = new SegmentStore(directory)) {
+            store.scan(1L, givenFrom, givenTo, (sampleTime, u, enabled) -> actual.add(new Sample(sampleTime, u, enabled)));
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).hasSize(3000);
+        for (int i = 0; i < Math.min(actual.size(), 3000); i++) {
+            softly.assertThat(actual.get(i)).isEqualTo(givenSamples.get(1000 + i));
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    void testFindLastBeforeLooksIntoEarlierDays() {
+        // given
+        Sample givenFirst = new Sample(BASE_TIME + NANOS_PER_MINUTE, 10d, true);
+        Sample givenSecond = new Sample(BASE_TIME + 2 * NANOS_PER_MINUTE, Double.NaN, false);
+        long givenBefore = BASE_TIME + 3 * 24 * 60 * NANOS_PER_MINUTE;
+
+        // when
+        Sample actualBefore;
+        Sample actualBetween;
+        Sample actualFirst;
+        try (SegmentStore store = new SegmentStore(directory)) {
+            store.append(1L, List.of(givenFirst, givenSecond));
+            store.append(1L, givenBefore, 30d, true);
+            actualBefore = store.findLastBefore(1L, givenBefore);
+            actualBetween = store.findLastBefore(1L, givenSecond.time());
+            actualFirst = store.findLastBefore(1L, givenFirst.time());
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualBefore).isEqualTo(givenSecond);
+        softly.assertThat(actualBetween).isEqualTo(givenFirst);
+        softly.assertThat(actualFirst).isNull();
+        softly.assertAll();
+    }
+
+    @Test
+    void testDeleteRemovesOnlyGivenEquipment() {
+        // given
+        try (SegmentStore store = new SegmentStore(directory)) {
+            store.append(1L, BASE_TIME, 10d, true);
+            store.append(2L, BASE_TIME, 20d, false);
+
+            // when
+            store.delete(1L);
+
+            // then
+            List<Sample> actual = new ArrayList<>();
+            store.scan(2L, BASE_TIME, BASE_TIME + 1, (time, u, enabled) -> actual.add(new Sample(time, u, enabled)));
+
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(store.getEquipmentIds()).containsExactly(2L);
+            softly.assertThat(store.findLastBefore(1L, BASE_TIME + 1)).isNull();
+            softly.assertThat(actual).containsExactly(new Sample(BASE_TIME, 20d, false));
+            softly.assertAll();
+        }
+    }
+
+    @Test
+    void testDeleteRangeRemovesWholeDays() {
+        // given
+        long nanosPerDay = 24 * 60 * NANOS_PER_MINUTE;
+        try (SegmentStore store = new SegmentStore(directory)) {
+            for (int day = 0; day < 3; day++) {
+                store.append(1L, BASE_TIME + day * nanosPerDay + NANOS_PER_MINUTE, day, true);
+            }
+
+            // when
+            store.delete(1L, BASE_TIME - NANOS_PER_MINUTE, BASE_TIME + 2 * nanosPerDay);
+            Sample actualAfterFirst = store.findFirst(1L);
+            store.delete(1L, BASE_TIME + 2 * nanosPerDay, BASE_TIME + 3 * nanosPerDay);
+
+            // then
+            SoftAssertions softly = new SoftAssertions();
+            softly.assertThat(actualAfterFirst).isEqualTo(new Sample(BASE_TIME + 2 * nanosPerDay + NANOS_PER_MINUTE, 2d, true));
+            softly.assertThat(store.findFirst(1L)).isNull();
+            softly.assertThat(store.getEquipmentIds()).isEmpty();
+            softly.assertAll();
+        }
+    }
+}
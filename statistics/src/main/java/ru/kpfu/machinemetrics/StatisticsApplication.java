@@ -3,9 +3,25 @@ package ru.kpfu.machinemetrics;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.BufferPoolProperties;
+import ru.kpfu.machinemetrics.properties.DayCacheProperties;
+import ru.kpfu.machinemetrics.properties.LiveWindowProperties;
+import ru.kpfu.machinemetrics.properties.PurgeProperties;
+import ru.kpfu.machinemetrics.properties.RollupProperties;
+import ru.kpfu.machinemetrics.properties.StateIndexProperties;
 
-@EnableConfigurationProperties(AppProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({
+        AppProperties.class,
+        BufferPoolProperties.class,
+        DayCacheProperties.class,
+        LiveWindowProperties.class,
+        PurgeProperties.class,
+        RollupProperties.class,
+        StateIndexProperties.class
+})
 @SpringBootApplication
 public class StatisticsApplication {
 
@@ -0,0 +1,27 @@
+package ru.kpfu.machinemetrics.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
+
+@Configuration
+@EnableConfigurationProperties({EquipmentDataProperties.class})
+@RequiredArgsConstructor
+public class ExecutorConfig {
+
+    private final EquipmentDataProperties equipmentDataProperties;
+
+    @Bean
+    public ThreadPoolTaskExecutor equipmentDataExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(equipmentDataProperties.getPoolSize());
+        executor.setMaxPoolSize(equipmentDataProperties.getPoolSize());
+        executor.setQueueCapacity(equipmentDataProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("equipment-data-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -2,10 +2,15 @@ package ru.kpfu.machinemetrics.config;
 
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
+import com.influxdb.client.InfluxDBClientOptions;
 import lombok.RequiredArgsConstructor;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
 import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
 
 @Configuration
@@ -14,9 +19,20 @@ import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
 public class InfluxDBConfig {
 
     private final InfluxDbProperties influxDbProperties;
+    private final EquipmentDataProperties equipmentDataProperties;
 
     @Bean
+    @ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
     public InfluxDBClient influxDBClient() {
-        return InfluxDBClientFactory.create(influxDbProperties.getUrl(), influxDbProperties.getToken().toCharArray());
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(equipmentDataProperties.getMaxConcurrentQueries());
+        dispatcher.setMaxRequestsPerHost(equipmentDataProperties.getMaxConcurrentQueries());
+        return InfluxDBClientFactory.create(
+                InfluxDBClientOptions.builder()
+                        .url(influxDbProperties.getUrl())
+                        .authenticateToken(influxDbProperties.getToken().toCharArray())
+                        .okHttpClient(new OkHttpClient.Builder().dispatcher(dispatcher))
+                        .build()
+        );
     }
 }
@@ -0,0 +1,25 @@
+package ru.kpfu.machinemetrics.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.kpfu.machinemetrics.properties.StorageProperties;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.nio.file.Path;
+
+@Configuration
+@EnableConfigurationProperties({StorageProperties.class})
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "embedded")
+@RequiredArgsConstructor
+public class SegmentStoreConfig {
+
+    private final StorageProperties storageProperties;
+
+    @Bean(destroyMethod = "close")
+    public SegmentStore segmentStore() {
+        return new SegmentStore(Path.of(storageProperties.getPath()));
+    }
+}
@@ -0,0 +1,5 @@
+package ru.kpfu.machinemetrics.constants;
+
+public class EquipmentDataConstants {
+    public static final String EQUIPMENT_DATA_TIMEOUT_EXCEPTION_MESSAGE = "exception.equipment-data.timeout";
+}
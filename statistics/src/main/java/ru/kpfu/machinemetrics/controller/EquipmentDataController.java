@@ -1,27 +1,85 @@
 package ru.kpfu.machinemetrics.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.kpfu.machinemetrics.dto.QueryStrategy;
 import ru.kpfu.machinemetrics.dto.StatisticsDto;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
 import ru.kpfu.machinemetrics.service.EquipmentDataService;
 
+import java.io.UncheckedIOException;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+@Slf4j
 @RestController
 @RequestMapping(value = "${app.api.prefix.v1}/equipment-data")
 @RequiredArgsConstructor
 public class EquipmentDataController {
 
     private final EquipmentDataService equipmentDataService;
+    private final EquipmentDataProperties equipmentDataProperties;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public StatisticsDto listFiltered(@RequestParam List<Long> ids,
-                                      @RequestParam(required = false) OffsetDateTime start,
-                                      @RequestParam(required = false) OffsetDateTime stop) {
-        return equipmentDataService.getData(ids, start, stop);
+    public DeferredResult<StatisticsDto> listFiltered(@RequestParam List<Long> ids,
+                                                      @RequestParam(required = false) OffsetDateTime start,
+                                                      @RequestParam(required = false) OffsetDateTime stop,
+                                                      @RequestParam(defaultValue = "true") boolean includeData,
+                                                      @RequestParam(defaultValue = "DEFAULT") QueryStrategy strategy) {
+        DeferredResult<StatisticsDto> result = new DeferredResult<>();
+        CompletableFuture<StatisticsDto> future = equipmentDataService.getDataAsync(
+                ids,
+                start,
+                stop,
+                includeData,
+                strategy
+        );
+        result.onCompletion(() -> future.cancel(true));
+        future.whenComplete((statistics, throwable) -> {
+            if (throwable != null) {
+                result.setErrorResult(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+            } else {
+                result.setResult(statistics);
+            }
+        });
+        return result;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFiltered(
+            @RequestParam List<Long> ids,
+            @RequestParam(required = false) OffsetDateTime start,
+            @RequestParam(required = false) OffsetDateTime stop,
+            @RequestParam(defaultValue = "true") boolean includeData,
+            @RequestParam(defaultValue = "DEFAULT") QueryStrategy strategy
+    ) {
+        StreamingResponseBody body = outputStream -> {
+            var writer = new StatisticsStreamWriter(
+                    objectMapper,
+                    outputStream,
+                    equipmentDataProperties.getStreamBatchSize()
+            );
+            try {
+                equipmentDataService.streamData(ids, start, stop, includeData, strategy, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+                writer.onError(e.getMessage());
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 }
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import ru.kpfu.machinemetrics.constants.GeneralConstants;
 import ru.kpfu.machinemetrics.dto.ErrorResponse;
 import ru.kpfu.machinemetrics.exception.CannotDeleteScheduleException;
+import ru.kpfu.machinemetrics.exception.EquipmentDataTimeoutException;
 import ru.kpfu.machinemetrics.exception.ResourceNotFoundException;
 import ru.kpfu.machinemetrics.exception.ScheduleIsAlreadyCreatedException;
 import ru.kpfu.machinemetrics.exception.ValidationException;
@@ -60,6 +61,14 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
 
+    @ExceptionHandler(EquipmentDataTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleEquipmentDataTimeoutException(EquipmentDataTimeoutException e) {
+        String errorMessage = e.getMessage();
+        ErrorResponse error = new ErrorResponse(HttpStatus.GATEWAY_TIMEOUT.value(), errorMessage);
+        log.error(errorMessage, e);
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(error);
+    }
+
     @ExceptionHandler(ValidationException.class)
     public ResponseEntity<ErrorResponse> handleValidationException(ValidationException e) {
         String errorMessage = e.getMessage();
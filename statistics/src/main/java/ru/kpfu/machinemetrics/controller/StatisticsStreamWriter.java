@@ -0,0 +1,68 @@
+package ru.kpfu.machinemetrics.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import ru.kpfu.machinemetrics.dto.EquipmentDataDto;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.dto.StatisticsStreamDto;
+import ru.kpfu.machinemetrics.dto.StatisticsStreamType;
+import ru.kpfu.machinemetrics.service.StatisticsStreamListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Writes statistics as newline delimited JSON: the period, then a summary line and point batches for every equipment.
+ */
+@RequiredArgsConstructor
+class StatisticsStreamWriter implements StatisticsStreamListener {
+
+    private static final byte NEW_LINE = '\n';
+
+    private final ObjectMapper objectMapper;
+    private final OutputStream outputStream;
+    private final int batchSize;
+
+    @Override
+    public void onPeriod(OffsetDateTime start, OffsetDateTime end) {
+        write(StatisticsStreamDto.builder().type(StatisticsStreamType.PERIOD).start(start).end(end).build());
+    }
+
+    @Override
+    public void onEquipment(Long equipmentId, EquipmentStatisticsDto equipmentStatistics) {
+        List<EquipmentDataDto> equipmentData = equipmentStatistics.getEquipmentData();
+        equipmentStatistics.setEquipmentData(null);
+        write(StatisticsStreamDto.builder()
+                .type(StatisticsStreamType.EQUIPMENT)
+                .equipmentId(equipmentId)
+                .equipmentStatistics(equipmentStatistics)
+                .build());
+        if (equipmentData == null) {
+            return;
+        }
+        for (int from = 0; from < equipmentData.size(); from += batchSize) {
+            write(StatisticsStreamDto.builder()
+                    .type(StatisticsStreamType.DATA)
+                    .equipmentId(equipmentId)
+                    .equipmentData(equipmentData.subList(from, Math.min(from + batchSize, equipmentData.size())))
+                    .build());
+        }
+    }
+
+    public void onError(String message) {
+        write(StatisticsStreamDto.builder().type(StatisticsStreamType.ERROR).message(message).build());
+    }
+
+    private void write(StatisticsStreamDto line) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(line));
+            outputStream.write(NEW_LINE);
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.kpfu.machinemetrics.dto;
+
+/**
+ * How the uptime of a period is read from InfluxDB when the points themselves are not requested.
+ */
+public enum QueryStrategy {
+    /**
+     * Live window, then rollups, then raw points.
+     */
+    DEFAULT,
+    /**
+     * Live window, then only the samples where {@code enabled} changes, filtered inside InfluxDB.
+     */
+    PUSHDOWN
+}
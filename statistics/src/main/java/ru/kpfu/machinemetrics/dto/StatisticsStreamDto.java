@@ -0,0 +1,24 @@
+package ru.kpfu.machinemetrics.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Setter
+@Getter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatisticsStreamDto {
+
+    private StatisticsStreamType type;
+    private OffsetDateTime start;
+    private OffsetDateTime end;
+    private Long equipmentId;
+    private EquipmentStatisticsDto equipmentStatistics;
+    private List<EquipmentDataDto> equipmentData;
+    private String message;
+}
@@ -0,0 +1,8 @@
+package ru.kpfu.machinemetrics.dto;
+
+public enum StatisticsStreamType {
+    PERIOD,
+    EQUIPMENT,
+    DATA,
+    ERROR
+}
@@ -0,0 +1,7 @@
+package ru.kpfu.machinemetrics.exception;
+
+public class EquipmentDataTimeoutException extends RuntimeException {
+    public EquipmentDataTimeoutException(String message) {
+        super(message);
+    }
+}
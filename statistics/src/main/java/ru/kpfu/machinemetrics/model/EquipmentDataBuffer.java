@@ -0,0 +1,185 @@
+package ru.kpfu.machinemetrics.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Columnar storage of one equipment's samples: epoch seconds, {@code u} and two bit sets for the flags.
+ * <p>
+ * Instances are not thread safe and are meant to be reused through
+ * {@link ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool}.
+ */
+public class EquipmentDataBuffer {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    @Getter
+    @Setter
+    private Long equipmentId;
+
+    private long[] times;
+    private double[] u;
+    private final BitSet enabled = new BitSet();
+    private final BitSet real = new BitSet();
+    private int size;
+
+    public EquipmentDataBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EquipmentDataBuffer(int capacity) {
+        times = new long[capacity];
+        u = new double[capacity];
+    }
+
+    public void add(long epochSecond, Double u, boolean enabled, boolean real) {
+        ensureCapacity();
+        times[size] = epochSecond;
+        this.u[size] = u == null ? Double.NaN : u;
+        this.enabled.set(size, enabled);
+        this.real.set(size, real);
+        size++;
+    }
+
+    /**
+     * Inserts the sample before the others, such as the record preceding a period that is read after the period.
+     */
+    public void addFirst(long epochSecond, Double u, boolean enabled, boolean real) {
+        ensureCapacity();
+        System.arraycopy(times, 0, times, 1, size);
+        System.arraycopy(this.u, 0, this.u, 1, size);
+        for (int i = size; i > 0; i--) {
+            this.enabled.set(i, this.enabled.get(i - 1));
+            this.real.set(i, this.real.get(i - 1));
+        }
+        times[0] = epochSecond;
+        this.u[0] = u == null ? Double.NaN : u;
+        this.enabled.set(0, enabled);
+        this.real.set(0, real);
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == times.length) {
+            int newCapacity = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            times = Arrays.copyOf(times, newCapacity);
+            this.u = Arrays.copyOf(this.u, newCapacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public Double getU(int index) {
+        return Double.isNaN(u[index]) ? null : u[index];
+    }
+
+    public boolean isEnabled(int index) {
+        return enabled.get(index);
+    }
+
+    public boolean isReal(int index) {
+        return real.get(index);
+    }
+
+    public void truncateTimes(long seconds) {
+        for (int i = 0; i < size; i++) {
+            times[i] = Math.floorDiv(times[i], seconds) * seconds;
+        }
+    }
+
+    /**
+     * Sorts the samples by time, keeping the order of equal times. Sorted buffers are left as they are; otherwise the
+     * samples are moved in place along an index order, so only two {@code int} arrays are allocated.
+     */
+    public void sortByTime() {
+        int i = 1;
+        while (i < size && times[i - 1] <= times[i]) {
+            i++;
+        }
+        if (i >= size) {
+            return;
+        }
+
+        int[] order = sortedOrder();
+        BitSet placed = new BitSet(size);
+        for (int start = 0; start < size; start++) {
+            if (placed.get(start) || order[start] == start) {
+                continue;
+            }
+            long startTime = times[start];
+            double startU = u[start];
+            boolean startEnabled = enabled.get(start);
+            boolean startReal = real.get(start);
+            int to = start;
+            while (order[to] != start) {
+                int from = order[to];
+                times[to] = times[from];
+                u[to] = u[from];
+                enabled.set(to, enabled.get(from));
+                real.set(to, real.get(from));
+                placed.set(to);
+                to = from;
+            }
+            times[to] = startTime;
+            u[to] = startU;
+            enabled.set(to, startEnabled);
+            real.set(to, startReal);
+            placed.set(to);
+        }
+    }
+
+    /**
+     * Indexes of the samples in the order of their times, by a bottom-up merge sort.
+     */
+    private int[] sortedOrder() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] source = order;
+        int[] target = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int middle = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int left = low;
+                int right = middle;
+                for (int k = low; k < high; k++) {
+                    if (left < middle && (right >= high || times[source[left]] <= times[source[right]])) {
+                        target[k] = source[left++];
+                    } else {
+                        target[k] = source[right++];
+                    }
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+
+    public void clear() {
+        equipmentId = null;
+        enabled.clear();
+        real.clear();
+        size = 0;
+    }
+}
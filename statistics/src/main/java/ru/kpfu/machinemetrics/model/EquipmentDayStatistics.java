@@ -0,0 +1,19 @@
+package ru.kpfu.machinemetrics.model;
+
+import ru.kpfu.machinemetrics.dto.EquipmentDataDto;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Part of a period's statistics that falls into one schedule day, in nanoseconds so that days add up exactly.
+ * {@code equipmentData} is {@code null} when the samples were not requested.
+ */
+public record EquipmentDayStatistics(
+        OffsetDateTime date,
+        long upNanos,
+        long upScheduleNanos,
+        long downScheduleNanos,
+        List<EquipmentDataDto> equipmentData
+) {
+}
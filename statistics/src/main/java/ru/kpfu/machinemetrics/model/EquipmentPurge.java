@@ -0,0 +1,33 @@
+package ru.kpfu.machinemetrics.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Samples of a deleted equipment still to be deleted from the storage. The samples before {@code purgedUntil} are
+ * deleted already, and the purge is done at {@code stop}.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EquipmentPurge {
+
+    @Id
+    private Long equipmentId;
+
+    private OffsetDateTime purgedUntil;
+
+    private OffsetDateTime stop;
+
+    private OffsetDateTime createdAt;
+}
@@ -0,0 +1,69 @@
+package ru.kpfu.machinemetrics.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+import java.util.BitSet;
+
+/**
+ * Uptime of one equipment in an hourly or daily bucket.
+ * <p>
+ * {@code enabledMinutes} keeps one bit per minute of the bucket with the carried forward {@code enabled} state, so
+ * the time enabled inside any minute aligned window of the bucket can be restored exactly.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"equipment_id", "resolution", "bucket_start"}))
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EquipmentRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long equipmentId;
+
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+
+    private OffsetDateTime bucketStart;
+
+    private byte[] enabledMinutes;
+
+    private Long enabledSeconds;
+
+    private Boolean lastEnabled;
+
+    private Long sampleCount;
+
+    private Long uCount;
+
+    private Double uSum;
+
+    private Double minU;
+
+    private Double maxU;
+
+    public BitSet getEnabledMinutesBitSet() {
+        return BitSet.valueOf(enabledMinutes);
+    }
+
+    public Double getAvgU() {
+        return uCount == 0 ? null : uSum / uCount;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.kpfu.machinemetrics.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupResolution {
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1));
+
+    private final Duration duration;
+
+    public int getMinutes() {
+        return (int) duration.toMinutes();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.buffer-pool")
+public class BufferPoolProperties {
+
+    private int maxPooled = 64;
+
+    private int maxRetainedCapacity = 1 << 20;
+}
@@ -0,0 +1,21 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.day-cache")
+public class DayCacheProperties {
+
+    private boolean enabled = true;
+
+    private int maxEntries = 10_000;
+
+    private boolean includeData = false;
+
+    private Duration closedAfter = Duration.ofHours(1);
+}
@@ -0,0 +1,27 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.equipment-data")
+public class EquipmentDataProperties {
+
+    private int poolSize = 8;
+
+    private int queueCapacity = 256;
+
+    private Duration timeout = Duration.ofSeconds(30);
+
+    private int streamBatchSize = 1000;
+
+    private Duration queryTimeout = Duration.ofSeconds(20);
+
+    private int maxConcurrentQueries = 64;
+
+    private boolean coalesceRequests = true;
+}
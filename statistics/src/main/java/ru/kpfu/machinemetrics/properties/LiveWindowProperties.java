@@ -0,0 +1,21 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.live-window")
+public class LiveWindowProperties {
+
+    private boolean enabled = true;
+
+    private Duration pollInterval = Duration.ofSeconds(10);
+
+    private Duration retention = Duration.ofMinutes(70);
+
+    private Duration overlap = Duration.ofMinutes(1);
+}
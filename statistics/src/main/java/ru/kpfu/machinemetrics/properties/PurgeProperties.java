@@ -0,0 +1,25 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.purge")
+public class PurgeProperties {
+
+    private Duration interval = Duration.ofSeconds(10);
+
+    /**
+     * Period of samples deleted by one request, rounded up to whole days.
+     */
+    private Duration chunk = Duration.ofDays(7);
+
+    /**
+     * Longest time one run keeps deleting before it leaves the rest to the next run.
+     */
+    private Duration maxRunTime = Duration.ofSeconds(30);
+}
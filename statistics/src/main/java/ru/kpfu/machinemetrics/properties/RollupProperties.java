@@ -0,0 +1,27 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.rollup")
+public class RollupProperties {
+
+    private boolean enabled = true;
+
+    private Duration interval = Duration.ofMinutes(5);
+
+    private Duration delay = Duration.ofMinutes(5);
+
+    /**
+     * How late a sample may arrive and still be rolled up: the hours that ended less than this long before the last
+     * rolled up one are rolled up again on every run.
+     */
+    private Duration lateness = Duration.ofHours(1);
+
+    private Duration backfill = Duration.ofDays(400);
+}
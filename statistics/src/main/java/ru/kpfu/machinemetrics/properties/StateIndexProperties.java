@@ -0,0 +1,19 @@
+package ru.kpfu.machinemetrics.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("app.state-index")
+public class StateIndexProperties {
+
+    private boolean enabled = true;
+
+    private Duration refreshInterval = Duration.ofMinutes(1);
+
+    private Duration lag = Duration.ofMinutes(1);
+}
@@ -0,0 +1,37 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.springframework.stereotype.Component;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.properties.BufferPoolProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+@Component
+public class EquipmentDataBufferPool {
+
+    private final BlockingQueue<EquipmentDataBuffer> buffers;
+    private final int maxRetainedCapacity;
+
+    public EquipmentDataBufferPool(BufferPoolProperties bufferPoolProperties) {
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, bufferPoolProperties.getMaxPooled()));
+        this.maxRetainedCapacity = bufferPoolProperties.getMaxRetainedCapacity();
+    }
+
+    public EquipmentDataBuffer acquire(Long equipmentId) {
+        EquipmentDataBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new EquipmentDataBuffer();
+        }
+        buffer.setEquipmentId(equipmentId);
+        return buffer;
+    }
+
+    public void release(EquipmentDataBuffer buffer) {
+        if (buffer == null || buffer.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -1,14 +1,57 @@
 package ru.kpfu.machinemetrics.repository;
 
 import jakarta.validation.constraints.NotNull;
-import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
 
-import java.util.ArrayList;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface EquipmentDataRepository {
 
-    ArrayList<EquipmentData> getData(@NotNull String start, @NotNull String stop, Long equipmentId);
+    EquipmentDataBuffer getData(@NotNull String start, @NotNull String stop, Long equipmentId);
+
+    CompletableFuture<EquipmentDataBuffer> getDataAsync(@NotNull String start, @NotNull String stop, Long equipmentId);
+
+    /**
+     * Same as {@link #getData(String, String, Long)}, but keeps only the samples where {@code enabled} changes.
+     */
+    EquipmentDataBuffer getStateChanges(@NotNull String start, @NotNull String stop, Long equipmentId);
+
+    EquipmentDataBuffer getDataInPeriod(@NotNull String start, @NotNull String stop, Long equipmentId);
+
+    Map<Long, EquipmentDataBuffer> getAllData(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    );
+
+    CompletableFuture<Map<Long, EquipmentDataBuffer>> getAllDataAsync(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    );
+
+    Map<Long, EquipmentDataBuffer> getAllDataInPeriod(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    );
+
+    List<Long> getEquipmentIds();
+
+    /**
+     * Time of the oldest sample of the equipment, or {@code null} without samples.
+     */
+    OffsetDateTime findFirstTime(@NotNull Long equipmentId);
 
     void delete(@NotNull Long equipmentId);
+
+    /**
+     * Deletes the samples of the equipment with {@code start <= time < stop}. The embedded engine deletes whole UTC
+     * days only, so both should be at the start of a day.
+     */
+    void delete(@NotNull Long equipmentId, @NotNull String start, @NotNull String stop);
 }
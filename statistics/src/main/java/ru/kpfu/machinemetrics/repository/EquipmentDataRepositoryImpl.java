@@ -8,157 +8,488 @@ import com.influxdb.client.domain.DeletePredicateRequest;
 import com.influxdb.query.FluxRecord;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
-import ru.kpfu.machinemetrics.model.EquipmentData;
-import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
 import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
-import java.util.Objects;
-import java.util.concurrent.CountDownLatch;
-import java.util.function.BiConsumer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 @Repository
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
 public class EquipmentDataRepositoryImpl implements EquipmentDataRepository {
 
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
     private final InfluxDBClient influxDBClient;
     private final InfluxDbProperties influxDbProperties;
-    private final AppProperties appProperties;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+    private final EquipmentStateIndex equipmentStateIndex;
+    private final EquipmentDataProperties equipmentDataProperties;
 
-    private static EquipmentData mapFluxRecord(ZoneOffset zoneOffset, FluxRecord fluxRecord) {
-        return EquipmentData.builder()
-                .equipmentId(Long.parseLong((String) Objects.requireNonNull(fluxRecord.getValueByKey("equipment_id"))))
-                .u((Double) fluxRecord.getValueByKey("u"))
-                .enabled((Boolean) fluxRecord.getValueByKey("enabled"))
-                .time(fluxRecord.getTime().atOffset(zoneOffset))
-                .isReal(true)
-                .build();
+    private static void addFluxRecord(EquipmentDataBuffer buffer, FluxRecord fluxRecord) {
+        buffer.add(
+                fluxRecord.getTime().getEpochSecond(),
+                (Double) fluxRecord.getValueByKey("u"),
+                (Boolean) fluxRecord.getValueByKey("enabled"),
+                true
+        );
     }
 
     @Override
-    public ArrayList<EquipmentData> getData(@NotNull String start, @NotNull String stop, Long equipmentId) {
+    public EquipmentDataBuffer getData(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        return join(getDataAsync(start, stop, equipmentId));
+    }
 
-        QueryApi queryApi = influxDBClient.getQueryApi();
+    @Override
+    public EquipmentDataBuffer getDataInPeriod(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        return join(getData(start, stop, equipmentId, false));
+    }
 
-        ArrayList<EquipmentData> result = new ArrayList<>();
+    @Override
+    public CompletableFuture<EquipmentDataBuffer> getDataAsync(
+            @NotNull String start,
+            @NotNull String stop,
+            Long equipmentId
+    ) {
+        return getData(start, stop, equipmentId, true);
+    }
 
-        CountDownLatch latch = new CountDownLatch(2);
+    @Override
+    public EquipmentDataBuffer getStateChanges(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        Map<Long, EquipmentDataBuffer> result = new LinkedHashMap<>();
+        result.put(equipmentId, equipmentDataBufferPool.acquire(equipmentId));
+        String query = getStateChangesInPeriodQuery(start, stop, getEquipmentFilter(equipmentId));
+        return join(fetch(start, stop, result, true, query)).get(equipmentId);
+    }
 
-        Runnable onComplete = () -> {
-            // Handle completion of the query
-            System.out.println("Query completed successfully");
-            latch.countDown();
-        };
+    private CompletableFuture<EquipmentDataBuffer> getData(
+            String start,
+            String stop,
+            Long equipmentId,
+            boolean withPreviousRecord
+    ) {
+        Map<Long, EquipmentDataBuffer> result = new LinkedHashMap<>();
+        result.put(equipmentId, equipmentDataBufferPool.acquire(equipmentId));
+        String query = getRecordsInPeriodQuery(start, stop, getEquipmentFilter(equipmentId));
+        return fetch(start, stop, result, withPreviousRecord, query).thenApply(data -> data.get(equipmentId));
+    }
+
+    @Override
+    public Map<Long, EquipmentDataBuffer> getAllData(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return join(getAllDataAsync(start, stop, equipmentIds));
+    }
+
+    @Override
+    public Map<Long, EquipmentDataBuffer> getAllDataInPeriod(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return join(getAllData(start, stop, equipmentIds, false));
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, EquipmentDataBuffer>> getAllDataAsync(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return getAllData(start, stop, equipmentIds, true);
+    }
+
+    private CompletableFuture<Map<Long, EquipmentDataBuffer>> getAllData(
+            String start,
+            String stop,
+            Collection<Long> equipmentIds,
+            boolean withPreviousRecord
+    ) {
+        Map<Long, EquipmentDataBuffer> result = new LinkedHashMap<>();
+        for (var equipmentId : equipmentIds) {
+            result.computeIfAbsent(equipmentId, equipmentDataBufferPool::acquire);
+        }
+        String query = getRecordsInPeriodQuery(start, stop, getEquipmentFilter(result.keySet()));
+        return fetch(start, stop, result, withPreviousRecord, query);
+    }
+
+    /**
+     * Runs the queries without blocking the calling thread. The returned future fails as soon as one query fails or
+     * exceeds {@code app.equipment-data.query-timeout}, and cancelling it cancels the queries still running.
+     */
+    private CompletableFuture<Map<Long, EquipmentDataBuffer>> fetch(
+            String start,
+            String stop,
+            Map<Long, EquipmentDataBuffer> result,
+            boolean withPreviousRecord,
+            String periodQuery
+    ) {
+
+        QueryApi queryApi = influxDBClient.getQueryApi();
+
+        PreviousRecords previousRecords = new PreviousRecords();
+        List<String> previousRecordQueries = withPreviousRecord
+                ? getPreviousRecordQueries(start, result.keySet(), previousRecords)
+                : List.of();
 
-        BiConsumer<Cancellable, FluxRecord> onNext = (cancellable, fluxRecord) -> {
-            result.add(mapFluxRecord(ZoneOffset.of(appProperties.getDefaultZone()), fluxRecord));
+        Consumer<FluxRecord> onRecord = fluxRecord -> {
+            EquipmentDataBuffer buffer = result.get(getEquipmentId(result, fluxRecord));
+            if (buffer != null) {
+                synchronized (buffer) {
+                    addFluxRecord(buffer, fluxRecord);
+                }
+            }
         };
 
-        Consumer<Throwable> onError = throwable -> {
-            throw new RuntimeException();
+        Consumer<FluxRecord> onPreviousRecord = fluxRecord -> {
+            Long equipmentId = getEquipmentId(result, fluxRecord);
+            if (result.containsKey(equipmentId)) {
+                previousRecords.offer(
+                        equipmentId,
+                        fluxRecord.getTime().getEpochSecond(),
+                        (Double) fluxRecord.getValueByKey("u"),
+                        (Boolean) fluxRecord.getValueByKey("enabled")
+                );
+            }
         };
 
-        addLastPreviousRecord(start, equipmentId, queryApi, onNext, onError, onComplete);
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
+        for (var query : previousRecordQueries) {
+            queries.add(query(queryApi, query, onPreviousRecord));
+        }
+
+        if (!start.equals(stop)) {
+            queries.add(query(queryApi, periodQuery, onRecord));
+        }
+
+        for (var query : queries) {
+            query.whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    queries.forEach(other -> other.cancel(true));
+                }
+            });
+        }
+
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> future = CompletableFuture
+                .allOf(queries.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    previousRecords.addTo(result);
+                    for (var buffer : result.values()) {
+                        synchronized (buffer) {
+                            buffer.truncateTimes(SECONDS_PER_MINUTE);
+                            buffer.sortByTime();
+                        }
+                    }
+                    return result;
+                });
+        future.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                queries.forEach(query -> query.cancel(true));
+            }
+        });
+        return future;
+    }
 
-        addRecordsInPeriod(start, stop, equipmentId, queryApi, onNext, onError, onComplete);
+    /**
+     * Runs the query asynchronously. The client hands out the query's {@link Cancellable} only with a record, so it is
+     * captured from the first one: a query that timed out or was cancelled before is cancelled right there, without
+     * passing on the record, and one that ends later is cancelled with the future.
+     */
+    private CompletableFuture<Void> query(QueryApi queryApi, String query, Consumer<FluxRecord> onRecord) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        AtomicReference<Cancellable> cancellable = new AtomicReference<>();
+        queryApi.query(
+                query,
+                influxDbProperties.getOrg(),
+                (queryCancellable, fluxRecord) -> {
+                    cancellable.set(queryCancellable);
+                    if (future.isDone()) {
+                        queryCancellable.cancel();
+                        return;
+                    }
+                    onRecord.accept(fluxRecord);
+                },
+                future::completeExceptionally,
+                () -> future.complete(null)
+        );
+        future.orTimeout(equipmentDataProperties.getQueryTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, throwable) -> {
+                    Cancellable queryCancellable = cancellable.get();
+                    if (throwable != null && queryCancellable != null) {
+                        queryCancellable.cancel();
+                    }
+                });
+        return future;
+    }
 
+    private static <T> T join(CompletableFuture<T> future) {
         try {
-            latch.await();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
         }
-        result.sort(Comparator.comparing(EquipmentData::getTime));
-        for (var data : result) {
-            data.setTime(data.getTime().truncatedTo(ChronoUnit.MINUTES));
+    }
+
+    private static Long getEquipmentId(Map<Long, EquipmentDataBuffer> result, FluxRecord fluxRecord) {
+        if (result.size() == 1) {
+            return result.keySet().iterator().next();
         }
-        return result;
+        return Long.valueOf((String) fluxRecord.getValueByKey("equipment_id"));
     }
 
-    private void addRecordsInPeriod(
+    /**
+     * Queries for the last record before {@code start}. Without the state index the whole history is scanned; with it
+     * the records older than the watermark are taken from the index and only the days holding the answer are read.
+     */
+    private List<String> getPreviousRecordQueries(
             String start,
-            String stop,
-            Long equipmentId,
-            QueryApi queryApi,
-            BiConsumer<Cancellable, FluxRecord> onNext,
-            Consumer<Throwable> onError, Runnable onComplete
+            Collection<Long> equipmentIds,
+            PreviousRecords previousRecords
     ) {
+        if (!equipmentStateIndex.isLoaded()) {
+            return List.of(getLastRecordQuery("-inf", toTime(start), getEquipmentFilter(equipmentIds)));
+        }
+
+        List<String> queries = new ArrayList<>();
+        long startNanos = toNanos(OffsetDateTime.parse(start).toInstant());
+        long watermark = equipmentStateIndex.getWatermark();
+        long bound = Math.min(startNanos, watermark);
+        if (startNanos > watermark) {
+            queries.add(getLastRecordQuery(toTime(watermark), toTime(start), getEquipmentFilter(equipmentIds)));
+        }
+
+        List<Long> scannedIds = new ArrayList<>();
+        long scanStart = bound;
+        for (var equipmentId : equipmentIds) {
+            var day = equipmentStateIndex.findLastDayBefore(equipmentId, bound);
+            if (day == null) {
+                continue;
+            }
+            if (day.lastTime() < bound) {
+                previousRecords.offer(
+                        equipmentId,
+                        Math.floorDiv(day.lastTime(), NANOS_PER_SECOND),
+                        day.lastU(),
+                        day.lastEnabled()
+                );
+            } else {
+                scannedIds.add(equipmentId);
+                scanStart = Math.min(scanStart, day.firstTime());
+            }
+        }
+        if (!scannedIds.isEmpty()) {
+            queries.add(getLastRecordQuery(
+                    toTime(scanStart),
+                    toTime(bound),
+                    getEquipmentFilter(scannedIds)
+            ));
+        }
+        return queries;
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    private static String toTime(long nanos) {
+        return toTime(Instant.ofEpochSecond(0, nanos).toString());
+    }
+
+    private static String toTime(String dateTime) {
+        return "time(v: " + dateTime + ")";
+    }
+
+    @Override
+    public List<Long> getEquipmentIds() {
         String query = String.format(
+                "import \"influxdata/influxdb/schema\" " +
+                        "schema.tagValues(" +
+                        "bucket: \"%s\", " +
+                        "tag: \"equipment_id\", " +
+                        "predicate: (r) => r[\"_measurement\"] == \"equipment_statistics\", " +
+                        "start: 0)",
+                influxDbProperties.getBucket()
+        );
+
+        return influxDBClient.getQueryApi().query(query, influxDbProperties.getOrg()).stream()
+                .flatMap(fluxTable -> fluxTable.getRecords().stream())
+                .map(fluxRecord -> Long.valueOf((String) fluxRecord.getValue()))
+                .toList();
+    }
+
+    private static String getEquipmentFilter(Long equipmentId) {
+        return String.format("r[\"equipment_id\"] == \"%s\"", equipmentId);
+    }
+
+    private static String getEquipmentFilter(Collection<Long> equipmentIds) {
+        if (equipmentIds.size() == 1) {
+            return getEquipmentFilter(equipmentIds.iterator().next());
+        }
+        return String.format(
+                "contains(value: r[\"equipment_id\"], set: [%s])",
+                equipmentIds.stream()
+                        .map(equipmentId -> "\"" + equipmentId + "\"")
+                        .collect(Collectors.joining(", "))
+        );
+    }
+
+    private String getRecordsInPeriodQuery(String start, String stop, String equipmentFilter) {
+        return String.format(
                 "from(bucket: \"%s\") " +
                         "|> range(start: time(v: %s), stop: time(v: %s)) " +
                         "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
-                        "|> filter(fn: (r) => r[\"equipment_id\"] == \"%s\")" +
+                        "|> filter(fn: (r) => %s)" +
                         "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")",
                 influxDbProperties.getBucket(),
                 start,
                 stop,
-                equipmentId
+                equipmentFilter
         );
+    }
 
-        queryApi.query(
-                query,
-                influxDbProperties.getOrg(),
-                onNext,
-                onError,
-                onComplete
+    /**
+     * Same rows as {@link #getRecordsInPeriodQuery(String, String, String)}, but only the first one and those where
+     * {@code enabled} differs from the previous sample, so InfluxDB drops the samples that do not change the uptime.
+     * The rows have no {@code u}.
+     */
+    private String getStateChangesInPeriodQuery(String start, String stop, String equipmentFilter) {
+        return String.format(
+                "from(bucket: \"%s\") " +
+                        "|> range(start: time(v: %s), stop: time(v: %s)) " +
+                        "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                        "|> filter(fn: (r) => %s)" +
+                        "|> filter(fn: (r) => r[\"_field\"] == \"enabled\")" +
+                        "|> map(fn: (r) => ({r with enabled: r._value, _value: if r._value then 1 else 0}))" +
+                        "|> difference(keepFirst: true)" +
+                        "|> filter(fn: (r) => not exists r._value or r._value != 0)",
+                influxDbProperties.getBucket(),
+                start,
+                stop,
+                equipmentFilter
         );
     }
 
-    private void addLastPreviousRecord(
-            @NotNull String start,
-            Long equipmentId,
-            QueryApi queryApi,
-            BiConsumer<Cancellable, FluxRecord> onNext,
-            Consumer<Throwable> onError, Runnable onComplete
-    ) {
-        String query = String.format(
+    private String getLastRecordQuery(String start, String stop, String equipmentFilter) {
+        return String.format(
                 "from(bucket: \"%s\") " +
-                        "|> range(start: -inf, stop: time(v: %s)) " +
+                        "|> range(start: %s, stop: %s) " +
                         "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
-                        "|> filter(fn: (r) => r[\"equipment_id\"] == \"%s\")" +
+                        "|> filter(fn: (r) => %s)" +
                         "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")" +
                         "|> last(column: \"_time\")",
                 influxDbProperties.getBucket(),
                 start,
-                equipmentId
+                stop,
+                equipmentFilter
         );
+    }
 
-        queryApi.query(
-                query,
-                influxDbProperties.getOrg(),
-                onNext,
-                onError,
-                onComplete
+    @Override
+    public OffsetDateTime findFirstTime(Long equipmentId) {
+        String query = String.format(
+                "from(bucket: \"%s\") " +
+                        "|> range(start: 0) " +
+                        "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                        "|> filter(fn: (r) => %s)" +
+                        "|> filter(fn: (r) => r[\"_field\"] == \"enabled\")" +
+                        "|> first()",
+                influxDbProperties.getBucket(),
+                getEquipmentFilter(equipmentId)
         );
+
+        return influxDBClient.getQueryApi().query(query, influxDbProperties.getOrg()).stream()
+                .flatMap(fluxTable -> fluxTable.getRecords().stream())
+                .map(FluxRecord::getTime)
+                .min(Comparator.naturalOrder())
+                .map(time -> OffsetDateTime.ofInstant(time, ZoneOffset.UTC))
+                .orElse(null);
     }
 
     @Override
     public void delete(Long equipmentId) {
+        delete(
+                equipmentId,
+                OffsetDateTime.of(LocalDate.of(1970, 1, 1), LocalTime.MIN, ZoneOffset.UTC),
+                OffsetDateTime.now().plusDays(1)
+        );
+    }
+
+    /**
+     * InfluxDB deletes the samples at {@code stop} too, so the range ends a nanosecond before it.
+     */
+    @Override
+    public void delete(Long equipmentId, String start, String stop) {
+        delete(equipmentId, OffsetDateTime.parse(start), OffsetDateTime.parse(stop).minusNanos(1));
+    }
+
+    private void delete(Long equipmentId, OffsetDateTime start, OffsetDateTime stop) {
         DeleteApi deleteApi = influxDBClient.getDeleteApi();
 
         String predicate = String.format("equipment_id=\"%s\"", equipmentId);
         deleteApi.delete(
                 new DeletePredicateRequest()
                         .predicate(predicate)
-                        .start(
-                                OffsetDateTime.of(
-                                        LocalDate.of(1970, 1, 1),
-                                        LocalTime.MIN,
-                                        ZoneOffset.UTC
-                                )
-                        )
-                        .stop(OffsetDateTime.now().plusDays(1))
+                        .start(start)
+                        .stop(stop)
                 ,
                 influxDbProperties.getBucket(),
                 influxDbProperties.getOrg()
         );
+        equipmentStateIndex.remove(equipmentId);
+    }
+
+    /**
+     * Keeps only the latest of the previous records found for each equipment, because they may come from the state
+     * index and from several queries.
+     */
+    private static final class PreviousRecords {
+
+        private final Map<Long, PreviousRecord> records = new HashMap<>();
+
+        private synchronized void offer(Long equipmentId, long epochSecond, Double u, boolean enabled) {
+            PreviousRecord current = records.get(equipmentId);
+            if (current == null || current.epochSecond() < epochSecond) {
+                records.put(equipmentId, new PreviousRecord(epochSecond, u, enabled));
+            }
+        }
+
+        private synchronized void addTo(Map<Long, EquipmentDataBuffer> result) {
+            records.forEach((equipmentId, record) -> {
+                EquipmentDataBuffer buffer = result.get(equipmentId);
+                synchronized (buffer) {
+                    buffer.addFirst(record.epochSecond(), record.u(), record.enabled(), true);
+                }
+            });
+        }
+    }
+
+    private record PreviousRecord(long epochSecond, Double u, boolean enabled) {
     }
 }
@@ -0,0 +1,9 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ru.kpfu.machinemetrics.model.EquipmentPurge;
+
+@Repository
+public interface EquipmentPurgeRepository extends JpaRepository<EquipmentPurge, Long> {
+}
@@ -0,0 +1,30 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.RollupResolution;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EquipmentRollupRepository extends JpaRepository<EquipmentRollup, Long> {
+
+    List<EquipmentRollup> findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+            Long equipmentId,
+            RollupResolution resolution,
+            OffsetDateTime from,
+            OffsetDateTime to
+    );
+
+    Optional<EquipmentRollup> findFirstByEquipmentIdAndResolutionOrderByBucketStartDesc(
+            Long equipmentId,
+            RollupResolution resolution
+    );
+
+    @Transactional
+    void deleteAllByEquipmentId(Long equipmentId);
+}
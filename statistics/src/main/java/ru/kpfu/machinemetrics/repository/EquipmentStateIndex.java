@@ -0,0 +1,181 @@
+package ru.kpfu.machinemetrics.repository;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.query.FluxRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
+import ru.kpfu.machinemetrics.properties.StateIndexProperties;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * First and last sample of every equipment per UTC day, so the state before a moment can be found without scanning
+ * the whole history. The index is complete for samples older than {@link #getWatermark()}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "influxdb", matchIfMissing = true)
+public class EquipmentStateIndex {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_DAY = 86_400L * NANOS_PER_SECOND;
+
+    private final InfluxDBClient influxDBClient;
+    private final InfluxDbProperties influxDbProperties;
+    private final StateIndexProperties stateIndexProperties;
+
+    private final Map<Long, ConcurrentNavigableMap<Long, Day>> days = new ConcurrentHashMap<>();
+    private volatile long watermark = Long.MIN_VALUE;
+
+    public boolean isLoaded() {
+        return watermark != Long.MIN_VALUE;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Latest day of the equipment with a sample before {@code before}, or {@code null}.
+     */
+    public Day findLastDayBefore(Long equipmentId, long before) {
+        var equipmentDays = days.get(equipmentId);
+        if (equipmentDays == null) {
+            return null;
+        }
+        for (var day : equipmentDays.headMap(Math.floorDiv(before, NANOS_PER_DAY), true).descendingMap().values()) {
+            if (day.firstTime() < before) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    public void remove(Long equipmentId) {
+        days.remove(equipmentId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!stateIndexProperties.isEnabled()) {
+            return;
+        }
+        try {
+            long newWatermark = now();
+            days.clear();
+            load("0");
+            watermark = newWatermark;
+        } catch (RuntimeException e) {
+            watermark = Long.MIN_VALUE;
+            log.error("Cannot build equipment state index", e);
+        }
+    }
+
+    @Scheduled(
+            fixedDelayString = "${app.state-index.refresh-interval:PT1M}",
+            initialDelayString = "${app.state-index.refresh-interval:PT1M}"
+    )
+    public void refresh() {
+        if (!stateIndexProperties.isEnabled()) {
+            return;
+        }
+        if (!isLoaded()) {
+            rebuild();
+            return;
+        }
+        try {
+            long newWatermark = now();
+            long from = Math.floorDiv(watermark, NANOS_PER_DAY) * NANOS_PER_DAY;
+            load("time(v: " + Instant.ofEpochSecond(0, from) + ")");
+            watermark = newWatermark;
+        } catch (RuntimeException e) {
+            log.error("Cannot refresh equipment state index", e);
+        }
+    }
+
+    private long now() {
+        Instant now = Instant.now().minus(stateIndexProperties.getLag());
+        return now.getEpochSecond() * NANOS_PER_SECOND + now.getNano();
+    }
+
+    private void load(String start) {
+        Map<DayKey, Long> firstTimes = new HashMap<>();
+        for (var fluxRecord : query(start, "enabled", "first")) {
+            firstTimes.merge(toDayKey(fluxRecord), toNanos(fluxRecord), Math::min);
+        }
+
+        Map<DayKey, FluxRecord> lastU = new HashMap<>();
+        for (var fluxRecord : query(start, "u", "last")) {
+            lastU.merge(toDayKey(fluxRecord), fluxRecord, EquipmentStateIndex::later);
+        }
+
+        Map<DayKey, FluxRecord> lastEnabled = new HashMap<>();
+        for (var fluxRecord : query(start, "enabled", "last")) {
+            lastEnabled.merge(toDayKey(fluxRecord), fluxRecord, EquipmentStateIndex::later);
+        }
+
+        lastEnabled.forEach((key, fluxRecord) -> {
+            long lastTime = toNanos(fluxRecord);
+            FluxRecord u = lastU.get(key);
+            Day day = new Day(
+                    firstTimes.getOrDefault(key, lastTime),
+                    lastTime,
+                    (Boolean) fluxRecord.getValue(),
+                    u != null && toNanos(u) == lastTime ? (Double) u.getValue() : null
+            );
+            days.computeIfAbsent(key.equipmentId(), equipmentId -> new ConcurrentSkipListMap<>()).put(key.day(), day);
+        });
+    }
+
+    private Iterable<FluxRecord> query(String start, String field, String selector) {
+        String query = String.format(
+                "from(bucket: \"%s\") " +
+                        "|> range(start: %s) " +
+                        "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                        "|> filter(fn: (r) => r[\"_field\"] == \"%s\")" +
+                        "|> window(every: 1d)" +
+                        "|> %s()",
+                influxDbProperties.getBucket(),
+                start,
+                field,
+                selector
+        );
+        return influxDBClient.getQueryApi().query(query, influxDbProperties.getOrg()).stream()
+                .flatMap(fluxTable -> fluxTable.getRecords().stream())
+                .toList();
+    }
+
+    private static FluxRecord later(FluxRecord first, FluxRecord second) {
+        return toNanos(second) > toNanos(first) ? second : first;
+    }
+
+    private static DayKey toDayKey(FluxRecord fluxRecord) {
+        return new DayKey(
+                Long.valueOf((String) fluxRecord.getValueByKey("equipment_id")),
+                Math.floorDiv(toNanos(fluxRecord), NANOS_PER_DAY)
+        );
+    }
+
+    private static long toNanos(FluxRecord fluxRecord) {
+        Instant time = fluxRecord.getTime();
+        return time.getEpochSecond() * NANOS_PER_SECOND + time.getNano();
+    }
+
+    public record Day(long firstTime, long lastTime, boolean lastEnabled, Double lastU) {
+    }
+
+    private record DayKey(Long equipmentId, long day) {
+    }
+}
@@ -0,0 +1,201 @@
+package ru.kpfu.machinemetrics.repository;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.segment.SampleConsumer;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reads the segments written by the data services' embedded engine, see {@code app.storage.engine}.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.engine", havingValue = "embedded")
+public class SegmentStoreEquipmentDataRepository implements EquipmentDataRepository {
+
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final SegmentStore segmentStore;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+
+    @Override
+    public EquipmentDataBuffer getData(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        return load(start, stop, equipmentId, true, false);
+    }
+
+    @Override
+    public CompletableFuture<EquipmentDataBuffer> getDataAsync(
+            @NotNull String start,
+            @NotNull String stop,
+            Long equipmentId
+    ) {
+        return supply(() -> getData(start, stop, equipmentId));
+    }
+
+    @Override
+    public EquipmentDataBuffer getStateChanges(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        return load(start, stop, equipmentId, true, true);
+    }
+
+    @Override
+    public EquipmentDataBuffer getDataInPeriod(@NotNull String start, @NotNull String stop, Long equipmentId) {
+        return load(start, stop, equipmentId, false, false);
+    }
+
+    @Override
+    public Map<Long, EquipmentDataBuffer> getAllData(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return loadAll(start, stop, equipmentIds, true);
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, EquipmentDataBuffer>> getAllDataAsync(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return supply(() -> getAllData(start, stop, equipmentIds));
+    }
+
+    @Override
+    public Map<Long, EquipmentDataBuffer> getAllDataInPeriod(
+            @NotNull String start,
+            @NotNull String stop,
+            @NotNull Collection<Long> equipmentIds
+    ) {
+        return loadAll(start, stop, equipmentIds, false);
+    }
+
+    @Override
+    public List<Long> getEquipmentIds() {
+        return segmentStore.getEquipmentIds();
+    }
+
+    @Override
+    public OffsetDateTime findFirstTime(Long equipmentId) {
+        var first = segmentStore.findFirst(equipmentId);
+        return first == null ? null : OffsetDateTime.ofInstant(Instant.ofEpochSecond(0, first.time()), ZoneOffset.UTC);
+    }
+
+    @Override
+    public void delete(Long equipmentId) {
+        segmentStore.delete(equipmentId);
+    }
+
+    @Override
+    public void delete(Long equipmentId, String start, String stop) {
+        segmentStore.delete(equipmentId, toNanos(start), toNanos(stop));
+    }
+
+    private Map<Long, EquipmentDataBuffer> loadAll(
+            String start,
+            String stop,
+            Collection<Long> equipmentIds,
+            boolean withPreviousRecord
+    ) {
+        Map<Long, EquipmentDataBuffer> result = new LinkedHashMap<>();
+        try {
+            for (var equipmentId : equipmentIds) {
+                if (!result.containsKey(equipmentId)) {
+                    result.put(equipmentId, load(start, stop, equipmentId, withPreviousRecord, false));
+                }
+            }
+        } catch (RuntimeException e) {
+            result.values().forEach(equipmentDataBufferPool::release);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Same samples as the InfluxDB repository returns: the previous record, then the period, truncated to minutes.
+     */
+    private EquipmentDataBuffer load(
+            String start,
+            String stop,
+            Long equipmentId,
+            boolean withPreviousRecord,
+            boolean stateChangesOnly
+    ) {
+        long from = toNanos(start);
+        long to = toNanos(stop);
+        EquipmentDataBuffer buffer = equipmentDataBufferPool.acquire(equipmentId);
+        try {
+            if (withPreviousRecord) {
+                var previous = segmentStore.findLastBefore(equipmentId, from);
+                if (previous != null) {
+                    add(buffer, previous.time(), previous.u(), previous.enabled());
+                }
+            }
+            segmentStore.scan(
+                    equipmentId,
+                    from,
+                    to,
+                    stateChangesOnly ? new StateChanges(buffer) : (time, u, enabled) -> add(buffer, time, u, enabled)
+            );
+            buffer.truncateTimes(SECONDS_PER_MINUTE);
+            buffer.sortByTime();
+            return buffer;
+        } catch (RuntimeException e) {
+            equipmentDataBufferPool.release(buffer);
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static void add(EquipmentDataBuffer buffer, long time, double u, boolean enabled) {
+        buffer.add(Math.floorDiv(time, NANOS_PER_SECOND), Double.isNaN(u) ? null : u, enabled, true);
+    }
+
+    private static long toNanos(String dateTime) {
+        Instant instant = OffsetDateTime.parse(dateTime).toInstant();
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    /**
+     * Keeps the first sample and the samples where {@code enabled} changes, like the InfluxDB state change query.
+     */
+    private static final class StateChanges implements SampleConsumer {
+
+        private final EquipmentDataBuffer buffer;
+        private boolean first = true;
+        private boolean enabled;
+
+        private StateChanges(EquipmentDataBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void accept(long time, double u, boolean enabled) {
+            if (first || enabled != this.enabled) {
+                add(buffer, time, Double.NaN, enabled);
+            }
+            first = false;
+            this.enabled = enabled;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package ru.kpfu.machinemetrics.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentDayStatistics;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.properties.DayCacheProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of whole past days kept in memory per equipment and day, so a long period is put together from the
+ * cached days and only the rest, including the partial days at its edges, is read and calculated.
+ * <p>
+ * A day is cached once it ended at least {@code closed-after} ago and some sample precedes its end, see
+ * {@link StatisticsCalculator#calculateDays}. Schedule changes and deleted equipment drop the cached days, and days
+ * calculated while that happened are not stored. The least recently used days are evicted above {@code max-entries}.
+ */
+@Service
+public class DayStatisticsCache {
+
+    private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    private final DayCacheProperties dayCacheProperties;
+    private final EquipmentDataRepository equipmentDataRepository;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    private final Map<Key, EquipmentDayStatistics> entries;
+    private final AtomicLong version = new AtomicLong();
+
+    public DayStatisticsCache(
+            DayCacheProperties dayCacheProperties,
+            EquipmentDataRepository equipmentDataRepository,
+            EquipmentDataBufferPool equipmentDataBufferPool,
+            MeterRegistry meterRegistry
+    ) {
+        this.dayCacheProperties = dayCacheProperties;
+        this.equipmentDataRepository = equipmentDataRepository;
+        this.equipmentDataBufferPool = equipmentDataBufferPool;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, EquipmentDayStatistics> eldest) {
+                return size() > dayCacheProperties.getMaxEntries();
+            }
+        };
+        this.hitCounter = Counter.builder("statistics.day-cache.hits")
+                .description("Days of a period taken from the cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("statistics.day-cache.misses")
+                .description("Cacheable days of a period that had to be calculated")
+                .register(meterRegistry);
+        Gauge.builder("statistics.day-cache.size", this, DayStatisticsCache::size)
+                .description("Days in the cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a whole closed day falls into the period, so {@link #calculate} answers for it and reads only the rest.
+     */
+    public boolean covers(OffsetDateTime start, OffsetDateTime end, boolean includeData) {
+        if (!dayCacheProperties.isEnabled() || (includeData && !dayCacheProperties.isIncludeData())) {
+            return false;
+        }
+        OffsetDateTime closedUntil = OffsetDateTime.now(start.getOffset()).minus(dayCacheProperties.getClosedAfter());
+        OffsetDateTime firstDate = start.truncatedTo(ChronoUnit.DAYS);
+        OffsetDateTime firstEnd = (firstDate.isBefore(start) ? firstDate.plusDays(1) : firstDate).plusDays(1);
+        return !firstEnd.isAfter(end) && !firstEnd.isAfter(closedUntil);
+    }
+
+    /**
+     * Statistics of the equipment put together from cached and calculated days, or {@code null} when no whole closed
+     * day falls into the period.
+     */
+    public EquipmentStatisticsDto calculate(
+            Long equipmentId,
+            Map<OffsetDateTime, Schedule> schedules,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData
+    ) {
+        if (!covers(start, end, includeData)) {
+            return null;
+        }
+        OffsetDateTime closedUntil = OffsetDateTime.now(start.getOffset()).minus(dayCacheProperties.getClosedAfter());
+        List<OffsetDateTime> dates = new ArrayList<>(new TreeMap<>(schedules).keySet());
+        boolean[] cacheable = new boolean[dates.size()];
+        EquipmentDayStatistics[] days = new EquipmentDayStatistics[dates.size()];
+        boolean hasCached = false;
+        for (int i = 0; i < dates.size(); i++) {
+            OffsetDateTime nextDate = dates.get(i).plusDays(1);
+            cacheable[i] = !dates.get(i).isBefore(start) && !nextDate.isAfter(end) && !nextDate.isAfter(closedUntil);
+            if (cacheable[i]) {
+                days[i] = get(new Key(equipmentId, dates.get(i).toLocalDate().toEpochDay()), includeData);
+                hasCached |= days[i] != null;
+                (days[i] != null ? hitCounter : missCounter).increment();
+            }
+        }
+        long calculatedVersion = version.get();
+        List<Run> runs = new ArrayList<>();
+        try {
+            for (int from = 0; from < dates.size(); from++) {
+                if (days[from] != null) {
+                    continue;
+                }
+                int to = from;
+                while (to + 1 < dates.size() && days[to + 1] == null) {
+                    to++;
+                }
+                runs.add(load(
+                        equipmentId,
+                        from,
+                        to,
+                        max(dates.get(from), start),
+                        to + 1 < dates.size() ? dates.get(to + 1) : end
+                ));
+                from = to;
+            }
+
+            boolean hasData = hasCached || runs.stream().anyMatch(run -> !run.equipmentData().isEmpty());
+            for (var run : runs) {
+                Map<OffsetDateTime, Schedule> runSchedules = new TreeMap<>();
+                for (int i = run.from(); i <= run.to(); i++) {
+                    runSchedules.put(dates.get(i), schedules.get(dates.get(i)));
+                }
+                var runDays = StatisticsCalculator.calculateDays(
+                        run.equipmentData(),
+                        runSchedules,
+                        run.start(),
+                        run.end(),
+                        includeData,
+                        hasData
+                );
+                for (int i = run.from(); i <= run.to(); i++) {
+                    days[i] = runDays.get(i - run.from());
+                    if (cacheable[i] && precedes(run.equipmentData(), dates.get(i).plusDays(1))) {
+                        put(new Key(equipmentId, dates.get(i).toLocalDate().toEpochDay()), days[i], calculatedVersion);
+                    }
+                }
+            }
+        } finally {
+            runs.forEach(run -> equipmentDataBufferPool.release(run.equipmentData()));
+        }
+        return StatisticsCalculator.calculate(List.of(days), start, end);
+    }
+
+    /**
+     * Drops the cached days of the equipment, or of every equipment for {@code null}, which stands for the global
+     * schedules. Inside a transaction they are dropped once more after it completes.
+     */
+    public void invalidate(Long equipmentId) {
+        remove(equipmentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(equipmentId);
+                }
+            });
+        }
+    }
+
+    private Run load(Long equipmentId, int from, int to, OffsetDateTime start, OffsetDateTime end) {
+        EquipmentDataBuffer equipmentData = start.isBefore(end)
+                ? equipmentDataRepository.getData(start.format(isoOffsetDateTime), end.format(isoOffsetDateTime), equipmentId)
+                : new EquipmentDataBuffer(0);
+        return new Run(from, to, start, end, equipmentData);
+    }
+
+    private synchronized EquipmentDayStatistics get(Key key, boolean includeData) {
+        EquipmentDayStatistics result = entries.get(key);
+        if (result == null || includeData && result.equipmentData() == null) {
+            return null;
+        }
+        return result;
+    }
+
+    private synchronized void put(Key key, EquipmentDayStatistics day, long calculatedVersion) {
+        if (version.get() != calculatedVersion) {
+            return;
+        }
+        var existing = entries.get(key);
+        if (existing != null && existing.equipmentData() != null && day.equipmentData() == null) {
+            return;
+        }
+        entries.put(key, new EquipmentDayStatistics(
+                day.date(),
+                day.upNanos(),
+                day.upScheduleNanos(),
+                day.downScheduleNanos(),
+                day.equipmentData() != null ? List.copyOf(day.equipmentData()) : null
+        ));
+    }
+
+    private synchronized void remove(Long equipmentId) {
+        version.incrementAndGet();
+        if (equipmentId == null) {
+            entries.clear();
+        } else {
+            entries.keySet().removeIf(key -> key.equipmentId().equals(equipmentId));
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private static boolean precedes(EquipmentDataBuffer equipmentData, OffsetDateTime dateTime) {
+        return !equipmentData.isEmpty() && equipmentData.getTime(0) < dateTime.toEpochSecond();
+    }
+
+    private static OffsetDateTime max(OffsetDateTime first, OffsetDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    private record Key(Long equipmentId, long epochDay) {
+    }
+
+    private record Run(int from, int to, OffsetDateTime start, OffsetDateTime end, EquipmentDataBuffer equipmentData) {
+    }
+}
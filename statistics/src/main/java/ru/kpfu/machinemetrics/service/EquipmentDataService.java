@@ -1,77 +1,620 @@
 package ru.kpfu.machinemetrics.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.constraints.NotNull;
-import lombok.RequiredArgsConstructor;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.dto.QueryStrategy;
 import ru.kpfu.machinemetrics.dto.StatisticsDto;
+import ru.kpfu.machinemetrics.exception.EquipmentDataTimeoutException;
 import ru.kpfu.machinemetrics.mapper.ScheduleMapper;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
 import ru.kpfu.machinemetrics.model.Schedule;
 import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
 import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
 import ru.kpfu.machinemetrics.repository.ScheduleRepository;
 
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static ru.kpfu.machinemetrics.constants.EquipmentDataConstants.EQUIPMENT_DATA_TIMEOUT_EXCEPTION_MESSAGE;
+
 @Service
-@RequiredArgsConstructor
 @Transactional
 public class EquipmentDataService {
 
     private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
     private final AppProperties appProperties;
+    private final EquipmentDataProperties equipmentDataProperties;
     private final EquipmentDataRepository equipmentDataRepository;
     private final ScheduleRepository scheduleRepository;
+    private final ScheduleResolver scheduleResolver;
     private final ScheduleMapper scheduleMapper;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+    private final EquipmentRollupRepository equipmentRollupRepository;
+    private final RollupQueryPlanner rollupQueryPlanner;
+    private final LiveWindowService liveWindowService;
+    private final DayStatisticsCache dayStatisticsCache;
+    private final EquipmentPurgeService equipmentPurgeService;
+    private final ThreadPoolTaskExecutor equipmentDataExecutor;
+    private final MessageSource messageSource;
+    private final Timer queueWaitTimer;
+    private final Timer computeTimer;
+    private final Counter computedRequestCounter;
+    private final Counter sharedRequestCounter;
+    private final Map<RequestKey, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+
+    public EquipmentDataService(
+            AppProperties appProperties,
+            EquipmentDataProperties equipmentDataProperties,
+            EquipmentDataRepository equipmentDataRepository,
+            ScheduleRepository scheduleRepository,
+            ScheduleResolver scheduleResolver,
+            ScheduleMapper scheduleMapper,
+            EquipmentDataBufferPool equipmentDataBufferPool,
+            EquipmentRollupRepository equipmentRollupRepository,
+            RollupQueryPlanner rollupQueryPlanner,
+            LiveWindowService liveWindowService,
+            DayStatisticsCache dayStatisticsCache,
+            EquipmentPurgeService equipmentPurgeService,
+            ThreadPoolTaskExecutor equipmentDataExecutor,
+            MessageSource messageSource,
+            MeterRegistry meterRegistry
+    ) {
+        this.appProperties = appProperties;
+        this.equipmentDataProperties = equipmentDataProperties;
+        this.equipmentDataRepository = equipmentDataRepository;
+        this.scheduleRepository = scheduleRepository;
+        this.scheduleResolver = scheduleResolver;
+        this.scheduleMapper = scheduleMapper;
+        this.equipmentDataBufferPool = equipmentDataBufferPool;
+        this.equipmentRollupRepository = equipmentRollupRepository;
+        this.rollupQueryPlanner = rollupQueryPlanner;
+        this.liveWindowService = liveWindowService;
+        this.dayStatisticsCache = dayStatisticsCache;
+        this.equipmentPurgeService = equipmentPurgeService;
+        this.equipmentDataExecutor = equipmentDataExecutor;
+        this.messageSource = messageSource;
+        this.queueWaitTimer = Timer.builder("statistics.equipment-data.queue-wait")
+                .description("Time an equipment calculation waits for an executor thread")
+                .register(meterRegistry);
+        this.computeTimer = Timer.builder("statistics.equipment-data.compute")
+                .description("Time to load and calculate statistics of one equipment")
+                .register(meterRegistry);
+        this.computedRequestCounter = Counter.builder("statistics.equipment-data.requests")
+                .description("Asynchronous statistics requests by whether they shared a running calculation")
+                .tag("coalesced", "false")
+                .register(meterRegistry);
+        this.sharedRequestCounter = Counter.builder("statistics.equipment-data.requests")
+                .description("Asynchronous statistics requests by whether they shared a running calculation")
+                .tag("coalesced", "true")
+                .register(meterRegistry);
+    }
 
     private static int getTimeFromDateTime(OffsetDateTime currentDateTime) {
         return currentDateTime.getHour() * 60 + currentDateTime.getMinute();
     }
 
 
-    public StatisticsDto getData(List<Long> equipmentIds, OffsetDateTime start, OffsetDateTime end) {
-        if (start == null) {
-            start = OffsetDateTime.now().minusHours(1).truncatedTo(ChronoUnit.MINUTES);
-            start = start.withMinute((start.getMinute() / 5) * 5);
-        } else {
-            start = start.withOffsetSameInstant(ZoneOffset.of(appProperties.getDefaultZone()));
+    /**
+     * Same as {@link #getDataAsync(List, OffsetDateTime, OffsetDateTime, boolean)}, but hands every equipment to the
+     * listener in request order as soon as it is calculated. At most {@code pool-size} equipments are calculated ahead
+     * of the listener, and the timeout applies to each equipment instead of the whole request. Raw points of several
+     * equipments are read with one query per {@code pool-size} equipments.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamData(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            StatisticsStreamListener listener
+    ) {
+        streamData(equipmentIds, start, end, includeData, QueryStrategy.DEFAULT, listener);
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamData(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            QueryStrategy strategy,
+            StatisticsStreamListener listener
+    ) {
+        final boolean live = start == null && end == null;
+        start = getStart(start);
+        end = getEnd(start, end);
+
+        listener.onPeriod(start, end);
+        calculateAll(
+                equipmentIds,
+                start,
+                end,
+                includeData,
+                live,
+                strategy,
+                prefetches(equipmentIds, start, end, includeData, live),
+                listener::onEquipment
+        );
+    }
+
+    /**
+     * Statistics of the equipments over the period, by default the last hour. Raw points are read with non-blocking
+     * queries, one for all the equipments, so no thread is held while InfluxDB answers, and only the calculation runs
+     * on the executor. Cancelling the returned future cancels the queries still running.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<StatisticsDto> getDataAsync(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData
+    ) {
+        return getDataAsync(equipmentIds, start, end, includeData, QueryStrategy.DEFAULT);
+    }
+
+    /**
+     * Identical requests running at the same time, with the same equipments in any order and the same period once the
+     * defaults and the zone are applied, share one calculation. It is cancelled once all of them are cancelled.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<StatisticsDto> getDataAsync(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            QueryStrategy strategy
+    ) {
+        final boolean live = start == null && end == null;
+        final OffsetDateTime periodStart = getStart(start);
+        final OffsetDateTime periodEnd = getEnd(periodStart, end);
+        if (!equipmentDataProperties.isCoalesceRequests()) {
+            return calculateAllAsync(equipmentIds, periodStart, periodEnd, includeData, live, strategy);
         }
-        if (end == null) {
-            end = OffsetDateTime.now().truncatedTo(ChronoUnit.MINUTES);
-            end = end.withMinute((start.getMinute() / 5) * 5);
+
+        List<Long> distinctIds = equipmentIds.stream().distinct().sorted().toList();
+        var key = new RequestKey(
+                distinctIds,
+                periodStart.toInstant(),
+                periodEnd.toInstant(),
+                includeData,
+                live,
+                strategy
+        );
+        InFlightRequest[] created = new InFlightRequest[1];
+        InFlightRequest request = inFlightRequests.compute(key, (ignored, current) -> {
+            if (current == null) {
+                current = new InFlightRequest();
+                created[0] = current;
+            }
+            current.waiting++;
+            return current;
+        });
+        if (created[0] != null) {
+            computedRequestCounter.increment();
+            request.result.whenComplete((ignored, throwable) -> inFlightRequests.remove(key, request));
+            try {
+                CompletableFuture<StatisticsDto> calculation = calculateAllAsync(
+                        distinctIds,
+                        periodStart,
+                        periodEnd,
+                        includeData,
+                        live,
+                        strategy
+                );
+                request.result.whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        calculation.cancel(true);
+                    }
+                });
+                calculation.whenComplete((statistics, throwable) -> {
+                    if (throwable != null) {
+                        request.result.completeExceptionally(throwable);
+                    } else {
+                        request.result.complete(statistics);
+                    }
+                });
+            } catch (RuntimeException e) {
+                request.result.completeExceptionally(e);
+            }
         } else {
-            end = end.withOffsetSameInstant(ZoneOffset.of(appProperties.getDefaultZone()));
+            sharedRequestCounter.increment();
         }
 
-        var result = StatisticsDto.builder().start(start).end(end).equipmentStatisticsDtos(new ArrayList<>()).build();
+        CompletableFuture<StatisticsDto> result = new CompletableFuture<>();
+        request.result.whenComplete((statistics, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(toRuntimeException(throwable));
+            } else {
+                result.complete(toRequestedOrder(statistics, distinctIds, equipmentIds));
+            }
+        });
+        result.whenComplete((ignored, throwable) -> {
+            if (result.isCancelled()) {
+                leave(key, request);
+            }
+        });
+        return result;
+    }
+
+    private void leave(RequestKey key, InFlightRequest request) {
+        boolean[] abandoned = new boolean[1];
+        inFlightRequests.computeIfPresent(key, (ignored, current) -> {
+            if (current == request && --current.waiting == 0) {
+                abandoned[0] = true;
+                return null;
+            }
+            return current;
+        });
+        if (abandoned[0]) {
+            request.result.cancel(true);
+        }
+    }
+
+    private static StatisticsDto toRequestedOrder(
+            StatisticsDto statistics,
+            List<Long> calculatedIds,
+            List<Long> equipmentIds
+    ) {
+        Map<Long, EquipmentStatisticsDto> idToStatistics = new HashMap<>();
+        for (int i = 0; i < calculatedIds.size(); i++) {
+            idToStatistics.put(calculatedIds.get(i), statistics.getEquipmentStatisticsDtos().get(i));
+        }
+        return StatisticsDto.builder()
+                .start(statistics.getStart())
+                .end(statistics.getEnd())
+                .equipmentStatisticsDtos(equipmentIds.stream().map(idToStatistics::get).collect(Collectors.toList()))
+                .build();
+    }
+
+    private CompletableFuture<StatisticsDto> calculateAllAsync(
+            List<Long> equipmentIds,
+            OffsetDateTime periodStart,
+            OffsetDateTime periodEnd,
+            boolean includeData,
+            boolean live,
+            QueryStrategy strategy
+    ) {
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> prefetchedData =
+                prefetches(equipmentIds, periodStart, periodEnd, includeData, live)
+                        ? prefetch(equipmentIds, periodStart, periodEnd)
+                        : null;
+        List<CompletableFuture<EquipmentStatisticsDto>> futures = new ArrayList<>(equipmentIds.size());
         for (var equipmentId : equipmentIds) {
-            var equipmentData = equipmentDataRepository.getData(
-                    start.format(isoOffsetDateTime),
-                    end.format(isoOffsetDateTime),
-                    equipmentId
+            futures.add(getEquipmentStatisticsAsync(
+                    equipmentId,
+                    prefetchedData,
+                    periodStart,
+                    periodEnd,
+                    includeData,
+                    live,
+                    strategy
+            ));
+        }
+
+        CompletableFuture<StatisticsDto> result = CompletableFuture
+                .allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> StatisticsDto.builder()
+                        .start(periodStart)
+                        .end(periodEnd)
+                        .equipmentStatisticsDtos(futures.stream().map(CompletableFuture::join).collect(Collectors.toList()))
+                        .build())
+                .orTimeout(equipmentDataProperties.getTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                .exceptionallyCompose(throwable -> CompletableFuture.failedFuture(toRuntimeException(throwable)));
+        result.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                futures.forEach(future -> future.cancel(true));
+                if (prefetchedData != null) {
+                    prefetchedData.cancel(true);
+                }
+            }
+        });
+        for (var future : futures) {
+            future.whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    result.completeExceptionally(toRuntimeException(throwable));
+                }
+            });
+        }
+        return result;
+    }
+
+    private CompletableFuture<EquipmentStatisticsDto> getEquipmentStatisticsAsync(
+            Long equipmentId,
+            CompletableFuture<Map<Long, EquipmentDataBuffer>> prefetchedData,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean live,
+            QueryStrategy strategy
+    ) {
+        if (live || !includeData || dayStatisticsCache.covers(start, end, true)) {
+            return calculateAsync(
+                    () -> getEquipmentStatistics(equipmentId, null, start, end, includeData, live, strategy)
             );
-            var schedules = getSchedules(equipmentId, start, end);
-            var dto = StatisticsCalculator.calculate(equipmentData, schedules, start, end);
-            dto.setSchedules(
-                    schedules.entrySet().stream()
-                            .collect(
-                                    Collectors.toMap(Map.Entry::getKey, e -> scheduleMapper.toScheduleDto(e.getValue()))
-                            )
+        }
+        if (prefetchedData != null) {
+            return prefetchedData.thenCompose(data -> calculateAsync(() -> getEquipmentStatistics(
+                    equipmentId,
+                    data.remove(equipmentId),
+                    start,
+                    end,
+                    true,
+                    false,
+                    strategy
+            )));
+        }
+        if (equipmentPurgeService.isPurged(equipmentId)) {
+            return calculateAsync(
+                    () -> getEquipmentStatistics(equipmentId, null, start, end, true, false, strategy)
             );
-            result.getEquipmentStatisticsDtos().add(dto);
         }
+        CompletableFuture<EquipmentDataBuffer> data = equipmentDataRepository.getDataAsync(
+                start.format(isoOffsetDateTime),
+                end.format(isoOffsetDateTime),
+                equipmentId
+        );
+        CompletableFuture<EquipmentStatisticsDto> result = data.thenCompose(equipmentData -> calculateAsync(
+                () -> getEquipmentStatistics(equipmentId, equipmentData, start, end, true, false, strategy)
+        ));
+        result.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                data.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the calculation on the executor, recording its wait for a thread and its time.
+     */
+    private CompletableFuture<EquipmentStatisticsDto> calculateAsync(Supplier<EquipmentStatisticsDto> calculation) {
+        final long submittedAt = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            queueWaitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            return computeTimer.record(calculation);
+        }, equipmentDataExecutor);
+    }
 
+    private RuntimeException toRuntimeException(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof TimeoutException || throwable.getCause() instanceof TimeoutException) {
+            Locale locale = LocaleContextHolder.getLocale();
+            String message = messageSource.getMessage(
+                    EQUIPMENT_DATA_TIMEOUT_EXCEPTION_MESSAGE,
+                    new Object[]{},
+                    locale
+            );
+            return new EquipmentDataTimeoutException(message);
+        }
+        if (throwable instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new RuntimeException(throwable);
+    }
+
+    /**
+     * Whether the raw points of the equipments are read with one query instead of one per equipment.
+     */
+    private boolean prefetches(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean live
+    ) {
+        return includeData && !live && equipmentIds.size() > 1 && !dayStatisticsCache.covers(start, end, true);
+    }
+
+    /**
+     * Raw points of the equipments, each taken out of the map by the first calculation that asks for it. Cancelling
+     * the returned future cancels the query.
+     */
+    private CompletableFuture<Map<Long, EquipmentDataBuffer>> prefetch(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end
+    ) {
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> data = equipmentDataRepository.getAllDataAsync(
+                start.format(isoOffsetDateTime),
+                end.format(isoOffsetDateTime),
+                equipmentIds
+        );
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> result = data.thenApply(ConcurrentHashMap::new);
+        result.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                data.cancel(true);
+            }
+        });
         return result;
     }
 
+    private OffsetDateTime getStart(OffsetDateTime start) {
+        final ZoneOffset zoneOffset = ZoneOffset.of(appProperties.getDefaultZone());
+        if (start == null) {
+            start = OffsetDateTime.now(zoneOffset).minusHours(1).truncatedTo(ChronoUnit.MINUTES);
+            return start.withMinute((start.getMinute() / 5) * 5);
+        }
+        return start.withOffsetSameInstant(zoneOffset);
+    }
+
+    private OffsetDateTime getEnd(OffsetDateTime start, OffsetDateTime end) {
+        final ZoneOffset zoneOffset = ZoneOffset.of(appProperties.getDefaultZone());
+        if (end == null) {
+            end = OffsetDateTime.now(zoneOffset).truncatedTo(ChronoUnit.MINUTES);
+            return end.withMinute((start.getMinute() / 5) * 5);
+        }
+        return end.withOffsetSameInstant(zoneOffset);
+    }
+
+    private void calculateAll(
+            List<Long> equipmentIds,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean live,
+            QueryStrategy strategy,
+            boolean prefetch,
+            BiConsumer<Long, EquipmentStatisticsDto> consumer
+    ) {
+        final int poolSize = equipmentDataProperties.getPoolSize();
+        final long timeout = equipmentDataProperties.getTimeout().toNanos();
+        Deque<CompletableFuture<EquipmentStatisticsDto>> futures = new ArrayDeque<>();
+        List<CompletableFuture<Map<Long, EquipmentDataBuffer>>> prefetches = new ArrayList<>();
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> prefetchedData = null;
+        int submitted = 0;
+        try {
+            for (var equipmentId : equipmentIds) {
+                while (submitted < equipmentIds.size() && futures.size() < poolSize) {
+                    if (prefetch && submitted % poolSize == 0) {
+                        int prefetchEnd = Math.min(submitted + poolSize, equipmentIds.size());
+                        prefetchedData = prefetch(equipmentIds.subList(submitted, prefetchEnd), start, end);
+                        prefetches.add(prefetchedData);
+                    }
+                    futures.addLast(getEquipmentStatisticsAsync(
+                            equipmentIds.get(submitted++),
+                            prefetchedData,
+                            start,
+                            end,
+                            includeData,
+                            live,
+                            strategy
+                    ));
+                }
+                consumer.accept(equipmentId, futures.removeFirst().get(timeout, TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            throw toRuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            prefetches.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private EquipmentStatisticsDto getEquipmentStatistics(
+            Long equipmentId,
+            EquipmentDataBuffer prefetchedData,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean live,
+            QueryStrategy strategy
+    ) {
+        var schedules = getSchedules(equipmentId, start, end);
+        EquipmentStatisticsDto dto = null;
+        if (equipmentPurgeService.isPurged(equipmentId)) {
+            equipmentDataBufferPool.release(prefetchedData);
+            dto = calculate(equipmentId, new EquipmentDataBuffer(0), schedules, start, end, includeData);
+        }
+        if (dto == null && live) {
+            dto = liveWindowService.calculate(equipmentId, schedules, start, end, includeData);
+        }
+        if (dto == null && !includeData && strategy == QueryStrategy.PUSHDOWN && !hasInvertedSchedule(schedules)) {
+            dto = calculate(
+                    equipmentId,
+                    equipmentDataRepository.getStateChanges(
+                            start.format(isoOffsetDateTime),
+                            end.format(isoOffsetDateTime),
+                            equipmentId
+                    ),
+                    schedules,
+                    start,
+                    end,
+                    false
+            );
+        }
+        if (dto == null && !includeData) {
+            dto = rollupQueryPlanner.calculate(equipmentId, schedules, start, end);
+        }
+        if (dto == null && !live) {
+            dto = dayStatisticsCache.calculate(equipmentId, schedules, start, end, includeData);
+            if (dto != null) {
+                equipmentDataBufferPool.release(prefetchedData);
+            }
+        }
+        if (dto == null) {
+            dto = calculate(equipmentId, prefetchedData, schedules, start, end, includeData);
+        }
+        dto.setSchedules(
+                schedules.entrySet().stream()
+                        .collect(
+                                Collectors.toMap(Map.Entry::getKey, e -> scheduleMapper.toScheduleDto(e.getValue()))
+                        )
+        );
+        return dto;
+    }
+
+    private EquipmentStatisticsDto calculate(
+            Long equipmentId,
+            EquipmentDataBuffer prefetchedData,
+            Map<OffsetDateTime, Schedule> schedules,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData
+    ) {
+        var equipmentData = prefetchedData != null ? prefetchedData : equipmentDataRepository.getData(
+                start.format(isoOffsetDateTime),
+                end.format(isoOffsetDateTime),
+                equipmentId
+        );
+        try {
+            return StatisticsCalculator.calculate(
+                    equipmentData,
+                    List.of(),
+                    new EquipmentDataBuffer(0),
+                    schedules,
+                    start,
+                    end,
+                    includeData
+            );
+        } finally {
+            equipmentDataBufferPool.release(equipmentData);
+        }
+    }
+
+    /**
+     * Overlaps with a schedule ending before it starts are negative and depend on where the samples split the time, so
+     * such periods cannot be calculated from the state changes alone.
+     */
+    private static boolean hasInvertedSchedule(Map<OffsetDateTime, Schedule> schedules) {
+        return schedules.values().stream().anyMatch(schedule -> schedule.getEndTime() < schedule.getStartTime());
+    }
 
     private Map<OffsetDateTime, Schedule> getSchedules(Long equipmentId, OffsetDateTime start, OffsetDateTime end) {
         Map<OffsetDateTime, Schedule> result = new HashMap<>();
@@ -83,64 +626,37 @@ public class EquipmentDataService {
                 date = date.plusDays(1)
         ) {
             final OffsetDateTime dateDate = date.truncatedTo(ChronoUnit.DAYS);
-            Schedule schedule = getSchedule(equipmentId, dateDate);
+            Schedule schedule = scheduleResolver.resolve(equipmentId, dateDate);
             result.put(dateDate, schedule);
         }
         return result;
     }
 
-    private Schedule getSchedule(Long equipmentId, OffsetDateTime currentTime) {
-        Schedule schedule;
-        List<Schedule> scheduleList = scheduleRepository.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                currentTime.truncatedTo(ChronoUnit.DAYS),
-                equipmentId
-        );
-        if (scheduleList.size() > 0) {
-            schedule = scheduleList.get(0);
-        } else {
-            scheduleList = scheduleRepository.findAllByWeekdayAndEquipmentId(
-                    currentTime.getDayOfWeek().getValue(),
-                    equipmentId
-            );
-            if (scheduleList.size() > 0) {
-                schedule = scheduleList.get(0);
-            } else {
-                scheduleList = scheduleRepository.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                        null,
-                        equipmentId
-                );
-                if (scheduleList.size() > 0) {
-                    schedule = scheduleList.get(0);
-                } else {
-                    scheduleList = scheduleRepository.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                            currentTime.truncatedTo(ChronoUnit.DAYS),
-                            null
-                    );
-                    if (scheduleList.size() > 0) {
-                        schedule = scheduleList.get(0);
-                    } else {
-                        scheduleList = scheduleRepository.findAllByWeekdayAndEquipmentId(
-                                currentTime.getDayOfWeek().getValue(),
-                                null
-                        );
-                        if (scheduleList.size() > 0) {
-                            schedule = scheduleList.get(0);
-                        } else {
-                            scheduleList = scheduleRepository.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                                    null,
-                                    null
-                            );
-                            schedule = scheduleList.get(0);
-                        }
-                    }
-                }
-            }
-        }
-        return schedule;
-    }
-
+    /**
+     * Removes the equipment's schedules and rollups and hands its samples to the background purge.
+     */
     public void delete(@NotNull Long equipmentId) {
-        equipmentDataRepository.delete(equipmentId);
+        equipmentPurgeService.start(equipmentId);
         scheduleRepository.deleteAllByEquipmentId(equipmentId);
+        scheduleResolver.invalidate();
+        equipmentRollupRepository.deleteAllByEquipmentId(equipmentId);
+        liveWindowService.remove(equipmentId);
+        dayStatisticsCache.invalidate(equipmentId);
+    }
+
+    private record RequestKey(
+            List<Long> equipmentIds,
+            Instant start,
+            Instant end,
+            boolean includeData,
+            boolean live,
+            QueryStrategy strategy
+    ) {
+    }
+
+    private static final class InFlightRequest {
+
+        private final CompletableFuture<StatisticsDto> result = new CompletableFuture<>();
+        private int waiting;
     }
 }
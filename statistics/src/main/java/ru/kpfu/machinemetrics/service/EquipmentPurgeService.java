@@ -0,0 +1,115 @@
+package ru.kpfu.machinemetrics.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.kpfu.machinemetrics.model.EquipmentPurge;
+import ru.kpfu.machinemetrics.properties.PurgeProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentPurgeRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deletes the samples of deleted equipment in the background, one chunk of whole UTC days per request from the oldest
+ * sample on, so a long history does not hold the caller for minutes.
+ * <p>
+ * The progress is saved after every chunk and the purges left unfinished are resumed after a restart. Until its purge
+ * is done the equipment is tombstoned: queries see no samples and the background jobs skip it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EquipmentPurgeService {
+
+    private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    private final PurgeProperties purgeProperties;
+    private final EquipmentPurgeRepository equipmentPurgeRepository;
+    private final EquipmentDataRepository equipmentDataRepository;
+    private final EquipmentRollupRepository equipmentRollupRepository;
+
+    private final Set<Long> tombstones = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    private void loadTombstones() {
+        equipmentPurgeRepository.findAll().forEach(purge -> tombstones.add(purge.getEquipmentId()));
+    }
+
+    public boolean isPurged(Long equipmentId) {
+        return tombstones.contains(equipmentId);
+    }
+
+    /**
+     * Tombstones the equipment and saves its purge, which deletes the samples up to the end of the next day.
+     */
+    public void start(Long equipmentId) {
+        tombstones.add(equipmentId);
+        if (equipmentPurgeRepository.existsById(equipmentId)) {
+            return;
+        }
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        equipmentPurgeRepository.save(
+                EquipmentPurge.builder()
+                        .equipmentId(equipmentId)
+                        .stop(now.truncatedTo(ChronoUnit.DAYS).plusDays(2))
+                        .createdAt(now)
+                        .build()
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${app.purge.interval:PT10S}", initialDelayString = "${app.purge.interval:PT10S}")
+    public void purge() {
+        long deadline = System.nanoTime() + purgeProperties.getMaxRunTime().toNanos();
+        for (var purge : equipmentPurgeRepository.findAll()) {
+            try {
+                if (!purge(purge, deadline)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.error("Cannot purge data of equipment " + purge.getEquipmentId(), e);
+            }
+        }
+    }
+
+    /**
+     * Deletes chunks until the purge is done or the deadline passes, and returns whether it is done.
+     */
+    boolean purge(EquipmentPurge purge, long deadline) {
+        Long equipmentId = purge.getEquipmentId();
+        OffsetDateTime stop = purge.getStop().withOffsetSameInstant(ZoneOffset.UTC);
+        OffsetDateTime from = purge.getPurgedUntil();
+        if (from == null) {
+            OffsetDateTime firstTime = equipmentDataRepository.findFirstTime(equipmentId);
+            from = firstTime == null ? stop : firstTime.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+        }
+        from = from.withOffsetSameInstant(ZoneOffset.UTC);
+        long chunkDays = Math.max(1, -Math.floorDiv(-purgeProperties.getChunk().toSeconds(), Duration.ofDays(1).toSeconds()));
+
+        while (from.isBefore(stop)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            OffsetDateTime to = from.plusDays(chunkDays).isBefore(stop) ? from.plusDays(chunkDays) : stop;
+            equipmentDataRepository.delete(equipmentId, from.format(isoOffsetDateTime), to.format(isoOffsetDateTime));
+            purge.setPurgedUntil(to);
+            equipmentPurgeRepository.save(purge);
+            from = to;
+        }
+
+        equipmentRollupRepository.deleteAllByEquipmentId(equipmentId);
+        equipmentPurgeRepository.delete(purge);
+        tombstones.remove(equipmentId);
+        log.info("Purged data of equipment {}", equipmentId);
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.kpfu.machinemetrics.service;
+
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.RollupResolution;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Builds rollups from samples truncated to minutes and ordered by time, as returned by
+ * {@link ru.kpfu.machinemetrics.repository.EquipmentDataRepository#getData}. The record before {@code from}, if any,
+ * gives the state the first bucket starts with.
+ */
+public class EquipmentRollupBuilder {
+
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    public static List<EquipmentRollup> buildHourly(EquipmentDataBuffer equipmentData, OffsetDateTime from, OffsetDateTime to) {
+        int minutes = RollupResolution.HOUR.getMinutes();
+        long bucketSeconds = minutes * SECONDS_PER_MINUTE;
+        long toSeconds = to.toEpochSecond();
+
+        int i = 0;
+        boolean enabled = false;
+        while (i < equipmentData.size() && equipmentData.getTime(i) < from.toEpochSecond()) {
+            enabled = equipmentData.isEnabled(i);
+            i++;
+        }
+
+        List<EquipmentRollup> result = new ArrayList<>();
+        for (long bucketStart = from.toEpochSecond(); bucketStart < toSeconds; bucketStart += bucketSeconds) {
+            BitSet enabledMinutes = new BitSet(minutes);
+            long sampleCount = 0;
+            long uCount = 0;
+            double uSum = 0;
+            double minU = Double.POSITIVE_INFINITY;
+            double maxU = Double.NEGATIVE_INFINITY;
+            for (int minute = 0; minute < minutes; minute++) {
+                long minuteStart = bucketStart + minute * SECONDS_PER_MINUTE;
+                while (i < equipmentData.size() && equipmentData.getTime(i) <= minuteStart) {
+                    enabled = equipmentData.isEnabled(i);
+                    sampleCount++;
+                    Double u = equipmentData.getU(i);
+                    if (u != null) {
+                        uCount++;
+                        uSum += u;
+                        minU = Math.min(minU, u);
+                        maxU = Math.max(maxU, u);
+                    }
+                    i++;
+                }
+                enabledMinutes.set(minute, enabled);
+            }
+            result.add(
+                    EquipmentRollup.builder()
+                            .equipmentId(equipmentData.getEquipmentId())
+                            .resolution(RollupResolution.HOUR)
+                            .bucketStart(OffsetDateTime.ofInstant(Instant.ofEpochSecond(bucketStart), from.getOffset()))
+                            .enabledMinutes(enabledMinutes.toByteArray())
+                            .enabledSeconds(enabledMinutes.cardinality() * SECONDS_PER_MINUTE)
+                            .lastEnabled(enabled)
+                            .sampleCount(sampleCount)
+                            .uCount(uCount)
+                            .uSum(uSum)
+                            .minU(uCount == 0 ? null : minU)
+                            .maxU(uCount == 0 ? null : maxU)
+                            .build()
+            );
+        }
+        return result;
+    }
+
+    public static EquipmentRollup buildDaily(List<EquipmentRollup> hourlyRollups) {
+        int hourMinutes = RollupResolution.HOUR.getMinutes();
+        BitSet enabledMinutes = new BitSet(RollupResolution.DAY.getMinutes());
+        long sampleCount = 0;
+        long uCount = 0;
+        double uSum = 0;
+        Double minU = null;
+        Double maxU = null;
+        for (int hour = 0; hour < hourlyRollups.size(); hour++) {
+            var hourlyRollup = hourlyRollups.get(hour);
+            var hourEnabledMinutes = hourlyRollup.getEnabledMinutesBitSet();
+            for (int minute = hourEnabledMinutes.nextSetBit(0); minute >= 0; minute = hourEnabledMinutes.nextSetBit(minute + 1)) {
+                enabledMinutes.set(hour * hourMinutes + minute);
+            }
+            sampleCount += hourlyRollup.getSampleCount();
+            uCount += hourlyRollup.getUCount();
+            uSum += hourlyRollup.getUSum();
+            if (hourlyRollup.getMinU() != null) {
+                minU = minU == null ? hourlyRollup.getMinU() : Math.min(minU, hourlyRollup.getMinU());
+                maxU = maxU == null ? hourlyRollup.getMaxU() : Math.max(maxU, hourlyRollup.getMaxU());
+            }
+        }
+        var first = hourlyRollups.get(0);
+        var last = hourlyRollups.get(hourlyRollups.size() - 1);
+        return EquipmentRollup.builder()
+                .equipmentId(first.getEquipmentId())
+                .resolution(RollupResolution.DAY)
+                .bucketStart(first.getBucketStart())
+                .enabledMinutes(enabledMinutes.toByteArray())
+                .enabledSeconds(enabledMinutes.cardinality() * SECONDS_PER_MINUTE)
+                .lastEnabled(last.getLastEnabled())
+                .sampleCount(sampleCount)
+                .uCount(uCount)
+                .uSum(uSum)
+                .minU(minU)
+                .maxU(maxU)
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package ru.kpfu.machinemetrics.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.RollupResolution;
+import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.RollupProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "app.rollup.enabled", havingValue = "true", matchIfMissing = true)
+public class EquipmentRollupService {
+
+    private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private final AppProperties appProperties;
+    private final RollupProperties rollupProperties;
+    private final EquipmentDataRepository equipmentDataRepository;
+    private final EquipmentRollupRepository equipmentRollupRepository;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+    private final EquipmentPurgeService equipmentPurgeService;
+
+    @Scheduled(fixedDelayString = "${app.rollup.interval:PT5M}", initialDelayString = "${app.rollup.interval:PT5M}")
+    public void rollUp() {
+        ZoneOffset zoneOffset = ZoneOffset.of(appProperties.getDefaultZone());
+        OffsetDateTime until = OffsetDateTime.now(zoneOffset)
+                .minus(rollupProperties.getDelay())
+                .truncatedTo(ChronoUnit.HOURS);
+        for (var equipmentId : equipmentDataRepository.getEquipmentIds()) {
+            if (equipmentPurgeService.isPurged(equipmentId)) {
+                continue;
+            }
+            try {
+                rollUp(equipmentId, until);
+            } catch (RuntimeException e) {
+                log.error("Cannot roll up data of equipment " + equipmentId, e);
+            }
+        }
+    }
+
+    /**
+     * Rolls up the hours from the last rolled up one until {@code until}, rolling up again the hours within
+     * {@code lateness} of it, so that samples that arrived late are counted, and the days these hours complete.
+     */
+    public void rollUp(Long equipmentId, OffsetDateTime until) {
+        OffsetDateTime from = equipmentRollupRepository
+                .findFirstByEquipmentIdAndResolutionOrderByBucketStartDesc(equipmentId, RollupResolution.HOUR)
+                .map(rollup -> rollup.getBucketStart().atZoneSameInstant(until.getOffset()).toOffsetDateTime()
+                        .plus(RollupResolution.HOUR.getDuration())
+                        .minus(rollupProperties.getLateness())
+                        .truncatedTo(ChronoUnit.HOURS))
+                .orElseGet(() -> until.minus(rollupProperties.getBackfill()).truncatedTo(ChronoUnit.DAYS));
+
+        while (from.isBefore(until)) {
+            OffsetDateTime nextDay = from.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            OffsetDateTime to = nextDay.isBefore(until) ? nextDay : until;
+
+            var equipmentData = equipmentDataRepository.getData(
+                    from.format(isoOffsetDateTime),
+                    to.format(isoOffsetDateTime),
+                    equipmentId
+            );
+            List<EquipmentRollup> hourlyRollups;
+            try {
+                hourlyRollups = EquipmentRollupBuilder.buildHourly(equipmentData, from, to);
+            } finally {
+                equipmentDataBufferPool.release(equipmentData);
+            }
+            equipmentRollupRepository.saveAll(replacing(equipmentId, RollupResolution.HOUR, from, to, hourlyRollups));
+
+            if (to.isEqual(nextDay)) {
+                OffsetDateTime day = nextDay.minusDays(1);
+                var dayRollups = equipmentRollupRepository
+                        .findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                                equipmentId,
+                                RollupResolution.HOUR,
+                                day,
+                                nextDay
+                        );
+                if (dayRollups.size() == RollupResolution.DAY.getMinutes() / RollupResolution.HOUR.getMinutes()) {
+                    var dayRollup = EquipmentRollupBuilder.buildDaily(dayRollups);
+                    equipmentRollupRepository.saveAll(
+                            replacing(equipmentId, RollupResolution.DAY, day, nextDay, List.of(dayRollup))
+                    );
+                }
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Gives the rollups the ids of the stored ones with the same buckets, so that rolling up again updates them.
+     */
+    private List<EquipmentRollup> replacing(
+            Long equipmentId,
+            RollupResolution resolution,
+            OffsetDateTime from,
+            OffsetDateTime to,
+            List<EquipmentRollup> rollups
+    ) {
+        Map<Instant, Long> storedIds = equipmentRollupRepository
+                .findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        equipmentId,
+                        resolution,
+                        from,
+                        to
+                )
+                .stream()
+                .collect(Collectors.toMap(rollup -> rollup.getBucketStart().toInstant(), EquipmentRollup::getId));
+        rollups.forEach(rollup -> rollup.setId(storedIds.get(rollup.getBucketStart().toInstant())));
+        return rollups;
+    }
+}
@@ -0,0 +1,233 @@
+package ru.kpfu.machinemetrics.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.properties.LiveWindowProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent samples of every equipment kept in memory in 5-minute buckets, so the default "last hour" window is calculated
+ * without reading InfluxDB.
+ * <p>
+ * Samples older than {@code overlap} are assumed to be written, so a period is served from memory only when it ends at
+ * least {@code overlap} before the last poll. Every poll re-reads the buckets from that point, which picks up samples
+ * written late, and drops the buckets older than {@code retention}. The last dropped sample is kept as the state before
+ * the window.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LiveWindowService {
+
+    private static final long BUCKET_SECONDS = 5 * 60;
+    private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    private final LiveWindowProperties liveWindowProperties;
+    private final EquipmentDataRepository equipmentDataRepository;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+    private final EquipmentPurgeService equipmentPurgeService;
+
+    private final Map<Long, LiveEquipment> equipments = new ConcurrentHashMap<>();
+    private volatile long coveredUntil = Long.MIN_VALUE;
+
+    /**
+     * Statistics of the equipment calculated from memory, or {@code null} when the period is not covered.
+     */
+    public EquipmentStatisticsDto calculate(
+            Long equipmentId,
+            Map<OffsetDateTime, Schedule> schedules,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData
+    ) {
+        long startSecond = start.toEpochSecond();
+        long endSecond = end.toEpochSecond();
+        if (!liveWindowProperties.isEnabled() || endSecond > coveredUntil) {
+            return null;
+        }
+        LiveEquipment equipment = equipments.get(equipmentId);
+        if (equipment == null || startSecond < equipment.from()) {
+            return null;
+        }
+
+        EquipmentDataBuffer equipmentData = new EquipmentDataBuffer();
+        equipmentData.setEquipmentId(equipmentId);
+        EquipmentDataBuffer previous = equipment.previous();
+        int previousIndex = previous.size() - 1;
+        for (var bucket : equipment.buckets().headMap(startSecond, true).values()) {
+            if (!bucket.isEmpty() && bucket.getTime(0) < startSecond) {
+                previous = bucket;
+                previousIndex = lastIndexBefore(bucket, startSecond);
+            }
+        }
+        if (previousIndex >= 0) {
+            copy(previous, previousIndex, equipmentData);
+        }
+        for (var bucket : equipment.buckets().subMap(floorBucket(startSecond), endSecond).values()) {
+            for (int i = 0; i < bucket.size(); i++) {
+                if (bucket.getTime(i) >= startSecond && bucket.getTime(i) < endSecond) {
+                    copy(bucket, i, equipmentData);
+                }
+            }
+        }
+        return StatisticsCalculator.calculate(
+                equipmentData,
+                List.of(),
+                new EquipmentDataBuffer(0),
+                schedules,
+                start,
+                end,
+                includeData
+        );
+    }
+
+    public void remove(Long equipmentId) {
+        equipments.remove(equipmentId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            fixedDelayString = "${app.live-window.poll-interval:PT10S}",
+            initialDelayString = "${app.live-window.poll-interval:PT10S}"
+    )
+    public synchronized void poll() {
+        if (!liveWindowProperties.isEnabled()) {
+            return;
+        }
+        try {
+            long now = Instant.now().getEpochSecond();
+            long windowFrom = floorBucket(now - liveWindowProperties.getRetention().toSeconds());
+            if (coveredUntil < windowFrom) {
+                equipments.clear();
+            }
+
+            equipments.keySet().removeIf(equipmentPurgeService::isPurged);
+            List<Long> newIds = new ArrayList<>();
+            for (var equipmentId : equipmentDataRepository.getEquipmentIds()) {
+                if (!equipments.containsKey(equipmentId) && !equipmentPurgeService.isPurged(equipmentId)) {
+                    newIds.add(equipmentId);
+                }
+            }
+
+            if (!equipments.isEmpty()) {
+                long reReadFrom = Math.max(floorBucket(coveredUntil), windowFrom);
+                var data = equipmentDataRepository.getAllDataInPeriod(
+                        format(reReadFrom),
+                        format(now),
+                        equipments.keySet()
+                );
+                data.forEach((equipmentId, buffer) -> {
+                    try {
+                        equipments.computeIfPresent(
+                                equipmentId,
+                                (id, equipment) -> equipment.merge(buffer, reReadFrom, windowFrom)
+                        );
+                    } finally {
+                        equipmentDataBufferPool.release(buffer);
+                    }
+                });
+            }
+
+            if (!newIds.isEmpty()) {
+                var data = equipmentDataRepository.getAllData(format(windowFrom), format(now), newIds);
+                data.forEach((equipmentId, buffer) -> {
+                    try {
+                        equipments.put(equipmentId, LiveEquipment.load(buffer, windowFrom));
+                    } finally {
+                        equipmentDataBufferPool.release(buffer);
+                    }
+                });
+            }
+
+            coveredUntil = now - liveWindowProperties.getOverlap().toSeconds();
+        } catch (RuntimeException e) {
+            log.error("Cannot poll live equipment data", e);
+        }
+    }
+
+    private static long floorBucket(long epochSecond) {
+        return Math.floorDiv(epochSecond, BUCKET_SECONDS) * BUCKET_SECONDS;
+    }
+
+    private static String format(long epochSecond) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC).format(isoOffsetDateTime);
+    }
+
+    private static int lastIndexBefore(EquipmentDataBuffer buffer, long epochSecond) {
+        int index = -1;
+        for (int i = 0; i < buffer.size() && buffer.getTime(i) < epochSecond; i++) {
+            index = i;
+        }
+        return index;
+    }
+
+    private static void copy(EquipmentDataBuffer from, int index, EquipmentDataBuffer to) {
+        to.add(from.getTime(index), from.getU(index), from.isEnabled(index), from.isReal(index));
+    }
+
+    /**
+     * Samples of one equipment from {@code from} on, split into buckets, and the last sample before {@code from}.
+     * Instances are never modified after they are published.
+     */
+    private record LiveEquipment(long from, EquipmentDataBuffer previous, NavigableMap<Long, EquipmentDataBuffer> buckets) {
+
+        private static LiveEquipment load(EquipmentDataBuffer data, long from) {
+            EquipmentDataBuffer previous = new EquipmentDataBuffer(1);
+            int previousIndex = lastIndexBefore(data, from);
+            if (previousIndex >= 0) {
+                copy(data, previousIndex, previous);
+            }
+            TreeMap<Long, EquipmentDataBuffer> buckets = new TreeMap<>();
+            addToBuckets(data, from, buckets);
+            return new LiveEquipment(from, previous, Collections.unmodifiableNavigableMap(buckets));
+        }
+
+        private LiveEquipment merge(EquipmentDataBuffer data, long reReadFrom, long windowFrom) {
+            TreeMap<Long, EquipmentDataBuffer> newBuckets = new TreeMap<>(buckets.headMap(reReadFrom, false));
+            addToBuckets(data, reReadFrom, newBuckets);
+
+            EquipmentDataBuffer newPrevious = previous;
+            while (!newBuckets.isEmpty() && newBuckets.firstKey() < windowFrom) {
+                EquipmentDataBuffer evicted = newBuckets.pollFirstEntry().getValue();
+                if (!evicted.isEmpty()) {
+                    newPrevious = new EquipmentDataBuffer(1);
+                    copy(evicted, evicted.size() - 1, newPrevious);
+                }
+            }
+            return new LiveEquipment(
+                    Math.max(from, windowFrom),
+                    newPrevious,
+                    Collections.unmodifiableNavigableMap(newBuckets)
+            );
+        }
+
+        private static void addToBuckets(EquipmentDataBuffer data, long from, TreeMap<Long, EquipmentDataBuffer> buckets) {
+            for (int i = 0; i < data.size(); i++) {
+                if (data.getTime(i) >= from) {
+                    buckets.computeIfAbsent(floorBucket(data.getTime(i)), bucket -> new EquipmentDataBuffer(8));
+                    copy(data, i, buckets.get(floorBucket(data.getTime(i))));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.kpfu.machinemetrics.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.RollupResolution;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads daily and hourly rollups for the whole buckets of the period and raw points only for the partial hours at its
+ * edges. Returns {@code null} when rollups are missing or cannot give the exact answer, so the caller falls back to
+ * raw points.
+ */
+@Service
+@RequiredArgsConstructor
+public class RollupQueryPlanner {
+
+    private static final DateTimeFormatter isoOffsetDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private final EquipmentDataRepository equipmentDataRepository;
+    private final EquipmentRollupRepository equipmentRollupRepository;
+    private final EquipmentDataBufferPool equipmentDataBufferPool;
+
+    public EquipmentStatisticsDto calculate(
+            Long equipmentId,
+            Map<OffsetDateTime, Schedule> schedules,
+            OffsetDateTime start,
+            OffsetDateTime end
+    ) {
+        if (schedules.values().stream().anyMatch(schedule -> schedule.getStartTime() > schedule.getEndTime())) {
+            return null;
+        }
+
+        OffsetDateTime rollupStart = ceil(start, ChronoUnit.HOURS);
+        OffsetDateTime rollupEnd = end.truncatedTo(ChronoUnit.HOURS);
+        if (!rollupStart.isBefore(rollupEnd)) {
+            return null;
+        }
+
+        List<EquipmentRollup> rollups = new ArrayList<>();
+        OffsetDateTime daysStart = ceil(rollupStart, ChronoUnit.DAYS);
+        OffsetDateTime daysEnd = rollupEnd.truncatedTo(ChronoUnit.DAYS);
+        boolean found;
+        if (daysStart.isBefore(daysEnd)) {
+            found = addRollups(rollups, equipmentId, RollupResolution.HOUR, rollupStart, daysStart)
+                    && addRollups(rollups, equipmentId, RollupResolution.DAY, daysStart, daysEnd)
+                    && addRollups(rollups, equipmentId, RollupResolution.HOUR, daysEnd, rollupEnd);
+        } else {
+            found = addRollups(rollups, equipmentId, RollupResolution.HOUR, rollupStart, rollupEnd);
+        }
+        if (!found) {
+            return null;
+        }
+
+        EquipmentDataBuffer head = null;
+        EquipmentDataBuffer tail = null;
+        try {
+            head = equipmentDataRepository.getData(
+                    start.format(isoOffsetDateTime),
+                    rollupStart.format(isoOffsetDateTime),
+                    equipmentId
+            );
+            tail = equipmentDataRepository.getDataInPeriod(
+                    rollupEnd.format(isoOffsetDateTime),
+                    end.format(isoOffsetDateTime),
+                    equipmentId
+            );
+            return StatisticsCalculator.calculate(head, rollups, tail, schedules, start, end, false);
+        } finally {
+            equipmentDataBufferPool.release(head);
+            equipmentDataBufferPool.release(tail);
+        }
+    }
+
+    private boolean addRollups(
+            List<EquipmentRollup> rollups,
+            Long equipmentId,
+            RollupResolution resolution,
+            OffsetDateTime from,
+            OffsetDateTime to
+    ) {
+        var found = equipmentRollupRepository
+                .findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        equipmentId,
+                        resolution,
+                        from,
+                        to
+                );
+        OffsetDateTime expected = from;
+        for (var rollup : found) {
+            if (!rollup.getBucketStart().isEqual(expected)) {
+                return false;
+            }
+            expected = expected.plus(resolution.getDuration());
+        }
+        if (!expected.isEqual(to)) {
+            return false;
+        }
+        rollups.addAll(found);
+        return true;
+    }
+
+    private static OffsetDateTime ceil(OffsetDateTime dateTime, ChronoUnit unit) {
+        OffsetDateTime truncated = dateTime.truncatedTo(unit);
+        return truncated.isEqual(dateTime) ? truncated : truncated.plus(1, unit);
+    }
+}
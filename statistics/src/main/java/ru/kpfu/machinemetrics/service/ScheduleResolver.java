@@ -0,0 +1,137 @@
+package ru.kpfu.machinemetrics.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.repository.ScheduleRepository;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Effective schedule of an equipment for a day, resolved in memory from the whole {@link Schedule} table.
+ * <p>
+ * The fallback order is equipment date, equipment weekday, equipment default, global date, global weekday and global
+ * default. Where several schedules match, the first one in the order of
+ * {@link ScheduleRepository#findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc} wins.
+ */
+@Service
+@RequiredArgsConstructor
+public class ScheduleResolver {
+
+    private static final Comparator<Schedule> SCHEDULE_ORDER = Comparator
+            .comparing(Schedule::getWeekday, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Schedule::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final ScheduleRepository scheduleRepository;
+
+    private final AtomicLong version = new AtomicLong();
+    private volatile Index index;
+
+    public Schedule resolve(Long equipmentId, OffsetDateTime date) {
+        Index current = index;
+        if (current == null) {
+            current = load();
+        }
+        return current.resolve(equipmentId, date);
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+        index = null;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    version.incrementAndGet();
+                    index = null;
+                }
+            });
+        }
+    }
+
+    @Scheduled(
+            fixedDelayString = "${app.schedule-resolver.reload-interval:PT10M}",
+            initialDelayString = "${app.schedule-resolver.reload-interval:PT10M}"
+    )
+    public void reload() {
+        version.incrementAndGet();
+        load();
+    }
+
+    private synchronized Index load() {
+        long loadedVersion = version.get();
+        Index current = index;
+        if (current != null && current.version == loadedVersion) {
+            return current;
+        }
+        Index loaded = new Index(scheduleRepository.findAll(), loadedVersion);
+        if (version.get() == loadedVersion) {
+            index = loaded;
+        }
+        return loaded;
+    }
+
+    private static final class Index {
+
+        private final long version;
+        private final Map<Key, Schedule> byDate = new HashMap<>();
+        private final Map<Key, Schedule> byWeekday = new HashMap<>();
+        private final Map<Long, Schedule> byEquipment = new HashMap<>();
+
+        private Index(List<Schedule> schedules, long version) {
+            this.version = version;
+            List<Schedule> sorted = new ArrayList<>(schedules);
+            sorted.sort(SCHEDULE_ORDER);
+            for (var schedule : sorted) {
+                if (schedule.getDate() != null) {
+                    byDate.putIfAbsent(new Key(schedule.getEquipmentId(), schedule.getDate().toInstant()), schedule);
+                } else {
+                    byEquipment.putIfAbsent(schedule.getEquipmentId(), schedule);
+                }
+                if (schedule.getWeekday() != null) {
+                    byWeekday.putIfAbsent(new Key(schedule.getEquipmentId(), schedule.getWeekday()), schedule);
+                }
+            }
+        }
+
+        private Schedule resolve(Long equipmentId, OffsetDateTime currentTime) {
+            Instant date = currentTime.truncatedTo(ChronoUnit.DAYS).toInstant();
+            Integer weekday = currentTime.getDayOfWeek().getValue();
+
+            Schedule schedule = byDate.get(new Key(equipmentId, date));
+            if (schedule == null) {
+                schedule = byWeekday.get(new Key(equipmentId, weekday));
+            }
+            if (schedule == null) {
+                schedule = byEquipment.get(equipmentId);
+            }
+            if (schedule == null) {
+                schedule = byDate.get(new Key(null, date));
+            }
+            if (schedule == null) {
+                schedule = byWeekday.get(new Key(null, weekday));
+            }
+            if (schedule == null) {
+                schedule = byEquipment.get(null);
+            }
+            if (schedule == null) {
+                throw new IndexOutOfBoundsException("No default schedule");
+            }
+            return schedule;
+        }
+    }
+
+    private record Key(Long equipmentId, Object value) {
+    }
+}
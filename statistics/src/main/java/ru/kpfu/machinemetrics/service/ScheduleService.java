@@ -33,6 +33,10 @@ public class ScheduleService {
 
     private final AppProperties appProperties;
 
+    private final ScheduleResolver scheduleResolver;
+
+    private final DayStatisticsCache dayStatisticsCache;
+
     public List<Schedule> listDefault() {
         return scheduleRepository.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(null, null);
     }
@@ -63,7 +67,10 @@ public class ScheduleService {
             throw new ScheduleIsAlreadyCreatedException(message);
         }
         schedule.setDate(date);
-        return scheduleRepository.save(schedule);
+        Schedule saved = scheduleRepository.save(schedule);
+        scheduleResolver.invalidate();
+        dayStatisticsCache.invalidate(saved.getEquipmentId());
+        return saved;
     }
 
     private Schedule getById(Long id) {
@@ -91,6 +98,8 @@ public class ScheduleService {
             throw new CannotDeleteScheduleException(message);
         }
         scheduleRepository.delete(schedule);
+        scheduleResolver.invalidate();
+        dayStatisticsCache.invalidate(schedule.getEquipmentId());
     }
 
     public Schedule edit(Long id, Schedule updatedSchedule) {
@@ -140,12 +149,19 @@ public class ScheduleService {
             );
             throw new ScheduleIsAlreadyCreatedException(message);
         }
+        final Long previousEquipmentId = schedule.getEquipmentId();
         schedule.setWeekday(updatedSchedule.getWeekday());
         schedule.setDate(date);
         schedule.setEquipmentId(updatedSchedule.getEquipmentId());
         schedule.setStartTime(updatedSchedule.getStartTime());
         schedule.setEndTime(updatedSchedule.getEndTime());
 
-        return scheduleRepository.save(schedule);
+        Schedule saved = scheduleRepository.save(schedule);
+        scheduleResolver.invalidate();
+        dayStatisticsCache.invalidate(previousEquipmentId);
+        if (previousEquipmentId != null && !previousEquipmentId.equals(saved.getEquipmentId())) {
+            dayStatisticsCache.invalidate(saved.getEquipmentId());
+        }
+        return saved;
     }
 }
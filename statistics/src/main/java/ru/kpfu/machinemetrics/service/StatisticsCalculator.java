@@ -2,93 +2,120 @@ package ru.kpfu.machinemetrics.service;
 
 import ru.kpfu.machinemetrics.dto.EquipmentDataDto;
 import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
-import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentDayStatistics;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
 import ru.kpfu.machinemetrics.model.Schedule;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Single pass sweep over samples and schedule days.
+ * <p>
+ * Samples must be ordered by time; days and returned sample times use the offset of {@code start}. Every sample is
+ * stretched up to the next one (the first gap before {@code start} is treated as disabled, the last sample is carried
+ * forward to {@code end}) and cut at midnight, so each segment belongs to exactly one schedule day.
+ */
 public class StatisticsCalculator {
 
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final long NANOS_PER_MINUTE = 60 * NANOS_PER_SECOND;
+    private static final int NO_SAMPLE = -1;
+    private static final EquipmentDataBuffer EMPTY = new EquipmentDataBuffer(0);
+
     public static EquipmentStatisticsDto calculate(
-            ArrayList<EquipmentData> equipmentDataList,
+            EquipmentDataBuffer equipmentData,
             Map<OffsetDateTime, Schedule> dateToSchedule,
             OffsetDateTime start,
             OffsetDateTime end
     ) {
-        fillDurations(equipmentDataList, start, end);
+        return calculate(equipmentData, List.of(), EMPTY, dateToSchedule, start, end, true);
+    }
 
-        var totalMinutes = Duration.between(start, end).toMinutes();
+    /**
+     * Same as {@link #calculate(EquipmentDataBuffer, Map, OffsetDateTime, OffsetDateTime)} for samples split into a
+     * raw head (with the record before {@code start}), contiguous rollups and a raw tail. Rollups must cover whole
+     * hours or days inside the period, and every schedule day they touch must have {@code startTime <= endTime}.
+     */
+    public static EquipmentStatisticsDto calculate(
+            EquipmentDataBuffer head,
+            List<EquipmentRollup> rollups,
+            EquipmentDataBuffer tail,
+            Map<OffsetDateTime, Schedule> dateToSchedule,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData
+    ) {
+        return calculate(
+                calculateDays(head, rollups, tail, dateToSchedule, start, end, includeData, false),
+                start,
+                end
+        );
+    }
 
-        var upDuration = Duration.ZERO;
-        var upScheduleDuration = Duration.ZERO;
-        var downScheduleDuration = Duration.ZERO;
-
-        var equipmentDataDtoList = new ArrayList<EquipmentDataDto>();
-
-        for (var schedule : dateToSchedule.entrySet()) {
-            var scheduleStart = getDateTimeWithMinute(schedule.getKey(), schedule.getValue().getStartTime());
-            var scheduleEnd = getDateTimeWithMinute(schedule.getKey(), schedule.getValue().getEndTime());
-
-            var currentDateData = equipmentDataList.stream()
-                    .filter(x -> x.getTime().truncatedTo(ChronoUnit.DAYS).equals(schedule.getKey().truncatedTo(ChronoUnit.DAYS)))
-                    .toList();
-
-            if (currentDateData.size() == 0) {
-                var periodStart = scheduleStart.isAfter(start) ? scheduleStart : start;
-                var periodEnd = scheduleEnd.isBefore(end) ? scheduleEnd : end;
-                downScheduleDuration = downScheduleDuration.plus(Duration.between(periodStart, periodEnd));
-            } else {
-                for (var metric : currentDateData) {
-                    if (metric.isReal() && !metric.getTime().isBefore(start)) {
-                        EquipmentDataDto equipmentDataDto = getEquipmentDataDto(schedule.getValue(), metric);
-                        equipmentDataDtoList.add(equipmentDataDto);
-                    }
-
-                    var metricStart = metric.getTime();
-                    var metricEnd = metric.getTime().plus(metric.getDuration());
-
-                    var periodStart = metricStart.isAfter(start) ? metricStart : start;
-                    var periodEnd = metricEnd.isBefore(end) ? metricEnd : end;
-
-                    if (metric.getEnabled()) {
-                        upDuration = upDuration.plus(Duration.between(periodStart, periodEnd));
-                    }
-
-                    // Check if there is an overlap between the schedule and metric times
-                    if (metricStart.isBefore(scheduleEnd) && metricEnd.isAfter(scheduleStart)) {
-                        var overlapStart = scheduleStart.isAfter(periodStart) ? scheduleStart : periodStart;
-                        var overlapEnd = scheduleEnd.isBefore(periodEnd) ? scheduleEnd : periodEnd;
-                        var overlapDuration = Duration.between(overlapStart, overlapEnd);
-
-                        if (metric.getEnabled()) {
-                            upScheduleDuration = upScheduleDuration.plus(overlapDuration);
-                        } else {
-                            downScheduleDuration = downScheduleDuration.plus(overlapDuration);
-                        }
-                    }
-                }
+    /**
+     * The same sweep split into the parts of every schedule day. The part of a day that lies inside the period does not
+     * depend on where the period starts or ends, as long as some sample precedes the end of the day: it is decided by
+     * the last sample before the day, the samples of the day and its schedule. {@code followedByData} tells that the
+     * period is a piece of a longer one with samples after it, so without samples it is disabled rather than empty.
+     */
+    public static List<EquipmentDayStatistics> calculateDays(
+            EquipmentDataBuffer equipmentData,
+            Map<OffsetDateTime, Schedule> dateToSchedule,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean followedByData
+    ) {
+        return calculateDays(equipmentData, List.of(), EMPTY, dateToSchedule, start, end, includeData, followedByData);
+    }
+
+    /**
+     * Statistics of a period from the parts of its days, see {@link #calculateDays}.
+     */
+    public static EquipmentStatisticsDto calculate(
+            List<EquipmentDayStatistics> days,
+            OffsetDateTime start,
+            OffsetDateTime end
+    ) {
+        long up = 0;
+        long upSchedule = 0;
+        long downSchedule = 0;
+        List<EquipmentDataDto> equipmentDataDtoList = new ArrayList<>();
+        for (var day : days) {
+            up += day.upNanos();
+            upSchedule += day.upScheduleNanos();
+            downSchedule += day.downScheduleNanos();
+            if (day.equipmentData() != null) {
+                equipmentDataDtoList.addAll(day.equipmentData());
             }
         }
 
-        var upMinutes = upDuration.toMinutes();
+        var totalMinutes = Duration.between(start, end).toMinutes();
+
+        var upMinutes = Duration.ofNanos(up).toMinutes();
         var downMinutes = totalMinutes - upMinutes;
-        var upScheduleMinutes = upScheduleDuration.toMinutes();
+        var upScheduleMinutes = Duration.ofNanos(upSchedule).toMinutes();
         var upNotScheduleMinutes = upMinutes - upScheduleMinutes;
-        var downScheduleMinutes = downScheduleDuration.toMinutes();
+        var downScheduleMinutes = Duration.ofNanos(downSchedule).toMinutes();
         var downNotScheduleMinutes = downMinutes - downScheduleMinutes;
 
         double upSchedulePercent;
-        if (upScheduleMinutes + downScheduleMinutes == 0)      {
+        if (upScheduleMinutes + downScheduleMinutes == 0) {
             upSchedulePercent = 100;
         } else {
             upSchedulePercent = (100.0 * upScheduleMinutes) / (upScheduleMinutes + downScheduleMinutes);
         }
 
-        equipmentDataDtoList.sort((x, y) -> x.getTime().compareTo(y.getTime()));
         return EquipmentStatisticsDto.builder()
                 .equipmentData(equipmentDataDtoList)
                 .upMinutes(upMinutes)
@@ -102,55 +129,59 @@ public class StatisticsCalculator {
                 .build();
     }
 
-    private static void fillDurations(ArrayList<EquipmentData> equipmentDataList, OffsetDateTime start, OffsetDateTime end) {
-        if (equipmentDataList.size() == 0) {
-            return;
-        }
-
-        if (equipmentDataList.get(0).getTime().isAfter(start)) {
-            equipmentDataList.add(0, EquipmentData.builder().enabled(false).isReal(false).time(start).build());
-        }
+    private static List<EquipmentDayStatistics> calculateDays(
+            EquipmentDataBuffer head,
+            List<EquipmentRollup> rollups,
+            EquipmentDataBuffer tail,
+            Map<OffsetDateTime, Schedule> dateToSchedule,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean includeData,
+            boolean followedByData
+    ) {
+        var sweep = new Sweep(getScheduleDays(dateToSchedule), start, end, includeData);
 
-        if (equipmentDataList.get(equipmentDataList.size() - 1).getTime().isBefore(end)) {
-            equipmentDataList.add(
-                    EquipmentData.builder()
-                            .enabled(equipmentDataList.get(equipmentDataList.size() - 1).getEnabled())
-                            .isReal(false)
-                            .time(end)
-                            .build()
-            );
-        }
+        boolean hasData = followedByData || !head.isEmpty() || !tail.isEmpty()
+                || rollups.stream().anyMatch(rollup -> rollup.getSampleCount() > 0);
+        if (hasData) {
+            long startNanos = toNanos(start);
+            long endNanos = toNanos(end);
 
-        var copy = new ArrayList<>(equipmentDataList);
-        int j = 0;
-        for (int i = 0; i < copy.size() - 1; i++) {
-            j++;
-            var dto = copy.get(i);
-
-            var metricStart = dto.getTime();
-            var metricEnd = dto.getTime().plus(Duration.between(dto.getTime(), copy.get(i + 1).getTime()));
-
-            final OffsetDateTime metricStartDays = metricStart.truncatedTo(ChronoUnit.DAYS);
-            final OffsetDateTime metricEndDays = metricEnd.truncatedTo(ChronoUnit.DAYS);
-            if (!metricStartDays.equals(metricEndDays)) {
-                for (var date = metricStartDays; date.isBefore(metricEndDays); date = date.plusDays(1)) {
-                    equipmentDataList.add(
-                            j,
-                            EquipmentData.builder()
-                                    .enabled(dto.getEnabled())
-                                    .isReal(false)
-                                    .time(date.plusDays(1).withHour(0).withMinute(0).withSecond(0).withNano(0))
-                                    .build()
-                    );
-                    j++;
-                }
+            if (head.isEmpty() || head.getTime(0) * NANOS_PER_SECOND > startNanos) {
+                sweep.add(startNanos, false, null, NO_SAMPLE);
+            }
+            sweep.addAll(head);
+            for (var rollup : rollups) {
+                sweep.add(rollup);
+            }
+            sweep.addAll(tail);
+            if (sweep.pendingTime < endNanos) {
+                sweep.add(endNanos, sweep.pendingEnabled, null, NO_SAMPLE);
             }
         }
+        sweep.finish();
+        return sweep.getDays();
+    }
 
-        for (int i = 0; i < equipmentDataList.size() - 1; i++) {
-            equipmentDataList.get(i).setDuration(Duration.between(equipmentDataList.get(i).getTime(), equipmentDataList.get(i + 1).getTime()));
+    private static ScheduleDay[] getScheduleDays(Map<OffsetDateTime, Schedule> dateToSchedule) {
+        var result = new ScheduleDay[dateToSchedule.size()];
+        int i = 0;
+        for (var entry : dateToSchedule.entrySet()) {
+            var schedule = entry.getValue();
+            result[i++] = new ScheduleDay(
+                    entry.getKey(),
+                    entry.getKey().toLocalDate().toEpochDay(),
+                    toNanos(getDateTimeWithMinute(entry.getKey(), schedule.getStartTime())),
+                    toNanos(getDateTimeWithMinute(entry.getKey(), schedule.getEndTime())),
+                    schedule
+            );
         }
-        equipmentDataList.get(equipmentDataList.size() - 1).setDuration(Duration.ZERO);
+        Arrays.sort(result, Comparator.comparingLong(ScheduleDay::day));
+        return result;
+    }
+
+    private static long toNanos(OffsetDateTime dateTime) {
+        return dateTime.toEpochSecond() * NANOS_PER_SECOND + dateTime.getNano();
     }
 
     @org.jetbrains.annotations.NotNull
@@ -158,11 +189,18 @@ public class StatisticsCalculator {
         return date.withHour(time / 60).withMinute(time % 60);
     }
 
-    private static EquipmentDataDto getEquipmentDataDto(Schedule schedule, EquipmentData equipmentData) {
-        final OffsetDateTime dataTime = equipmentData.getTime();
-        final Boolean enabled = equipmentData.getEnabled();
+    private static EquipmentDataDto getEquipmentDataDto(
+            Schedule schedule,
+            EquipmentDataBuffer equipmentData,
+            int index,
+            ZoneOffset zoneOffset
+    ) {
+        final OffsetDateTime dataTime = LocalDateTime
+                .ofEpochSecond(equipmentData.getTime(index), 0, zoneOffset)
+                .atOffset(zoneOffset);
+        final boolean enabled = equipmentData.isEnabled(index);
         EquipmentDataDto result = EquipmentDataDto.builder()
-                .u(equipmentData.getU())
+                .u(equipmentData.getU(index))
                 .enabled(enabled)
                 .equipmentId(equipmentData.getEquipmentId())
                 .time(dataTime)
@@ -179,4 +217,177 @@ public class StatisticsCalculator {
 
         return result;
     }
+
+    private record ScheduleDay(OffsetDateTime date, long day, long start, long end, Schedule schedule) {
+    }
+
+    private static final class Sweep {
+
+        private final ScheduleDay[] days;
+        private final long start;
+        private final long end;
+        private final ZoneOffset zoneOffset;
+        private final long offsetSeconds;
+        private final boolean includeData;
+
+        private final List<EquipmentDataDto> equipmentDataDtoList = new ArrayList<>();
+        private final long[] up;
+        private final long[] upSchedule;
+        private final long[] downSchedule;
+        private final int[] equipmentDataEnd;
+
+        private int dayIndex;
+        private boolean dayHasData;
+
+        private boolean hasPending;
+        private long pendingTime;
+        private boolean pendingEnabled;
+        private EquipmentDataBuffer pendingData;
+        private int pendingSample;
+
+        private Sweep(ScheduleDay[] days, OffsetDateTime start, OffsetDateTime end, boolean includeData) {
+            this.days = days;
+            this.start = toNanos(start);
+            this.end = toNanos(end);
+            this.zoneOffset = start.getOffset();
+            this.offsetSeconds = zoneOffset.getTotalSeconds();
+            this.includeData = includeData;
+            this.up = new long[days.length];
+            this.upSchedule = new long[days.length];
+            this.downSchedule = new long[days.length];
+            this.equipmentDataEnd = new int[days.length];
+        }
+
+        private void addAll(EquipmentDataBuffer equipmentData) {
+            for (int i = 0; i < equipmentData.size(); i++) {
+                add(
+                        equipmentData.getTime(i) * NANOS_PER_SECOND,
+                        equipmentData.isEnabled(i),
+                        equipmentData,
+                        equipmentData.isReal(i) ? i : NO_SAMPLE
+                );
+            }
+        }
+
+        private void add(long time, boolean enabled, EquipmentDataBuffer equipmentData, int sample) {
+            if (hasPending) {
+                long segmentStart = pendingTime;
+                int segmentSample = pendingSample;
+                for (long day = epochDay(pendingTime), lastDay = epochDay(time); day < lastDay; day++) {
+                    long midnight = midnight(day + 1);
+                    segment(segmentStart, midnight, pendingEnabled, pendingData, segmentSample);
+                    segmentStart = midnight;
+                    segmentSample = NO_SAMPLE;
+                }
+                segment(segmentStart, time, pendingEnabled, pendingData, segmentSample);
+            }
+            hasPending = true;
+            pendingTime = time;
+            pendingEnabled = enabled;
+            pendingData = equipmentData;
+            pendingSample = sample;
+        }
+
+        private void add(EquipmentRollup rollup) {
+            long bucketStart = toNanos(rollup.getBucketStart());
+            int minutes = rollup.getResolution().getMinutes();
+            add(bucketStart, false, null, NO_SAMPLE);
+            pendingTime = bucketStart + minutes * NANOS_PER_MINUTE;
+            pendingEnabled = rollup.getLastEnabled();
+
+            long day = epochDay(bucketStart);
+            skipDaysBefore(day);
+            if (dayIndex == days.length || days[dayIndex].day() != day) {
+                return;
+            }
+            var schedule = days[dayIndex].schedule();
+            dayHasData = true;
+
+            var enabledMinutes = rollup.getEnabledMinutesBitSet();
+            up[dayIndex] += enabledMinutes.cardinality() * NANOS_PER_MINUTE;
+
+            int firstMinute = (int) ((bucketStart - midnight(day)) / NANOS_PER_MINUTE);
+            int from = Math.max(schedule.getStartTime(), firstMinute) - firstMinute;
+            int to = Math.min(schedule.getEndTime(), firstMinute + minutes) - firstMinute;
+            if (from < to) {
+                int enabledInSchedule = enabledMinutes.get(from, to).cardinality();
+                upSchedule[dayIndex] += enabledInSchedule * NANOS_PER_MINUTE;
+                downSchedule[dayIndex] += (to - from - enabledInSchedule) * NANOS_PER_MINUTE;
+            }
+        }
+
+        private void finish() {
+            if (hasPending) {
+                segment(pendingTime, pendingTime, pendingEnabled, pendingData, pendingSample);
+                hasPending = false;
+            }
+            skipDaysBefore(Long.MAX_VALUE);
+        }
+
+        private void segment(long segmentStart, long segmentEnd, boolean enabled, EquipmentDataBuffer equipmentData, int sample) {
+            long day = epochDay(segmentStart);
+            skipDaysBefore(day);
+            if (dayIndex == days.length || days[dayIndex].day() != day) {
+                return;
+            }
+            var scheduleDay = days[dayIndex];
+            dayHasData = true;
+
+            if (includeData && sample != NO_SAMPLE && segmentStart >= start) {
+                equipmentDataDtoList.add(getEquipmentDataDto(scheduleDay.schedule(), equipmentData, sample, zoneOffset));
+            }
+
+            long periodStart = Math.max(segmentStart, start);
+            long periodEnd = Math.min(segmentEnd, end);
+
+            if (enabled) {
+                up[dayIndex] += periodEnd - periodStart;
+            }
+
+            if (segmentStart < scheduleDay.end() && segmentEnd > scheduleDay.start()) {
+                long overlap = Math.min(scheduleDay.end(), periodEnd) - Math.max(scheduleDay.start(), periodStart);
+                if (enabled) {
+                    upSchedule[dayIndex] += overlap;
+                } else {
+                    downSchedule[dayIndex] += overlap;
+                }
+            }
+        }
+
+        private void skipDaysBefore(long day) {
+            while (dayIndex < days.length && days[dayIndex].day() < day) {
+                if (!dayHasData) {
+                    var scheduleDay = days[dayIndex];
+                    downSchedule[dayIndex] += Math.min(scheduleDay.end(), end) - Math.max(scheduleDay.start(), start);
+                }
+                equipmentDataEnd[dayIndex] = equipmentDataDtoList.size();
+                dayIndex++;
+                dayHasData = false;
+            }
+        }
+
+        private List<EquipmentDayStatistics> getDays() {
+            List<EquipmentDayStatistics> result = new ArrayList<>(days.length);
+            int from = 0;
+            for (int i = 0; i < days.length; i++) {
+                result.add(new EquipmentDayStatistics(
+                        days[i].date(),
+                        up[i],
+                        upSchedule[i],
+                        downSchedule[i],
+                        includeData ? equipmentDataDtoList.subList(from, equipmentDataEnd[i]) : null
+                ));
+                from = equipmentDataEnd[i];
+            }
+            return result;
+        }
+
+        private long epochDay(long nanos) {
+            return Math.floorDiv(Math.floorDiv(nanos, NANOS_PER_SECOND) + offsetSeconds, SECONDS_PER_DAY);
+        }
+
+        private long midnight(long day) {
+            return (day * SECONDS_PER_DAY - offsetSeconds) * NANOS_PER_SECOND;
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package ru.kpfu.machinemetrics.service;
+
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+
+import java.time.OffsetDateTime;
+
+public interface StatisticsStreamListener {
+
+    void onPeriod(OffsetDateTime start, OffsetDateTime end);
+
+    void onEquipment(Long equipmentId, EquipmentStatisticsDto equipmentStatistics);
+}
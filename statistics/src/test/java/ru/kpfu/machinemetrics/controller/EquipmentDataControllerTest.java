@@ -5,29 +5,41 @@ import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.kpfu.machinemetrics.config.MessageSourceConfig;
 import ru.kpfu.machinemetrics.dto.EquipmentDataDto;
 import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.dto.QueryStrategy;
 import ru.kpfu.machinemetrics.dto.StatisticsDto;
+import ru.kpfu.machinemetrics.exception.EquipmentDataTimeoutException;
+import ru.kpfu.machinemetrics.properties.EquipmentDataProperties;
 import ru.kpfu.machinemetrics.service.EquipmentDataService;
+import ru.kpfu.machinemetrics.service.StatisticsStreamListener;
 
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(EquipmentDataController.class)
 @ImportAutoConfiguration(MessageSourceConfig.class)
+@EnableConfigurationProperties(EquipmentDataProperties.class)
 public class EquipmentDataControllerTest {
 
     @Autowired
@@ -57,14 +69,21 @@ public class EquipmentDataControllerTest {
                 .end(givenStop)
                 .build();
 
-        when(equipmentDataService.getData(eq(List.of(givenId)), eq(givenStart), eq(givenStop))).thenReturn(givenDto);
+        when(equipmentDataService.getDataAsync(
+                eq(List.of(givenId)), eq(givenStart), eq(givenStop), eq(true), eq(QueryStrategy.DEFAULT)
+        )).thenReturn(CompletableFuture.completedFuture(givenDto));
 
-        // expect
-        mockMvc.perform(get("/api/v1/equipment-data")
+        // when
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/equipment-data")
                         .param("ids", givenId.toString())
                         .param("start", givenStart.toString())
                         .param("stop", givenStop.toString())
                 )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.equipmentStatisticsDtos[0].equipmentData.length()").value(2))
@@ -88,4 +107,108 @@ public class EquipmentDataControllerTest {
                     softly.assertAll();
                 });
     }
+
+    @Test
+    public void testListFilteredTimeout() throws Exception {
+        // given
+        Long givenId = 1L;
+
+        when(equipmentDataService.getDataAsync(
+                eq(List.of(givenId)), eq(null), eq(null), eq(true), eq(QueryStrategy.DEFAULT)
+        )).thenReturn(CompletableFuture.failedFuture(new EquipmentDataTimeoutException("timeout")));
+
+        // when
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/equipment-data")
+                        .param("ids", givenId.toString())
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    @Test
+    public void testListFilteredWithPushdownStrategy() throws Exception {
+        // given
+        Long givenId = 1L;
+
+        StatisticsDto givenDto = StatisticsDto.builder()
+                .equipmentStatisticsDtos(List.of(EquipmentStatisticsDto.builder().upMinutes(5L).build()))
+                .build();
+
+        when(equipmentDataService.getDataAsync(
+                eq(List.of(givenId)), eq(null), eq(null), eq(false), eq(QueryStrategy.PUSHDOWN)
+        )).thenReturn(CompletableFuture.completedFuture(givenDto));
+
+        // when
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/equipment-data")
+                        .param("ids", givenId.toString())
+                        .param("includeData", "false")
+                        .param("strategy", "PUSHDOWN")
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.equipmentStatisticsDtos[0].upMinutes").value(5));
+    }
+
+    @Test
+    public void testStreamFiltered() throws Exception {
+        // given
+        Long givenId = 1L;
+        OffsetDateTime givenStart = OffsetDateTime.now().minusSeconds(1_000_000);
+        OffsetDateTime givenStop = OffsetDateTime.now();
+
+        List<EquipmentDataDto> givenList = List.of(
+                EquipmentDataDto.builder().equipmentId(givenId).enabled(true).build(),
+                EquipmentDataDto.builder().equipmentId(givenId).enabled(false).build()
+        );
+
+        doAnswer(invocation -> {
+            StatisticsStreamListener listener = invocation.getArgument(5);
+            listener.onPeriod(givenStart, givenStop);
+            listener.onEquipment(givenId, EquipmentStatisticsDto.builder().upMinutes(5L).equipmentData(givenList).build());
+            return null;
+        }).when(equipmentDataService).streamData(
+                eq(List.of(givenId)),
+                eq(givenStart),
+                eq(givenStop),
+                eq(true),
+                eq(QueryStrategy.DEFAULT),
+                any(StatisticsStreamListener.class)
+        );
+
+        // when
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/equipment-data/stream")
+                        .param("ids", givenId.toString())
+                        .param("start", givenStart.toString())
+                        .param("stop", givenStop.toString())
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andDo(result -> {
+                    String[] lines = result.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n");
+
+                    SoftAssertions softly = new SoftAssertions();
+                    softly.assertThat(lines).hasSize(3);
+                    softly.assertThat(objectMapper.readTree(lines[0]).get("type").asText()).isEqualTo("PERIOD");
+                    softly.assertThat(objectMapper.readTree(lines[1]).get("type").asText()).isEqualTo("EQUIPMENT");
+                    softly.assertThat(objectMapper.readTree(lines[1]).get("equipmentId").asLong()).isEqualTo(givenId);
+                    softly.assertThat(objectMapper.readTree(lines[1]).at("/equipmentStatistics/upMinutes").asLong())
+                            .isEqualTo(5L);
+                    softly.assertThat(objectMapper.readTree(lines[2]).get("type").asText()).isEqualTo("DATA");
+                    softly.assertThat(objectMapper.readTree(lines[2]).get("equipmentData").size()).isEqualTo(2);
+                    softly.assertAll();
+                });
+    }
 }
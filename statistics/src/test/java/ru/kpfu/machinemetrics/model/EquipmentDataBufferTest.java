@@ -0,0 +1,66 @@
+package ru.kpfu.machinemetrics.model;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EquipmentDataBufferTest {
+
+    @Test
+    void testAddFirstKeepsBufferSorted() {
+        // given
+        EquipmentDataBuffer buffer = new EquipmentDataBuffer(2);
+        buffer.add(120, 20d, true, true);
+        buffer.add(180, null, false, false);
+
+        // when
+        buffer.addFirst(60, 10d, false, true);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(times(buffer)).containsExactly(60L, 120L, 180L);
+        softly.assertThat(buffer.getU(0)).isEqualTo(10d);
+        softly.assertThat(buffer.isEnabled(0)).isFalse();
+        softly.assertThat(buffer.getU(1)).isEqualTo(20d);
+        softly.assertThat(buffer.isEnabled(1)).isTrue();
+        softly.assertThat(buffer.getU(2)).isNull();
+        softly.assertThat(buffer.isReal(2)).isFalse();
+        softly.assertAll();
+    }
+
+    @Test
+    void testSortByTimeMovesSamplesTogether() {
+        // given
+        EquipmentDataBuffer buffer = new EquipmentDataBuffer();
+        long[] givenTimes = {300, 60, 240, 60, 0, 180};
+        for (int i = 0; i < givenTimes.length; i++) {
+            buffer.add(givenTimes[i], (double) i, i % 2 == 0, i % 3 == 0);
+        }
+
+        // when
+        buffer.sortByTime();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(times(buffer)).containsExactly(0L, 60L, 60L, 180L, 240L, 300L);
+        List<Double> actualU = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            actualU.add(buffer.getU(i));
+            int given = buffer.getU(i).intValue();
+            softly.assertThat(buffer.isEnabled(i)).isEqualTo(given % 2 == 0);
+            softly.assertThat(buffer.isReal(i)).isEqualTo(given % 3 == 0);
+        }
+        softly.assertThat(actualU).containsExactly(4d, 1d, 3d, 5d, 2d, 0d);
+        softly.assertAll();
+    }
+
+    private static List<Long> times(EquipmentDataBuffer buffer) {
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            result.add(buffer.getTime(i));
+        }
+        return result;
+    }
+}
@@ -1,20 +1,30 @@
 package ru.kpfu.machinemetrics.repository;
 
+import com.influxdb.Cancellable;
 import com.influxdb.client.DeleteApi;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.QueryApi;
 import com.influxdb.client.domain.DeletePredicateRequest;
+import com.influxdb.exceptions.InfluxException;
+import com.influxdb.query.FluxRecord;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.TestPropertySource;
-import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
 import ru.kpfu.machinemetrics.properties.InfluxDbProperties;
 
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
@@ -35,6 +45,9 @@ public class EquipmentDataRepositoryTest {
     @MockBean
     private InfluxDBClient influxDBClientMock;
 
+    @MockBean
+    private EquipmentStateIndex equipmentStateIndexMock;
+
     @Autowired
     private InfluxDbProperties influxDbProperties;
 
@@ -71,12 +84,12 @@ public class EquipmentDataRepositoryTest {
                 .query(any(String.class), any(String.class), any(), any(), any(Runnable.class));
 
         // when
-        List<EquipmentData> result = equipmentDataRepository.getData(givenStart, givenStop, givenId);
+        EquipmentDataBuffer result = equipmentDataRepository.getData(givenStart, givenStop, givenId);
 
         // then
         SoftAssertions softly = new SoftAssertions();
         softly.assertThat(result).isNotNull();
-        softly.assertThat(result).isEmpty();
+        softly.assertThat(result.isEmpty()).isTrue();
         softly.assertAll();
         verify(influxDBClientMock, times(1)).getQueryApi();
         verify(queryApiMock, times(1)).query(
@@ -87,6 +100,233 @@ public class EquipmentDataRepositoryTest {
         );
     }
 
+    @Test
+    void testGetDataPropagatesQueryError() {
+        // given
+        Long givenId = 1L;
+        String givenStart = "2023-03-24T01:00:00Z";
+        String givenStop = "2023-04-24T01:00:00Z";
+        InfluxException givenException = new InfluxException("query failed");
+
+        QueryApi queryApiMock = mock(QueryApi.class);
+        when(influxDBClientMock.getQueryApi()).thenReturn(queryApiMock);
+
+        doAnswer(invocation -> {
+            Consumer<Throwable> onError = invocation.getArgument(3);
+            onError.accept(givenException);
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(any(String.class), any(String.class), any(), any(), any(Runnable.class));
+
+        // expect
+        assertThatThrownBy(() -> equipmentDataRepository.getData(givenStart, givenStop, givenId))
+                .isSameAs(givenException);
+    }
+
+    @Test
+    void testGetAllDataAsyncCancelsQueriesBeforeFirstRecord() {
+        // given
+        List<Long> givenIds = List.of(1L, 2L);
+        String givenStart = "2023-03-24T01:00:00Z";
+        String givenStop = "2023-04-24T01:00:00Z";
+
+        QueryApi queryApiMock = mock(QueryApi.class);
+        when(influxDBClientMock.getQueryApi()).thenReturn(queryApiMock);
+        List<BiConsumer<Cancellable, FluxRecord>> givenOnNext = new ArrayList<>();
+        doAnswer(invocation -> {
+            givenOnNext.add(invocation.getArgument(2));
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(any(String.class), any(String.class), any(), any(), any(Runnable.class));
+        var actual = equipmentDataRepository.getAllDataAsync(givenStart, givenStop, givenIds);
+
+        // when
+        actual.cancel(true);
+        List<Cancellable> givenCancellables = new ArrayList<>();
+        for (var onNext : givenOnNext) {
+            Cancellable givenCancellable = mock(Cancellable.class);
+            givenCancellables.add(givenCancellable);
+            onNext.accept(givenCancellable, fluxRecord("1", "2023-04-01T10:00:00Z", 10d, true));
+        }
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).isCancelled();
+        softly.assertThat(givenOnNext).isNotEmpty();
+        softly.assertAll();
+        for (var givenCancellable : givenCancellables) {
+            verify(givenCancellable).cancel();
+        }
+    }
+
+    @Test
+    void testGetAllData() {
+        // given
+        List<Long> givenIds = List.of(1L, 2L);
+        String givenStart = "2023-03-24T01:00:00Z";
+        String givenStop = "2023-04-24T01:00:00Z";
+
+        String expectedPreviousQuery = "from(bucket: \"bucket\") " +
+                "|> range(start: -inf, stop: time(v: 2023-03-24T01:00:00Z)) " +
+                "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                "|> filter(fn: (r) => contains(value: r[\"equipment_id\"], set: [\"1\", \"2\"]))" +
+                "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")" +
+                "|> last(column: \"_time\")";
+
+        String expectedGetAllQuery = "from(bucket: \"bucket\") " +
+                "|> range(start: time(v: 2023-03-24T01:00:00Z), stop: time(v: 2023-04-24T01:00:00Z)) " +
+                "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                "|> filter(fn: (r) => contains(value: r[\"equipment_id\"], set: [\"1\", \"2\"]))" +
+                "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")";
+
+        QueryApi queryApiMock = mock(QueryApi.class);
+        when(influxDBClientMock.getQueryApi()).thenReturn(queryApiMock);
+
+        doAnswer(invocation -> {
+            BiConsumer<Cancellable, FluxRecord> onNext = invocation.getArgument(2);
+            onNext.accept(mock(Cancellable.class), fluxRecord("2", "2023-04-01T10:00:30Z", 20d, true));
+            onNext.accept(mock(Cancellable.class), fluxRecord("1", "2023-04-01T10:05:00Z", 10d, false));
+            onNext.accept(mock(Cancellable.class), fluxRecord("2", "2023-04-01T09:00:00Z", 15d, false));
+            Runnable runnable = invocation.getArgument(4);
+            runnable.run();
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(eq(expectedGetAllQuery), any(String.class), any(), any(), any(Runnable.class));
+        doAnswer(invocation -> {
+            Runnable runnable = invocation.getArgument(4);
+            runnable.run();
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(eq(expectedPreviousQuery), any(String.class), any(), any(), any(Runnable.class));
+
+        // when
+        Map<Long, EquipmentDataBuffer> result = equipmentDataRepository.getAllData(givenStart, givenStop, givenIds);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(result).containsOnlyKeys(1L, 2L);
+        softly.assertThat(result.get(1L).size()).isEqualTo(1);
+        softly.assertThat(result.get(1L).getU(0)).isEqualTo(10d);
+        softly.assertThat(result.get(1L).isEnabled(0)).isFalse();
+        softly.assertThat(result.get(2L).size()).isEqualTo(2);
+        softly.assertThat(result.get(2L).getTime(0)).isEqualTo(Instant.parse("2023-04-01T09:00:00Z").getEpochSecond());
+        softly.assertThat(result.get(2L).getTime(1)).isEqualTo(Instant.parse("2023-04-01T10:00:00Z").getEpochSecond());
+        softly.assertThat(result.get(2L).getU(1)).isEqualTo(20d);
+        softly.assertAll();
+        verify(influxDBClientMock, times(1)).getQueryApi();
+        verify(queryApiMock, times(1)).query(
+                eq(expectedPreviousQuery), eq("org"), any(), any(), any(Runnable.class)
+        );
+        verify(queryApiMock, times(1)).query(
+                eq(expectedGetAllQuery), eq("org"), any(), any(), any(Runnable.class)
+        );
+    }
+
+    @Test
+    void testGetAllDataWithStateIndex() {
+        // given
+        List<Long> givenIds = List.of(1L, 2L);
+        String givenStart = "2023-03-24T01:00:00Z";
+        String givenStop = "2023-04-24T01:00:00Z";
+        long givenWatermark = toNanos("2023-03-24T00:00:00Z");
+
+        String expectedRecentQuery = "from(bucket: \"bucket\") " +
+                "|> range(start: time(v: 2023-03-24T00:00:00Z), stop: time(v: 2023-03-24T01:00:00Z)) " +
+                "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                "|> filter(fn: (r) => contains(value: r[\"equipment_id\"], set: [\"1\", \"2\"]))" +
+                "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")" +
+                "|> last(column: \"_time\")";
+
+        String expectedDayQuery = "from(bucket: \"bucket\") " +
+                "|> range(start: time(v: 2023-03-23T00:10:00Z), stop: time(v: 2023-03-24T00:00:00Z)) " +
+                "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                "|> filter(fn: (r) => r[\"equipment_id\"] == \"2\")" +
+                "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")" +
+                "|> last(column: \"_time\")";
+
+        String expectedGetAllQuery = "from(bucket: \"bucket\") " +
+                "|> range(start: time(v: 2023-03-24T01:00:00Z), stop: time(v: 2023-04-24T01:00:00Z)) " +
+                "|> filter(fn: (r) => r[\"_measurement\"] == \"equipment_statistics\")" +
+                "|> filter(fn: (r) => contains(value: r[\"equipment_id\"], set: [\"1\", \"2\"]))" +
+                "|> pivot(rowKey:[\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")";
+
+        when(equipmentStateIndexMock.isLoaded()).thenReturn(true);
+        when(equipmentStateIndexMock.getWatermark()).thenReturn(givenWatermark);
+        when(equipmentStateIndexMock.findLastDayBefore(1L, givenWatermark)).thenReturn(new EquipmentStateIndex.Day(
+                toNanos("2023-03-20T08:00:00Z"), toNanos("2023-03-20T18:00:00Z"), true, 5d
+        ));
+        when(equipmentStateIndexMock.findLastDayBefore(2L, givenWatermark)).thenReturn(new EquipmentStateIndex.Day(
+                toNanos("2023-03-23T00:10:00Z"), toNanos("2023-03-24T00:30:00Z"), true, 7d
+        ));
+
+        QueryApi queryApiMock = mock(QueryApi.class);
+        when(influxDBClientMock.getQueryApi()).thenReturn(queryApiMock);
+
+        doAnswer(invocation -> {
+            BiConsumer<Cancellable, FluxRecord> onNext = invocation.getArgument(2);
+            onNext.accept(mock(Cancellable.class), fluxRecord("1", "2023-03-24T00:20:00Z", 12d, false));
+            Runnable runnable = invocation.getArgument(4);
+            runnable.run();
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(eq(expectedRecentQuery), any(String.class), any(), any(), any(Runnable.class));
+        doAnswer(invocation -> {
+            BiConsumer<Cancellable, FluxRecord> onNext = invocation.getArgument(2);
+            onNext.accept(mock(Cancellable.class), fluxRecord("2", "2023-03-23T23:00:00Z", 9d, true));
+            Runnable runnable = invocation.getArgument(4);
+            runnable.run();
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(eq(expectedDayQuery), any(String.class), any(), any(), any(Runnable.class));
+        doAnswer(invocation -> {
+            Runnable runnable = invocation.getArgument(4);
+            runnable.run();
+
+            return null;
+        })
+                .when(queryApiMock)
+                .query(eq(expectedGetAllQuery), any(String.class), any(), any(), any(Runnable.class));
+
+        // when
+        Map<Long, EquipmentDataBuffer> result = equipmentDataRepository.getAllData(givenStart, givenStop, givenIds);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(result.get(1L).size()).isEqualTo(1);
+        softly.assertThat(result.get(1L).getU(0)).isEqualTo(12d);
+        softly.assertThat(result.get(1L).isEnabled(0)).isFalse();
+        softly.assertThat(result.get(2L).size()).isEqualTo(1);
+        softly.assertThat(result.get(2L).getTime(0)).isEqualTo(Instant.parse("2023-03-23T23:00:00Z").getEpochSecond());
+        softly.assertThat(result.get(2L).getU(0)).isEqualTo(9d);
+        softly.assertAll();
+        verify(queryApiMock, times(3)).query(any(String.class), eq("org"), any(), any(), any(Runnable.class));
+    }
+
+    private static long toNanos(String time) {
+        return Instant.parse(time).getEpochSecond() * 1_000_000_000L;
+    }
+
+    private static FluxRecord fluxRecord(String equipmentId, String time, Double u, Boolean enabled) {
+        FluxRecord fluxRecord = new FluxRecord(0);
+        fluxRecord.getValues().put("_time", Instant.parse(time));
+        fluxRecord.getValues().put("equipment_id", equipmentId);
+        fluxRecord.getValues().put("u", u);
+        fluxRecord.getValues().put("enabled", enabled);
+        return fluxRecord;
+    }
+
     @Test
     void testDeleteByEquipmentId() {
         // given
@@ -113,4 +353,25 @@ public class EquipmentDataRepositoryTest {
                 eq("org")
         );
     }
+
+    @Test
+    void testDeleteInPeriodExcludesStop() {
+        // given
+        Long givenId = 1L;
+        DeleteApi deleteApiMock = mock(DeleteApi.class);
+        when(influxDBClientMock.getDeleteApi()).thenReturn(deleteApiMock);
+
+        // when
+        equipmentDataRepository.delete(givenId, "2023-03-01T00:00:00Z", "2023-03-08T00:00:00Z");
+
+        // then
+        verify(deleteApiMock, times(1)).delete(
+                argThat(arg -> arg != null
+                        && arg.getPredicate().equals("equipment_id=\"1\"")
+                        && arg.getStart().isEqual(OffsetDateTime.parse("2023-03-01T00:00:00Z"))
+                        && arg.getStop().isEqual(OffsetDateTime.parse("2023-03-07T23:59:59.999999999Z"))),
+                eq("bucket"),
+                eq("org")
+        );
+    }
 }
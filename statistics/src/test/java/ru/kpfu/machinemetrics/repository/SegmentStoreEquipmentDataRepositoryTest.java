@@ -0,0 +1,85 @@
+package ru.kpfu.machinemetrics.repository;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import ru.kpfu.machinemetrics.segment.SegmentStore;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.yml", properties = "app.storage.engine=embedded")
+public class SegmentStoreEquipmentDataRepositoryTest {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    @TempDir
+    private static Path directory;
+
+    @Autowired
+    private EquipmentDataRepository equipmentDataRepository;
+
+    @Autowired
+    private SegmentStore segmentStore;
+
+    @DynamicPropertySource
+    static void storageProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.storage.path", () -> directory.toString());
+    }
+
+    @Test
+    void testGetDataAddsPreviousRecord() {
+        // given
+        Long givenId = 1L;
+        segmentStore.append(givenId, toNanos("2023-03-20T10:00:30Z"), 10d, true);
+        segmentStore.append(givenId, toNanos("2023-03-24T01:30:45Z"), 20d, false);
+        segmentStore.append(givenId, toNanos("2023-03-24T02:00:00Z"), Double.NaN, true);
+        segmentStore.append(givenId, toNanos("2023-03-24T03:00:00Z"), 40d, true);
+
+        // when
+        var actual = equipmentDataRepository.getData("2023-03-24T01:00:00Z", "2023-03-24T03:00:00Z", givenId);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual.getEquipmentId()).isEqualTo(givenId);
+        softly.assertThat(actual.size()).isEqualTo(3);
+        softly.assertThat(actual.getTime(0)).isEqualTo(Instant.parse("2023-03-20T10:00:00Z").getEpochSecond());
+        softly.assertThat(actual.getU(0)).isEqualTo(10d);
+        softly.assertThat(actual.isEnabled(0)).isTrue();
+        softly.assertThat(actual.getTime(1)).isEqualTo(Instant.parse("2023-03-24T01:30:00Z").getEpochSecond());
+        softly.assertThat(actual.getU(1)).isEqualTo(20d);
+        softly.assertThat(actual.isEnabled(1)).isFalse();
+        softly.assertThat(actual.getU(2)).isNull();
+        softly.assertThat(actual.isEnabled(2)).isTrue();
+        softly.assertThat(equipmentDataRepository.getEquipmentIds()).contains(givenId);
+        softly.assertAll();
+    }
+
+    @Test
+    void testDelete() {
+        // given
+        Long givenId = 2L;
+        segmentStore.append(givenId, toNanos("2023-03-24T01:30:00Z"), 20d, false);
+
+        // when
+        equipmentDataRepository.delete(givenId);
+
+        // then
+        var actual = equipmentDataRepository.getData("2023-03-25T00:00:00Z", "2023-03-26T00:00:00Z", givenId);
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual.isEmpty()).isTrue();
+        softly.assertThat(equipmentDataRepository.getEquipmentIds()).doesNotContain(givenId);
+        softly.assertAll();
+    }
+
+    private static long toNanos(String dateTime) {
+        Instant instant = Instant.parse(dateTime);
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+}
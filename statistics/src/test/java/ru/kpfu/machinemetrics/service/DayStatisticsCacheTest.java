@@ -0,0 +1,128 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+import ru.kpfu.machinemetrics.repository.ScheduleRepository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.yml", properties = "app.day-cache.enabled=true")
+public class DayStatisticsCacheTest {
+
+    private static final OffsetDateTime GIVEN_START = OffsetDateTime.parse("2023-03-20T06:00:00+03:00");
+    private static final OffsetDateTime GIVEN_STOP = OffsetDateTime.parse("2023-03-23T12:00:00+03:00");
+
+    @Autowired
+    private EquipmentDataService equipmentDataService;
+
+    @Autowired
+    private DayStatisticsCache dayStatisticsCache;
+
+    @Autowired
+    private ScheduleResolver scheduleResolver;
+
+    @MockBean
+    private EquipmentDataRepository equipmentDataRepositoryMock;
+
+    @MockBean
+    private ScheduleRepository scheduleRepositoryMock;
+
+    @MockBean
+    private EquipmentRollupRepository equipmentRollupRepositoryMock;
+
+    @BeforeEach
+    void setUp() {
+        when(scheduleRepositoryMock.findAll()).thenReturn(List.of(
+                Schedule.builder().id(1L).startTime(10 * 60).endTime(18 * 60).build()
+        ));
+        scheduleResolver.invalidate();
+        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
+                .thenAnswer(invocation -> getData(
+                        OffsetDateTime.parse(invocation.getArgument(0)),
+                        OffsetDateTime.parse(invocation.getArgument(1)),
+                        invocation.getArgument(2)
+                ));
+    }
+
+    @Test
+    void testGetDataReusesCachedDays() {
+        // given
+        Long givenId = 1L;
+
+        // when
+        var actualFirst = getStatistics(givenId);
+        var actualSecond = getStatistics(givenId);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        for (var actual : List.of(actualFirst, actualSecond)) {
+            softly.assertThat(actual.getUpMinutes()).isEqualTo(30 * 60);
+            softly.assertThat(actual.getDownMinutes()).isEqualTo(48 * 60);
+            softly.assertThat(actual.getUpScheduleMinutes()).isEqualTo(10 * 60);
+            softly.assertThat(actual.getDownScheduleMinutes()).isEqualTo(16 * 60);
+            softly.assertThat(actual.getSchedules()).hasSize(4);
+        }
+        softly.assertAll();
+        // the whole period once, then only the partial days at its edges
+        verify(equipmentDataRepositoryMock, Mockito.times(3)).getData(any(), any(), any());
+    }
+
+    @Test
+    void testInvalidateDropsCachedDays() {
+        // given
+        Long givenId = 2L;
+        getStatistics(givenId);
+
+        // when
+        dayStatisticsCache.invalidate(null);
+        var actual = getStatistics(givenId);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual.getUpMinutes()).isEqualTo(30 * 60);
+        softly.assertThat(actual.getUpScheduleMinutes()).isEqualTo(10 * 60);
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(2)).getData(any(), any(), any());
+    }
+
+    private EquipmentStatisticsDto getStatistics(Long equipmentId) {
+        return equipmentDataService.getDataAsync(List.of(equipmentId), GIVEN_START, GIVEN_STOP, false).join()
+                .getEquipmentStatisticsDtos()
+                .get(0);
+    }
+
+    /**
+     * The record before the period and the records inside it, like the repository returns them.
+     */
+    private static EquipmentDataBuffer getData(OffsetDateTime start, OffsetDateTime stop, Long equipmentId) {
+        var enabledSince = OffsetDateTime.parse("2023-03-19T12:00:00+03:00");
+        var disabledSince = OffsetDateTime.parse("2023-03-21T12:00:00+03:00");
+
+        EquipmentDataBuffer result = new EquipmentDataBuffer();
+        result.setEquipmentId(equipmentId);
+        if (!disabledSince.isBefore(start)) {
+            result.add(enabledSince.toEpochSecond(), 20d, true, true);
+        }
+        if (disabledSince.isBefore(stop)) {
+            result.add(disabledSince.toEpochSecond(), 10d, false, true);
+        }
+        return result;
+    }
+}
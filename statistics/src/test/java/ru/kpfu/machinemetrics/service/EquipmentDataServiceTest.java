@@ -9,20 +9,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.TestPropertySource;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.dto.QueryStrategy;
 import ru.kpfu.machinemetrics.dto.StatisticsDto;
 import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
 import ru.kpfu.machinemetrics.model.Schedule;
 import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
 import ru.kpfu.machinemetrics.repository.ScheduleRepository;
 
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +46,17 @@ public class EquipmentDataServiceTest {
     @MockBean
     private ScheduleRepository scheduleRepositoryMock;
 
+    @MockBean
+    private EquipmentRollupRepository equipmentRollupRepositoryMock;
+
+    @MockBean
+    private EquipmentPurgeService equipmentPurgeServiceMock;
+
+    @Autowired
+    private ScheduleResolver scheduleResolver;
+
+    private final List<Schedule> givenSchedules = new ArrayList<>();
+
     // начало, конец пересекаются с графиком
     @Test
     void testGetData1() {
@@ -65,12 +83,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -105,7 +123,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -142,15 +160,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                eq(givenId)
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, givenId, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -185,7 +200,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // 0 записей
@@ -199,14 +214,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>();
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
         mockOnDate(givenId, givenStart.plusDays(2));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -231,7 +246,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).hasSize(0);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // начало и конец вне графика
@@ -269,15 +284,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                eq(givenStart.truncatedTo(ChronoUnit.DAYS)),
-                isNull()
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(null, givenStart.truncatedTo(ChronoUnit.DAYS), null, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -312,7 +324,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -349,15 +361,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, null, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -392,7 +401,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // начало и конец внутри графика
@@ -429,15 +438,12 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                isNull(),
-                isNull()
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(null, null, null, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -472,7 +478,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -509,15 +515,12 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                eq(givenStart.truncatedTo(ChronoUnit.DAYS)),
-                isNull()
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(null, givenStart.truncatedTo(ChronoUnit.DAYS), null, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -552,7 +555,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // первый день пустой
@@ -581,12 +584,9 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStart.truncatedTo(ChronoUnit.DAYS))
@@ -595,10 +595,7 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         ));
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStop.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        mockSchedules(givenStop.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStop.truncatedTo(ChronoUnit.DAYS))
@@ -609,7 +606,7 @@ public class EquipmentDataServiceTest {
         ));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -645,7 +642,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -673,12 +670,9 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStart.truncatedTo(ChronoUnit.DAYS))
@@ -687,10 +681,7 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         ));
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStop.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        mockSchedules(givenStop.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStop.truncatedTo(ChronoUnit.DAYS))
@@ -701,7 +692,7 @@ public class EquipmentDataServiceTest {
         ));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -737,7 +728,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // второй день пустой
@@ -766,12 +757,9 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStart.truncatedTo(ChronoUnit.DAYS))
@@ -780,10 +768,7 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         ));
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStop.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        mockSchedules(givenStop.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStop.truncatedTo(ChronoUnit.DAYS))
@@ -794,7 +779,7 @@ public class EquipmentDataServiceTest {
         ));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -830,7 +815,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -858,12 +843,9 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStart.truncatedTo(ChronoUnit.DAYS))
@@ -872,10 +854,7 @@ public class EquipmentDataServiceTest {
                         .endTime(20 * 60)
                         .build()
         ));
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStop.getDayOfWeek().getValue()),
-                isNull()
-        )).thenReturn(List.of(
+        mockSchedules(givenStop.getDayOfWeek().getValue(), null, null, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStop.truncatedTo(ChronoUnit.DAYS))
@@ -886,7 +865,7 @@ public class EquipmentDataServiceTest {
         ));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -922,7 +901,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // начало и конец внутри периода
@@ -951,12 +930,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -991,7 +970,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1028,15 +1007,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                eq(givenId)
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, givenId, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1071,7 +1047,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // 2 дня
@@ -1100,13 +1076,13 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStop);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1142,7 +1118,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1170,12 +1146,9 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                eq(givenId)
-        )).thenReturn(List.of(
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, givenId, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStart.truncatedTo(ChronoUnit.DAYS))
@@ -1184,10 +1157,7 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         ));
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStop.getDayOfWeek().getValue()),
-                eq(givenId)
-        )).thenReturn(List.of(
+        mockSchedules(givenStop.getDayOfWeek().getValue(), null, givenId, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(givenStop.truncatedTo(ChronoUnit.DAYS))
@@ -1198,7 +1168,7 @@ public class EquipmentDataServiceTest {
         ));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1234,7 +1204,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // начало вне периода
@@ -1270,12 +1240,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2, equipment3));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1310,7 +1280,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1345,12 +1315,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2, equipment3));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1385,7 +1355,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1429,15 +1399,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByWeekdayAndEquipmentId(
-                eq(givenStart.getDayOfWeek().getValue()),
-                eq(givenId)
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(givenStart.getDayOfWeek().getValue(), null, givenId, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1472,7 +1439,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1515,15 +1482,12 @@ public class EquipmentDataServiceTest {
                         .endTime(18 * 60)
                         .build()
         );
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
-        when(scheduleRepositoryMock.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                isNull(),
-                eq(givenId)
-        )).thenReturn(scheduleList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
+        mockSchedules(null, null, givenId, scheduleList);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1558,7 +1522,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // есть только начало вне периода
@@ -1580,12 +1544,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1608,7 +1572,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).hasSize(0);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -1629,12 +1593,12 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1657,7 +1621,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).hasSize(0);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // on - off on
@@ -1693,14 +1657,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2, equipment3));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, equipment1.getTime());
         mockOnDate(givenId, equipment2.getTime());
         mockOnDate(givenId, equipment3.getTime());
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1743,7 +1707,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(2).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
 
@@ -1780,14 +1744,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2, equipment3));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, equipment1.getTime());
         mockOnDate(givenId, equipment2.getTime());
         mockOnDate(givenId, equipment3.getTime());
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1830,7 +1794,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(2).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // on empty ...
@@ -1859,8 +1823,8 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, equipment1.getTime());
         mockOnDate(givenId, equipment1.getTime().plusDays(1));
         mockOnDate(givenId, equipment1.getTime().plusDays(2));
@@ -1868,7 +1832,7 @@ public class EquipmentDataServiceTest {
         mockOnDate(givenId, equipment1.getTime().plusDays(4));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1907,7 +1871,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // off empty ...
@@ -1936,8 +1900,8 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, equipment1.getTime());
         mockOnDate(givenId, equipment1.getTime().plusDays(1));
         mockOnDate(givenId, equipment1.getTime().plusDays(2));
@@ -1945,7 +1909,7 @@ public class EquipmentDataServiceTest {
         mockOnDate(givenId, equipment1.getTime().plusDays(4));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -1984,7 +1948,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // empty ... on
@@ -2013,14 +1977,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
         mockOnDate(givenId, givenStart.plusDays(2));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -2057,7 +2021,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -2085,14 +2049,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
         mockOnDate(givenId, givenStart.plusDays(2));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -2129,7 +2093,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // on ... empty
@@ -2158,14 +2122,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
         mockOnDate(givenId, givenStart.plusDays(2));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -2202,7 +2166,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(false);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     @Test
@@ -2230,14 +2194,14 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(equipment1, equipment2));
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
         mockOnDate(givenId, givenStart.plusDays(2));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -2274,7 +2238,7 @@ public class EquipmentDataServiceTest {
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData().get(1).getEnabledDuringPassiveTime()).isEqualTo(true);
         softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
-                .getData(any(), any(), any());
+                .getDataAsync(any(), any(), any());
     }
 
     // 0 записей за 2 дня
@@ -2288,13 +2252,13 @@ public class EquipmentDataServiceTest {
 
         ArrayList<EquipmentData> givenList = new ArrayList<>();
 
-        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
-                .thenReturn(givenList);
+        when(equipmentDataRepositoryMock.getDataAsync(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(CompletableFuture.completedFuture(toBuffer(givenList)));
         mockOnDate(givenId, givenStart);
         mockOnDate(givenId, givenStart.plusDays(1));
 
         // when
-        StatisticsDto actualDto = equipmentDataService.getData(List.of(givenId), givenStart, givenStop);
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
 
         // expect
         SoftAssertions softly = new SoftAssertions();
@@ -2317,15 +2281,320 @@ public class EquipmentDataServiceTest {
 
         softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).hasSize(0);
         softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(1))
+                .getDataAsync(any(), any(), any());
+    }
+
+    private static EquipmentDataBuffer toBuffer(List<EquipmentData> equipmentDataList) {
+        EquipmentDataBuffer result = new EquipmentDataBuffer();
+        for (var equipmentData : equipmentDataList) {
+            result.setEquipmentId(equipmentData.getEquipmentId());
+            result.add(
+                    equipmentData.getTime().toEpochSecond(),
+                    equipmentData.getU(),
+                    equipmentData.getEnabled(),
+                    equipmentData.isReal()
+            );
+        }
+        return result;
+    }
+
+    @Test
+    void testGetDataWithoutEquipmentDataFallsBackToRawData() {
+        // given
+        Long givenId = 1L;
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(30).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(
+                EquipmentData.builder()
+                        .equipmentId(givenId)
+                        .u(30d)
+                        .time(givenStart)
+                        .enabled(true)
+                        .isReal(true)
+                        .build()
+        ));
+
+        when(equipmentDataRepositoryMock.getData(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(toBuffer(givenList));
+        when(equipmentRollupRepositoryMock
+                .findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        any(), any(), any(), any()
+                ))
+                .thenReturn(List.of());
+        mockOnDate(givenId, givenStart);
+
+        // when
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, false).join();
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getUpMinutes()).isEqualTo((long) (3.5 * 60));
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getUpScheduleMinutes()).isEqualTo((long) (1.5 * 60));
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).isEmpty();
+        softly.assertAll();
         verify(equipmentDataRepositoryMock, Mockito.times(1))
                 .getData(any(), any(), any());
     }
 
+    @Test
+    void testGetDataWithPushdownReadsStateChanges() {
+        // given
+        Long givenId = 1L;
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(30).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        ArrayList<EquipmentData> givenList = new ArrayList<>(List.of(
+                EquipmentData.builder()
+                        .equipmentId(givenId)
+                        .time(givenStart)
+                        .enabled(true)
+                        .isReal(true)
+                        .build(),
+                EquipmentData.builder()
+                        .equipmentId(givenId)
+                        .time(givenStart.plusHours(2))
+                        .enabled(false)
+                        .isReal(true)
+                        .build()
+        ));
+
+        when(equipmentDataRepositoryMock.getStateChanges(any(String.class), any(String.class), any(Long.class)))
+                .thenReturn(toBuffer(givenList));
+        mockOnDate(givenId, givenStart);
+
+        // when
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(
+                List.of(givenId), givenStart, givenStop, false, QueryStrategy.PUSHDOWN
+        ).join();
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getUpMinutes()).isEqualTo(2 * 60);
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getUpScheduleMinutes()).isEqualTo((long) (1.5 * 60));
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getDownMinutes()).isEqualTo((long) (1.5 * 60));
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).isEmpty();
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(1))
+                .getStateChanges(any(), any(), any());
+        verify(equipmentDataRepositoryMock, Mockito.never())
+                .getData(any(), any(), any());
+    }
+
+    @Test
+    void testGetDataKeepsRequestedOrder() {
+        // given
+        List<Long> givenIds = List.of(3L, 1L, 2L);
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(0).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        Map<Long, EquipmentDataBuffer> givenData = new HashMap<>();
+        for (Long givenId : givenIds) {
+            givenData.put(givenId, toBuffer(List.of(
+                    EquipmentData.builder()
+                            .equipmentId(givenId)
+                            .u(givenId * 10d)
+                            .time(givenStart)
+                            .enabled(true)
+                            .isReal(true)
+                            .build()
+            )));
+            mockOnDate(givenId, givenStart);
+        }
+        when(equipmentDataRepositoryMock.getAllDataAsync(any(String.class), any(String.class), eq(givenIds)))
+                .thenReturn(CompletableFuture.completedFuture(givenData));
+
+        // when
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(givenIds, givenStart, givenStop, true).join();
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos()).hasSize(givenIds.size());
+        for (int i = 0; i < givenIds.size(); i++) {
+            softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(i).getEquipmentData().get(0).getEquipmentId())
+                    .isEqualTo(givenIds.get(i));
+            softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(i).getEquipmentData().get(0).getU())
+                    .isEqualTo(givenIds.get(i) * 10d);
+        }
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(1))
+                .getAllDataAsync(any(), any(), any());
+        verify(equipmentDataRepositoryMock, Mockito.never())
+                .getDataAsync(any(), any(), any());
+    }
+
+    @Test
+    void testGetDataAsyncKeepsRequestedOrder() {
+        // given
+        List<Long> givenIds = List.of(3L, 1L, 2L);
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(0).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        Map<Long, EquipmentDataBuffer> givenData = new HashMap<>();
+        for (Long givenId : givenIds) {
+            givenData.put(givenId, toBuffer(List.of(
+                    EquipmentData.builder()
+                            .equipmentId(givenId)
+                            .u(givenId * 10d)
+                            .time(givenStart)
+                            .enabled(true)
+                            .isReal(true)
+                            .build()
+            )));
+            mockOnDate(givenId, givenStart);
+        }
+        when(equipmentDataRepositoryMock.getAllDataAsync(any(String.class), any(String.class), any()))
+                .thenReturn(CompletableFuture.completedFuture(givenData));
+
+        // when
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(givenIds, givenStart, givenStop, true).join();
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos()).hasSize(givenIds.size());
+        for (int i = 0; i < givenIds.size(); i++) {
+            softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(i).getEquipmentData().get(0).getU())
+                    .isEqualTo(givenIds.get(i) * 10d);
+        }
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(1))
+                .getAllDataAsync(any(), any(), any());
+        verify(equipmentDataRepositoryMock, Mockito.never())
+                .getDataAsync(any(), any(), any());
+    }
+
+    @Test
+    void testGetDataAsyncSharesIdenticalRequests() {
+        // given
+        List<Long> givenIds = List.of(1L, 2L);
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(0).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        CompletableFuture<Map<Long, EquipmentDataBuffer>> givenFuture = new CompletableFuture<>();
+        when(equipmentDataRepositoryMock.getAllDataAsync(any(String.class), any(String.class), eq(givenIds)))
+                .thenReturn(givenFuture);
+        for (Long givenId : givenIds) {
+            mockOnDate(givenId, givenStart);
+        }
+
+        // when
+        var actualFirst = equipmentDataService.getDataAsync(List.of(1L, 2L), givenStart, givenStop, true);
+        var actualSecond = equipmentDataService.getDataAsync(List.of(2L, 1L), givenStart, givenStop, true);
+        Map<Long, EquipmentDataBuffer> givenData = new HashMap<>();
+        for (Long givenId : givenIds) {
+            givenData.put(givenId, toBuffer(List.of(
+                    EquipmentData.builder()
+                            .equipmentId(givenId)
+                            .u(givenId * 10d)
+                            .time(givenStart)
+                            .enabled(true)
+                            .isReal(true)
+                            .build()
+            )));
+        }
+        givenFuture.complete(givenData);
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualFirst.join().getEquipmentStatisticsDtos().get(0).getEquipmentData().get(0).getU())
+                .isEqualTo(10d);
+        softly.assertThat(actualSecond.join().getEquipmentStatisticsDtos().get(0).getEquipmentData().get(0).getU())
+                .isEqualTo(20d);
+        softly.assertThat(actualSecond.join().getEquipmentStatisticsDtos().get(1).getEquipmentData().get(0).getU())
+                .isEqualTo(10d);
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.times(1))
+                .getAllDataAsync(any(), any(), any());
+    }
+
+    @Test
+    void testStreamDataKeepsRequestedOrder() {
+        // given
+        List<Long> givenIds = List.of(3L, 1L, 2L);
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(16).withMinute(0).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(20).withMinute(0).withSecond(0).withNano(0);
+
+        Map<Long, EquipmentDataBuffer> givenData = new HashMap<>();
+        for (Long givenId : givenIds) {
+            givenData.put(givenId, toBuffer(List.of(
+                    EquipmentData.builder()
+                            .equipmentId(givenId)
+                            .u(givenId * 10d)
+                            .time(givenStart)
+                            .enabled(true)
+                            .isReal(true)
+                            .build()
+            )));
+            mockOnDate(givenId, givenStart);
+        }
+        when(equipmentDataRepositoryMock.getAllDataAsync(any(String.class), any(String.class), any()))
+                .thenAnswer(invocation -> {
+                    Collection<Long> ids = invocation.getArgument(2);
+                    Map<Long, EquipmentDataBuffer> result = new HashMap<>();
+                    ids.forEach(id -> result.put(id, givenData.get(id)));
+                    return CompletableFuture.completedFuture(result);
+                });
+
+        List<OffsetDateTime> actualPeriod = new ArrayList<>();
+        List<Long> actualIds = new ArrayList<>();
+        List<EquipmentStatisticsDto> actualDtos = new ArrayList<>();
+
+        // when
+        equipmentDataService.streamData(givenIds, givenStart, givenStop, true, new StatisticsStreamListener() {
+            @Override
+            public void onPeriod(OffsetDateTime start, OffsetDateTime end) {
+                actualPeriod.add(start);
+                actualPeriod.add(end);
+            }
+
+            @Override
+            public void onEquipment(Long equipmentId, EquipmentStatisticsDto equipmentStatistics) {
+                actualIds.add(equipmentId);
+                actualDtos.add(equipmentStatistics);
+            }
+        });
+
+        // expect
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualPeriod).hasSize(2);
+        softly.assertThat(actualPeriod.get(0).isEqual(givenStart)).isTrue();
+        softly.assertThat(actualPeriod.get(1).isEqual(givenStop)).isTrue();
+        softly.assertThat(actualIds).isEqualTo(givenIds);
+        for (int i = 0; i < givenIds.size(); i++) {
+            softly.assertThat(actualDtos.get(i).getEquipmentData().get(0).getU()).isEqualTo(givenIds.get(i) * 10d);
+        }
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.never())
+                .getDataAsync(any(), any(), any());
+    }
+
+    private void mockSchedules(Integer weekday, OffsetDateTime date, Long equipmentId, List<Schedule> schedules) {
+        for (var schedule : schedules) {
+            givenSchedules.add(
+                    Schedule.builder()
+                            .id(schedule.getId())
+                            .weekday(weekday)
+                            .date(date)
+                            .equipmentId(equipmentId)
+                            .isWorkday(schedule.getIsWorkday())
+                            .startTime(schedule.getStartTime())
+                            .endTime(schedule.getEndTime())
+                            .build()
+            );
+        }
+        when(scheduleRepositoryMock.findAll()).thenReturn(givenSchedules);
+        scheduleResolver.invalidate();
+    }
+
     private void mockOnDate(Long givenId, OffsetDateTime date) {
-        when(scheduleRepositoryMock.findAllByDateAndEquipmentIdOrderByDateAscWeekdayAsc(
-                eq(date.truncatedTo(ChronoUnit.DAYS)),
-                eq(givenId)
-        )).thenReturn(List.of(
+        mockSchedules(null, date.truncatedTo(ChronoUnit.DAYS), givenId, List.of(
                 Schedule.builder()
                         .id(1L)
                         .date(date.truncatedTo(ChronoUnit.DAYS))
@@ -2347,5 +2616,31 @@ public class EquipmentDataServiceTest {
         } catch (Exception e) {
             Assertions.fail("Exception should not have been thrown");
         }
+
+        // then
+        verify(equipmentPurgeServiceMock).start(givenId);
+        verify(equipmentDataRepositoryMock, Mockito.never()).delete(any());
+    }
+
+    @Test
+    void testGetDataHidesPurgedEquipment() {
+        // given
+        Long givenId = 1L;
+        final OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime givenStart = now.withHour(10).withMinute(0).withSecond(0).withNano(0);
+        OffsetDateTime givenStop = now.withHour(18).withMinute(0).withSecond(0).withNano(0);
+        mockOnDate(givenId, givenStart);
+        when(equipmentPurgeServiceMock.isPurged(givenId)).thenReturn(true);
+
+        // when
+        StatisticsDto actualDto = equipmentDataService.getDataAsync(List.of(givenId), givenStart, givenStop, true).join();
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos()).hasSize(1);
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getUpMinutes()).isEqualTo(0);
+        softly.assertThat(actualDto.getEquipmentStatisticsDtos().get(0).getEquipmentData()).isEmpty();
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, Mockito.never()).getDataAsync(any(), any(), any());
     }
 }
@@ -0,0 +1,137 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import ru.kpfu.machinemetrics.model.EquipmentPurge;
+import ru.kpfu.machinemetrics.properties.PurgeProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentPurgeRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EquipmentPurgeServiceTest {
+
+    private static final Long EQUIPMENT_ID = 1L;
+    private static final OffsetDateTime STOP = OffsetDateTime.parse("2023-03-20T00:00:00Z");
+
+    private EquipmentPurgeRepository equipmentPurgeRepositoryMock;
+    private EquipmentDataRepository equipmentDataRepositoryMock;
+    private EquipmentRollupRepository equipmentRollupRepositoryMock;
+    private EquipmentPurgeService equipmentPurgeService;
+
+    @BeforeEach
+    void setUp() {
+        equipmentPurgeRepositoryMock = mock(EquipmentPurgeRepository.class);
+        equipmentDataRepositoryMock = mock(EquipmentDataRepository.class);
+        equipmentRollupRepositoryMock = mock(EquipmentRollupRepository.class);
+        equipmentPurgeService = new EquipmentPurgeService(
+                new PurgeProperties(),
+                equipmentPurgeRepositoryMock,
+                equipmentDataRepositoryMock,
+                equipmentRollupRepositoryMock
+        );
+    }
+
+    @Test
+    void testStartTombstonesEquipment() {
+        // given
+        when(equipmentPurgeRepositoryMock.existsById(EQUIPMENT_ID)).thenReturn(false);
+
+        // when
+        equipmentPurgeService.start(EQUIPMENT_ID);
+
+        // then
+        ArgumentCaptor<EquipmentPurge> captor = ArgumentCaptor.forClass(EquipmentPurge.class);
+        verify(equipmentPurgeRepositoryMock).save(captor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(equipmentPurgeService.isPurged(EQUIPMENT_ID)).isTrue();
+        softly.assertThat(equipmentPurgeService.isPurged(2L)).isFalse();
+        softly.assertThat(captor.getValue().getEquipmentId()).isEqualTo(EQUIPMENT_ID);
+        softly.assertThat(captor.getValue().getPurgedUntil()).isNull();
+        softly.assertThat(captor.getValue().getStop()).isAfter(OffsetDateTime.now().plusDays(1));
+        softly.assertAll();
+        verify(equipmentDataRepositoryMock, never()).delete(any());
+    }
+
+    @Test
+    void testPurgeDeletesChunksFromFirstSample() {
+        // given
+        var givenPurge = EquipmentPurge.builder().equipmentId(EQUIPMENT_ID).stop(STOP).build();
+        when(equipmentPurgeRepositoryMock.existsById(EQUIPMENT_ID)).thenReturn(false);
+        equipmentPurgeService.start(EQUIPMENT_ID);
+        when(equipmentPurgeRepositoryMock.findAll()).thenReturn(List.of(givenPurge));
+        when(equipmentDataRepositoryMock.findFirstTime(EQUIPMENT_ID))
+                .thenReturn(OffsetDateTime.parse("2023-03-01T13:30:00+03:00"));
+
+        // when
+        equipmentPurgeService.purge();
+
+        // then
+        InOrder inOrder = inOrder(equipmentDataRepositoryMock, equipmentRollupRepositoryMock, equipmentPurgeRepositoryMock);
+        inOrder.verify(equipmentDataRepositoryMock)
+                .delete(EQUIPMENT_ID, "2023-03-01T00:00:00Z", "2023-03-08T00:00:00Z");
+        inOrder.verify(equipmentDataRepositoryMock)
+                .delete(EQUIPMENT_ID, "2023-03-08T00:00:00Z", "2023-03-15T00:00:00Z");
+        inOrder.verify(equipmentDataRepositoryMock)
+                .delete(EQUIPMENT_ID, "2023-03-15T00:00:00Z", "2023-03-20T00:00:00Z");
+        inOrder.verify(equipmentRollupRepositoryMock).deleteAllByEquipmentId(EQUIPMENT_ID);
+        inOrder.verify(equipmentPurgeRepositoryMock).delete(givenPurge);
+        verify(equipmentPurgeRepositoryMock, times(3)).save(givenPurge);
+
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(givenPurge.getPurgedUntil()).isEqualTo(STOP);
+        softly.assertThat(equipmentPurgeService.isPurged(EQUIPMENT_ID)).isFalse();
+        softly.assertAll();
+    }
+
+    @Test
+    void testPurgeResumesFromProgress() {
+        // given
+        var givenPurge = EquipmentPurge.builder()
+                .equipmentId(EQUIPMENT_ID)
+                .purgedUntil(OffsetDateTime.parse("2023-03-15T00:00:00Z"))
+                .stop(STOP)
+                .build();
+        when(equipmentPurgeRepositoryMock.findAll()).thenReturn(List.of(givenPurge));
+
+        // when
+        equipmentPurgeService.purge();
+
+        // then
+        verify(equipmentDataRepositoryMock, never()).findFirstTime(anyLong());
+        verify(equipmentDataRepositoryMock, times(1)).delete(anyLong(), anyString(), anyString());
+        verify(equipmentDataRepositoryMock)
+                .delete(EQUIPMENT_ID, "2023-03-15T00:00:00Z", "2023-03-20T00:00:00Z");
+        verify(equipmentPurgeRepositoryMock).delete(givenPurge);
+    }
+
+    @Test
+    void testPurgeWithoutSamples() {
+        // given
+        var givenPurge = EquipmentPurge.builder().equipmentId(EQUIPMENT_ID).stop(STOP).build();
+        when(equipmentPurgeRepositoryMock.findAll()).thenReturn(List.of(givenPurge));
+        when(equipmentDataRepositoryMock.findFirstTime(EQUIPMENT_ID)).thenReturn(null);
+
+        // when
+        equipmentPurgeService.purge();
+
+        // then
+        verify(equipmentDataRepositoryMock, never()).delete(anyLong(), anyString(), anyString());
+        verify(equipmentPurgeRepositoryMock).delete(givenPurge);
+    }
+}
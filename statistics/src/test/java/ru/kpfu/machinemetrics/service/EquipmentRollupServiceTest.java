@@ -0,0 +1,88 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.RollupResolution;
+import ru.kpfu.machinemetrics.properties.AppProperties;
+import ru.kpfu.machinemetrics.properties.BufferPoolProperties;
+import ru.kpfu.machinemetrics.properties.RollupProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+import ru.kpfu.machinemetrics.repository.EquipmentRollupRepository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EquipmentRollupServiceTest {
+
+    private static final Long EQUIPMENT_ID = 1L;
+    private static final OffsetDateTime LAST_HOUR = OffsetDateTime.parse("2023-03-20T10:00:00Z");
+    private static final OffsetDateTime UNTIL = OffsetDateTime.parse("2023-03-20T12:00:00Z");
+
+    private EquipmentDataRepository equipmentDataRepositoryMock;
+    private EquipmentRollupRepository equipmentRollupRepositoryMock;
+    private EquipmentRollupService equipmentRollupService;
+
+    @BeforeEach
+    void setUp() {
+        equipmentDataRepositoryMock = mock(EquipmentDataRepository.class);
+        equipmentRollupRepositoryMock = mock(EquipmentRollupRepository.class);
+        equipmentRollupService = new EquipmentRollupService(
+                new AppProperties(),
+                new RollupProperties(),
+                equipmentDataRepositoryMock,
+                equipmentRollupRepositoryMock,
+                new EquipmentDataBufferPool(new BufferPoolProperties()),
+                mock(EquipmentPurgeService.class)
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRollUpRollsUpLateHoursAgain() {
+        // given
+        var givenLastRollup = EquipmentRollup.builder()
+                .id(5L)
+                .equipmentId(EQUIPMENT_ID)
+                .resolution(RollupResolution.HOUR)
+                .bucketStart(LAST_HOUR)
+                .build();
+        when(equipmentRollupRepositoryMock.findFirstByEquipmentIdAndResolutionOrderByBucketStartDesc(
+                EQUIPMENT_ID,
+                RollupResolution.HOUR
+        )).thenReturn(Optional.of(givenLastRollup));
+        when(equipmentRollupRepositoryMock
+                .findAllByEquipmentIdAndResolutionAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        EQUIPMENT_ID,
+                        RollupResolution.HOUR,
+                        LAST_HOUR,
+                        UNTIL
+                )).thenReturn(List.of(givenLastRollup));
+        when(equipmentDataRepositoryMock.getData(any(), any(), eq(EQUIPMENT_ID))).thenReturn(new EquipmentDataBuffer());
+
+        // when
+        equipmentRollupService.rollUp(EQUIPMENT_ID, UNTIL);
+
+        // then
+        verify(equipmentDataRepositoryMock).getData("2023-03-20T10:00:00Z", "2023-03-20T12:00:00Z", EQUIPMENT_ID);
+        ArgumentCaptor<List<EquipmentRollup>> captor = ArgumentCaptor.forClass(List.class);
+        verify(equipmentRollupRepositoryMock).saveAll(captor.capture());
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(captor.getValue())
+                .extracting(EquipmentRollup::getBucketStart)
+                .containsExactly(LAST_HOUR, LAST_HOUR.plusHours(1));
+        softly.assertThat(captor.getValue()).extracting(EquipmentRollup::getId).containsExactly(5L, null);
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,126 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.properties.BufferPoolProperties;
+import ru.kpfu.machinemetrics.properties.LiveWindowProperties;
+import ru.kpfu.machinemetrics.repository.EquipmentDataBufferPool;
+import ru.kpfu.machinemetrics.repository.EquipmentDataRepository;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LiveWindowServiceTest {
+
+    private static final Long EQUIPMENT_ID = 1L;
+
+    private EquipmentDataRepository equipmentDataRepositoryMock;
+    private LiveWindowService liveWindowService;
+
+    @BeforeEach
+    void setUp() {
+        equipmentDataRepositoryMock = mock(EquipmentDataRepository.class);
+        liveWindowService = new LiveWindowService(
+                new LiveWindowProperties(),
+                equipmentDataRepositoryMock,
+                new EquipmentDataBufferPool(new BufferPoolProperties()),
+                mock(EquipmentPurgeService.class)
+        );
+        when(equipmentDataRepositoryMock.getEquipmentIds()).thenReturn(List.of(EQUIPMENT_ID));
+    }
+
+    @Test
+    void testCalculateMatchesRawData() {
+        // given
+        OffsetDateTime end = OffsetDateTime.now(ZoneOffset.ofHours(3)).minusMinutes(2).truncatedTo(ChronoUnit.MINUTES);
+        end = end.withMinute(end.getMinute() / 5 * 5);
+        OffsetDateTime start = end.minusHours(1);
+        Map<OffsetDateTime, Schedule> schedules = schedules(start, end);
+
+        long[] givenTimes = {
+                start.minusHours(3).toEpochSecond(),
+                start.plusMinutes(7).toEpochSecond(),
+                start.plusMinutes(31).toEpochSecond(),
+                end.minusMinutes(1).toEpochSecond()
+        };
+        boolean[] givenEnabled = {true, false, true, false};
+        when(equipmentDataRepositoryMock.getAllData(anyString(), anyString(), anyCollection()))
+                .thenAnswer(invocation -> Map.of(EQUIPMENT_ID, buffer(givenTimes, givenEnabled)));
+
+        // when
+        liveWindowService.poll();
+        EquipmentStatisticsDto actual = liveWindowService.calculate(EQUIPMENT_ID, schedules, start, end, true);
+        EquipmentStatisticsDto expected = StatisticsCalculator.calculate(
+                buffer(givenTimes, givenEnabled),
+                schedules,
+                start,
+                end
+        );
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).isNotNull();
+        softly.assertThat(actual.getUpMinutes()).isEqualTo(expected.getUpMinutes());
+        softly.assertThat(actual.getDownMinutes()).isEqualTo(expected.getDownMinutes());
+        softly.assertThat(actual.getUpScheduleMinutes()).isEqualTo(expected.getUpScheduleMinutes());
+        softly.assertThat(actual.getDownScheduleMinutes()).isEqualTo(expected.getDownScheduleMinutes());
+        softly.assertThat(actual.getEquipmentData()).hasSameSizeAs(expected.getEquipmentData());
+        softly.assertAll();
+    }
+
+    @Test
+    void testCalculateReturnsNullWhenNotCovered() {
+        // given
+        OffsetDateTime end = OffsetDateTime.now(ZoneOffset.ofHours(3)).truncatedTo(ChronoUnit.MINUTES);
+        OffsetDateTime start = end.minusHours(1);
+        when(equipmentDataRepositoryMock.getAllData(anyString(), anyString(), anyCollection()))
+                .thenAnswer(invocation -> Map.of(EQUIPMENT_ID, new EquipmentDataBuffer()));
+
+        // when
+        var actualBeforePoll = liveWindowService.calculate(EQUIPMENT_ID, schedules(start, end), start, end, true);
+        liveWindowService.poll();
+        var actualInFuture = liveWindowService.calculate(EQUIPMENT_ID, schedules(start, end), start, end.plusHours(1), true);
+        var actualTooOld = liveWindowService.calculate(
+                EQUIPMENT_ID, schedules(start, end), start.minusHours(2), end.minusHours(2), true
+        );
+        var actualUnknown = liveWindowService.calculate(2L, schedules(start, end), start, end.minusMinutes(5), true);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualBeforePoll).isNull();
+        softly.assertThat(actualInFuture).isNull();
+        softly.assertThat(actualTooOld).isNull();
+        softly.assertThat(actualUnknown).isNull();
+        softly.assertAll();
+    }
+
+    private static Map<OffsetDateTime, Schedule> schedules(OffsetDateTime start, OffsetDateTime end) {
+        Map<OffsetDateTime, Schedule> result = new HashMap<>();
+        for (var day = start.truncatedTo(ChronoUnit.DAYS); !day.isAfter(end); day = day.plusDays(1)) {
+            result.put(day, Schedule.builder().startTime(0).endTime(23 * 60 + 59).build());
+        }
+        return result;
+    }
+
+    private static EquipmentDataBuffer buffer(long[] times, boolean[] enabled) {
+        EquipmentDataBuffer result = new EquipmentDataBuffer();
+        result.setEquipmentId(EQUIPMENT_ID);
+        for (int i = 0; i < times.length; i++) {
+            result.add(times[i], 10d * i, enabled[i], true);
+        }
+        return result;
+    }
+}
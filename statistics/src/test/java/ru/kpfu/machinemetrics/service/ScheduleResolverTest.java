@@ -0,0 +1,107 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import ru.kpfu.machinemetrics.model.Schedule;
+import ru.kpfu.machinemetrics.repository.ScheduleRepository;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@TestPropertySource("classpath:application.yml")
+public class ScheduleResolverTest {
+
+    private static final OffsetDateTime MONDAY = OffsetDateTime.of(2023, 5, 15, 0, 0, 0, 0, ZoneOffset.of("+3"));
+
+    @Autowired
+    private ScheduleResolver scheduleResolver;
+
+    @MockBean
+    private ScheduleRepository scheduleRepositoryMock;
+
+    @BeforeEach
+    void setUp() {
+        scheduleResolver.invalidate();
+    }
+
+    @Test
+    void testResolveFallbackOrder() {
+        // given
+        Long givenId = 1L;
+        Schedule equipmentDate = Schedule.builder().id(1L).equipmentId(givenId).date(MONDAY).build();
+        Schedule equipmentWeekday = Schedule.builder().id(2L).equipmentId(givenId).weekday(2).build();
+        Schedule equipmentDefault = Schedule.builder().id(3L).equipmentId(3L).build();
+        Schedule globalDate = Schedule.builder().id(4L).date(MONDAY.plusDays(7)).build();
+        Schedule globalWeekday = Schedule.builder().id(5L).weekday(1).build();
+        when(scheduleRepositoryMock.findAll()).thenReturn(List.of(
+                globalWeekday, globalDate, equipmentDefault, equipmentWeekday, equipmentDate
+        ));
+
+        // when
+        var actualEquipmentDate = scheduleResolver.resolve(givenId, MONDAY);
+        var actualEquipmentWeekday = scheduleResolver.resolve(givenId, MONDAY.plusDays(1));
+        var actualEquipmentDefault = scheduleResolver.resolve(3L, MONDAY.plusDays(7));
+        var actualGlobalDate = scheduleResolver.resolve(2L, MONDAY.plusDays(7));
+        var actualGlobalWeekday = scheduleResolver.resolve(2L, MONDAY.plusDays(14));
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualEquipmentDate).isSameAs(equipmentDate);
+        softly.assertThat(actualEquipmentWeekday).isSameAs(equipmentWeekday);
+        softly.assertThat(actualEquipmentDefault).isSameAs(equipmentDefault);
+        softly.assertThat(actualGlobalDate).isSameAs(globalDate);
+        softly.assertThat(actualGlobalWeekday).isSameAs(globalWeekday);
+        softly.assertAll();
+        verify(scheduleRepositoryMock, Mockito.times(1)).findAll();
+    }
+
+    @Test
+    void testResolveDefaultOrderedByWeekday() {
+        // given
+        Schedule withoutWeekday = Schedule.builder().id(1L).build();
+        Schedule tuesday = Schedule.builder().id(2L).weekday(2).build();
+        Schedule monday = Schedule.builder().id(3L).weekday(1).build();
+        when(scheduleRepositoryMock.findAll()).thenReturn(List.of(withoutWeekday, tuesday, monday));
+
+        // when
+        var actual = scheduleResolver.resolve(1L, MONDAY.plusDays(2));
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actual).isSameAs(monday);
+        softly.assertAll();
+    }
+
+    @Test
+    void testInvalidateReloadsSchedules() {
+        // given
+        Schedule oldSchedule = Schedule.builder().id(1L).build();
+        Schedule newSchedule = Schedule.builder().id(2L).build();
+        when(scheduleRepositoryMock.findAll()).thenReturn(List.of(oldSchedule), List.of(newSchedule));
+
+        // when
+        var actualBefore = scheduleResolver.resolve(1L, MONDAY);
+        var actualCached = scheduleResolver.resolve(1L, MONDAY);
+        scheduleResolver.invalidate();
+        var actualAfter = scheduleResolver.resolve(1L, MONDAY);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(actualBefore).isSameAs(oldSchedule);
+        softly.assertThat(actualCached).isSameAs(oldSchedule);
+        softly.assertThat(actualAfter).isSameAs(newSchedule);
+        softly.assertAll();
+        verify(scheduleRepositoryMock, Mockito.times(2)).findAll();
+    }
+}
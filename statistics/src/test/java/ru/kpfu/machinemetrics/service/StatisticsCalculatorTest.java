@@ -0,0 +1,409 @@
+package ru.kpfu.machinemetrics.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import ru.kpfu.machinemetrics.dto.EquipmentStatisticsDto;
+import ru.kpfu.machinemetrics.model.EquipmentData;
+import ru.kpfu.machinemetrics.model.EquipmentDataBuffer;
+import ru.kpfu.machinemetrics.model.EquipmentDayStatistics;
+import ru.kpfu.machinemetrics.model.EquipmentRollup;
+import ru.kpfu.machinemetrics.model.Schedule;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class StatisticsCalculatorTest {
+
+    private static final ZoneOffset ZONE = ZoneOffset.of("+3");
+    private static final OffsetDateTime BASE_DAY = OffsetDateTime.of(2023, 5, 10, 0, 0, 0, 0, ZONE);
+
+    @Test
+    void testCalculateMatchesLegacyCalculator() {
+        // given
+        Random random = new Random(20230510L);
+        SoftAssertions softly = new SoftAssertions();
+
+        for (int scenario = 0; scenario < 2000; scenario++) {
+            OffsetDateTime start = BASE_DAY.plusMinutes(random.nextInt(4) == 0 ? 0 : random.nextInt(24 * 60));
+            OffsetDateTime end = start.plusMinutes(randomSpanMinutes(random));
+            ArrayList<EquipmentData> data = randomData(random, start, end);
+            Map<OffsetDateTime, Schedule> schedules = randomSchedules(random, start, end);
+
+            // when
+            EquipmentStatisticsDto expected = LegacyStatisticsCalculator.calculate(copyOf(data), schedules, start, end);
+            EquipmentStatisticsDto actual = StatisticsCalculator.calculate(toBuffer(data), schedules, start, end);
+
+            // then
+            String description = String.format("scenario %d [%s, %s]", scenario, start, end);
+            softly.assertThat(actual.getUpMinutes()).as(description).isEqualTo(expected.getUpMinutes());
+            softly.assertThat(actual.getDownMinutes()).as(description).isEqualTo(expected.getDownMinutes());
+            softly.assertThat(actual.getUpScheduleMinutes()).as(description).isEqualTo(expected.getUpScheduleMinutes());
+            softly.assertThat(actual.getDownScheduleMinutes()).as(description).isEqualTo(expected.getDownScheduleMinutes());
+            softly.assertThat(actual.getUpNotScheduleMinutes()).as(description).isEqualTo(expected.getUpNotScheduleMinutes());
+            softly.assertThat(actual.getDownNotScheduleMinutes()).as(description).isEqualTo(expected.getDownNotScheduleMinutes());
+            softly.assertThat(actual.getUpSchedulePercent()).as(description).isEqualTo(expected.getUpSchedulePercent());
+            softly.assertThat(actual.getDownSchedulePercent()).as(description).isEqualTo(expected.getDownSchedulePercent());
+            softly.assertThat(actual.getEquipmentData()).as(description).hasSameSizeAs(expected.getEquipmentData());
+            for (int i = 0; i < Math.min(actual.getEquipmentData().size(), expected.getEquipmentData().size()); i++) {
+                var actualItem = actual.getEquipmentData().get(i);
+                var expectedItem = expected.getEquipmentData().get(i);
+                softly.assertThat(actualItem.getTime()).as(description).isEqualTo(expectedItem.getTime());
+                softly.assertThat(actualItem.getU()).as(description).isEqualTo(expectedItem.getU());
+                softly.assertThat(actualItem.getEnabled()).as(description).isEqualTo(expectedItem.getEnabled());
+                softly.assertThat(actualItem.getEquipmentId()).as(description).isEqualTo(expectedItem.getEquipmentId());
+                softly.assertThat(actualItem.getDisabledDuringActiveTime()).as(description)
+                        .isEqualTo(expectedItem.getDisabledDuringActiveTime());
+                softly.assertThat(actualItem.getEnabledDuringPassiveTime()).as(description)
+                        .isEqualTo(expectedItem.getEnabledDuringPassiveTime());
+            }
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    void testCalculateDoesNotModifyGivenData() {
+        // given
+        OffsetDateTime start = BASE_DAY.withHour(16);
+        OffsetDateTime end = start.plusDays(2);
+        EquipmentDataBuffer data = toBuffer(List.of(
+                EquipmentData.builder().equipmentId(1L).u(30d).enabled(true).isReal(true).time(start.plusHours(1)).build(),
+                EquipmentData.builder().equipmentId(1L).u(null).enabled(false).isReal(true).time(start.plusDays(1)).build()
+        ));
+
+        // when
+        var actual = StatisticsCalculator.calculate(data, randomSchedules(new Random(1L), start, end), start, end);
+
+        // then
+        SoftAssertions softly = new SoftAssertions();
+        softly.assertThat(data.size()).isEqualTo(2);
+        softly.assertThat(data.getTime(0)).isEqualTo(start.plusHours(1).toEpochSecond());
+        softly.assertThat(data.getTime(1)).isEqualTo(start.plusDays(1).toEpochSecond());
+        softly.assertThat(actual.getEquipmentData()).hasSize(2);
+        softly.assertThat(actual.getEquipmentData().get(0).getU()).isEqualTo(30d);
+        softly.assertThat(actual.getEquipmentData().get(1).getU()).isNull();
+        softly.assertAll();
+    }
+
+    @Test
+    void testCalculateWithRollupsMatchesRawData() {
+        // given
+        Random random = new Random(20230601L);
+        SoftAssertions softly = new SoftAssertions();
+
+        for (int scenario = 0; scenario < 2000; scenario++) {
+            OffsetDateTime start = BASE_DAY.plusMinutes(random.nextInt(4) == 0 ? 0 : random.nextInt(24 * 60));
+            OffsetDateTime end = start.plusMinutes(randomSpanMinutes(random));
+            ArrayList<EquipmentData> data = randomData(random, start, end);
+            Map<OffsetDateTime, Schedule> schedules = randomSchedules(random, start, end, false);
+
+            OffsetDateTime rollupStart = start.truncatedTo(ChronoUnit.HOURS);
+            if (rollupStart.isBefore(start)) {
+                rollupStart = rollupStart.plusHours(1);
+            }
+            OffsetDateTime rollupEnd = end.truncatedTo(ChronoUnit.HOURS);
+            if (!rollupStart.isBefore(rollupEnd)) {
+                continue;
+            }
+            final OffsetDateTime headEnd = rollupStart;
+            final OffsetDateTime tailStart = rollupEnd;
+            var head = toBuffer(data.stream().filter(item -> item.getTime().isBefore(headEnd)).toList());
+            var tail = toBuffer(data.stream().filter(item -> !item.getTime().isBefore(tailStart)).toList());
+            var rollups = randomRollups(
+                    random,
+                    toBuffer(data.stream().filter(item -> item.getTime().isBefore(tailStart)).toList()),
+                    rollupStart,
+                    rollupEnd
+            );
+
+            // when
+            EquipmentStatisticsDto expected = StatisticsCalculator.calculate(
+                    toBuffer(data), List.of(), toBuffer(List.of()), schedules, start, end, false
+            );
+            EquipmentStatisticsDto actual = StatisticsCalculator.calculate(
+                    head, rollups, tail, schedules, start, end, false
+            );
+
+            // then
+            String description = String.format("scenario %d [%s, %s]", scenario, start, end);
+            softly.assertThat(actual.getUpMinutes()).as(description).isEqualTo(expected.getUpMinutes());
+            softly.assertThat(actual.getDownMinutes()).as(description).isEqualTo(expected.getDownMinutes());
+            softly.assertThat(actual.getUpScheduleMinutes()).as(description).isEqualTo(expected.getUpScheduleMinutes());
+            softly.assertThat(actual.getDownScheduleMinutes()).as(description).isEqualTo(expected.getDownScheduleMinutes());
+            softly.assertThat(actual.getUpNotScheduleMinutes()).as(description).isEqualTo(expected.getUpNotScheduleMinutes());
+            softly.assertThat(actual.getDownNotScheduleMinutes()).as(description).isEqualTo(expected.getDownNotScheduleMinutes());
+            softly.assertThat(actual.getUpSchedulePercent()).as(description).isEqualTo(expected.getUpSchedulePercent());
+            softly.assertThat(actual.getEquipmentData()).as(description).isEmpty();
+            softly.assertThat(expected.getEquipmentData()).as(description).isEmpty();
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    void testCalculateWithStateChangesMatchesRawData() {
+        // given
+        Random random = new Random(20230615L);
+        SoftAssertions softly = new SoftAssertions();
+
+        for (int scenario = 0; scenario < 2000; scenario++) {
+            OffsetDateTime start = BASE_DAY.plusMinutes(random.nextInt(4) == 0 ? 0 : random.nextInt(24 * 60));
+            OffsetDateTime end = start.plusMinutes(randomSpanMinutes(random));
+            ArrayList<EquipmentData> data = randomData(random, start, end);
+            // the service does not use state changes for inverted schedules
+            Map<OffsetDateTime, Schedule> schedules = randomSchedules(random, start, end, false);
+
+            // when
+            EquipmentStatisticsDto expected = StatisticsCalculator.calculate(
+                    toBuffer(data), List.of(), toBuffer(List.of()), schedules, start, end, false
+            );
+            EquipmentStatisticsDto actual = StatisticsCalculator.calculate(
+                    toBuffer(stateChanges(data)), List.of(), toBuffer(List.of()), schedules, start, end, false
+            );
+
+            // then
+            String description = String.format("scenario %d [%s, %s]", scenario, start, end);
+            softly.assertThat(actual.getUpMinutes()).as(description).isEqualTo(expected.getUpMinutes());
+            softly.assertThat(actual.getDownMinutes()).as(description).isEqualTo(expected.getDownMinutes());
+            softly.assertThat(actual.getUpScheduleMinutes()).as(description).isEqualTo(expected.getUpScheduleMinutes());
+            softly.assertThat(actual.getDownScheduleMinutes()).as(description).isEqualTo(expected.getDownScheduleMinutes());
+            softly.assertThat(actual.getUpNotScheduleMinutes()).as(description).isEqualTo(expected.getUpNotScheduleMinutes());
+            softly.assertThat(actual.getDownNotScheduleMinutes()).as(description).isEqualTo(expected.getDownNotScheduleMinutes());
+            softly.assertThat(actual.getUpSchedulePercent()).as(description).isEqualTo(expected.getUpSchedulePercent());
+            softly.assertThat(actual.getDownSchedulePercent()).as(description).isEqualTo(expected.getDownSchedulePercent());
+            softly.assertThat(actual.getEquipmentData()).as(description).isEmpty();
+        }
+        softly.assertAll();
+    }
+
+    @Test
+    void testCalculateFromDaysMatchesWholePeriod() {
+        // given
+        Random random = new Random(20230720L);
+        SoftAssertions softly = new SoftAssertions();
+
+        for (int scenario = 0; scenario < 2000; scenario++) {
+            OffsetDateTime start = BASE_DAY.plusMinutes(random.nextInt(4) == 0 ? 0 : random.nextInt(24 * 60));
+            OffsetDateTime end = start.plusMinutes(randomSpanMinutes(random));
+            ArrayList<EquipmentData> data = randomData(random, start, end);
+            Map<OffsetDateTime, Schedule> schedules = randomSchedules(random, start, end);
+            List<OffsetDateTime> dates = schedules.keySet().stream().sorted().toList();
+
+            // when
+            EquipmentStatisticsDto expected = StatisticsCalculator.calculate(
+                    toBuffer(slice(data, start, end)), List.of(), toBuffer(List.of()), schedules, start, end, true
+            );
+
+            // days cached by earlier calculations of the day alone, as the day cache does
+            EquipmentDayStatistics[] days = new EquipmentDayStatistics[dates.size()];
+            boolean hasCached = false;
+            for (int i = 0; i < dates.size(); i++) {
+                OffsetDateTime date = dates.get(i);
+                OffsetDateTime nextDate = date.plusDays(1);
+                List<EquipmentData> dayData = slice(data, date, nextDate);
+                if (!date.isBefore(start) && !nextDate.isAfter(end) && random.nextBoolean()
+                        && !dayData.isEmpty() && dayData.get(0).getTime().isBefore(nextDate)) {
+                    days[i] = StatisticsCalculator.calculateDays(
+                            toBuffer(dayData), Map.of(date, schedules.get(date)), date, nextDate, true, false
+                    ).get(0);
+                    hasCached = true;
+                }
+            }
+            // the rest calculated in runs between the cached days
+            boolean hasData = hasCached || !slice(data, start, end).isEmpty();
+            for (int from = 0; from < dates.size(); from++) {
+                if (days[from] != null) {
+                    continue;
+                }
+                int to = from;
+                while (to + 1 < dates.size() && days[to + 1] == null) {
+                    to++;
+                }
+                OffsetDateTime runStart = dates.get(from).isAfter(start) ? dates.get(from) : start;
+                OffsetDateTime runEnd = to + 1 < dates.size() ? dates.get(to + 1) : end;
+                Map<OffsetDateTime, Schedule> runSchedules = new HashMap<>();
+                for (int i = from; i <= to; i++) {
+                    runSchedules.put(dates.get(i), schedules.get(dates.get(i)));
+                }
+                var runDays = StatisticsCalculator.calculateDays(
+                        toBuffer(runStart.isBefore(runEnd) ? slice(data, runStart, runEnd) : List.of()),
+                        runSchedules,
+                        runStart,
+                        runEnd,
+                        true,
+                        hasData
+                );
+                for (int i = from; i <= to; i++) {
+                    days[i] = runDays.get(i - from);
+                }
+                from = to;
+            }
+            EquipmentStatisticsDto actual = StatisticsCalculator.calculate(List.of(days), start, end);
+
+            // then
+            String description = String.format("scenario %d [%s, %s]", scenario, start, end);
+            softly.assertThat(actual.getUpMinutes()).as(description).isEqualTo(expected.getUpMinutes());
+            softly.assertThat(actual.getDownMinutes()).as(description).isEqualTo(expected.getDownMinutes());
+            softly.assertThat(actual.getUpScheduleMinutes()).as(description).isEqualTo(expected.getUpScheduleMinutes());
+            softly.assertThat(actual.getDownScheduleMinutes()).as(description).isEqualTo(expected.getDownScheduleMinutes());
+            softly.assertThat(actual.getUpSchedulePercent()).as(description).isEqualTo(expected.getUpSchedulePercent());
+            softly.assertThat(actual.getEquipmentData()).as(description).hasSameSizeAs(expected.getEquipmentData());
+            for (int i = 0; i < Math.min(actual.getEquipmentData().size(), expected.getEquipmentData().size()); i++) {
+                softly.assertThat(actual.getEquipmentData().get(i).getTime()).as(description)
+                        .isEqualTo(expected.getEquipmentData().get(i).getTime());
+                softly.assertThat(actual.getEquipmentData().get(i).getEnabled()).as(description)
+                        .isEqualTo(expected.getEquipmentData().get(i).getEnabled());
+            }
+        }
+        softly.assertAll();
+    }
+
+    /**
+     * What the repository returns for the period: the last sample before it and the samples inside it.
+     */
+    private static List<EquipmentData> slice(List<EquipmentData> data, OffsetDateTime from, OffsetDateTime to) {
+        List<EquipmentData> result = new ArrayList<>();
+        for (var item : data) {
+            if (item.getTime().isBefore(from)) {
+                result.clear();
+                result.add(item);
+            } else if (item.getTime().isBefore(to)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Does what the state change query does in InfluxDB: {@code difference(keepFirst: true)} over {@code enabled} as
+     * 0/1 and dropping the zero differences keeps the first sample and every sample that changes the state.
+     */
+    private static List<EquipmentData> stateChanges(List<EquipmentData> data) {
+        List<EquipmentData> result = new ArrayList<>();
+        Boolean previous = null;
+        for (var item : data) {
+            if (!item.getEnabled().equals(previous)) {
+                result.add(
+                        EquipmentData.builder()
+                                .equipmentId(item.getEquipmentId())
+                                .enabled(item.getEnabled())
+                                .time(item.getTime())
+                                .isReal(item.isReal())
+                                .build()
+                );
+            }
+            previous = item.getEnabled();
+        }
+        return result;
+    }
+
+    private static List<EquipmentRollup> randomRollups(
+            Random random,
+            EquipmentDataBuffer data,
+            OffsetDateTime from,
+            OffsetDateTime to
+    ) {
+        var hourlyRollups = EquipmentRollupBuilder.buildHourly(data, from, to);
+        List<EquipmentRollup> result = new ArrayList<>();
+        for (int i = 0; i < hourlyRollups.size(); ) {
+            var bucketStart = hourlyRollups.get(i).getBucketStart();
+            if (bucketStart.getHour() == 0 && i + 24 <= hourlyRollups.size() && random.nextBoolean()) {
+                result.add(EquipmentRollupBuilder.buildDaily(hourlyRollups.subList(i, i + 24)));
+                i += 24;
+            } else {
+                result.add(hourlyRollups.get(i));
+                i++;
+            }
+        }
+        return result;
+    }
+
+    private static long randomSpanMinutes(Random random) {
+        return switch (random.nextInt(3)) {
+            case 0 -> random.nextInt(3 * 60);
+            case 1 -> random.nextInt(3 * 24 * 60);
+            default -> random.nextInt(10 * 24 * 60);
+        };
+    }
+
+    private static ArrayList<EquipmentData> randomData(Random random, OffsetDateTime start, OffsetDateTime end) {
+        ArrayList<EquipmentData> result = new ArrayList<>();
+        if (random.nextInt(10) == 0) {
+            return result;
+        }
+        if (random.nextBoolean()) {
+            result.add(randomItem(random, start.minusMinutes(1 + random.nextInt(3 * 24 * 60))));
+        }
+        int maxStep = random.nextBoolean() ? 5 : 6 * 60;
+        for (
+                OffsetDateTime time = start.plusMinutes(random.nextInt(maxStep));
+                time.isBefore(end);
+                time = time.plusMinutes(1 + random.nextInt(maxStep))
+        ) {
+            result.add(randomItem(random, time));
+        }
+        if (random.nextInt(4) == 0) {
+            result.add(randomItem(random, end));
+        }
+        return result;
+    }
+
+    private static EquipmentData randomItem(Random random, OffsetDateTime time) {
+        return EquipmentData.builder()
+                .equipmentId(1L)
+                .u(random.nextDouble() * 100)
+                .enabled(random.nextBoolean())
+                .time(time)
+                .isReal(true)
+                .build();
+    }
+
+    private static Map<OffsetDateTime, Schedule> randomSchedules(Random random, OffsetDateTime start, OffsetDateTime end) {
+        return randomSchedules(random, start, end, true);
+    }
+
+    private static Map<OffsetDateTime, Schedule> randomSchedules(
+            Random random,
+            OffsetDateTime start,
+            OffsetDateTime end,
+            boolean allowInverted
+    ) {
+        Map<OffsetDateTime, Schedule> result = new HashMap<>();
+        OffsetDateTime endDay = end.truncatedTo(ChronoUnit.DAYS);
+        for (OffsetDateTime day = start.truncatedTo(ChronoUnit.DAYS); !day.isAfter(endDay); day = day.plusDays(1)) {
+            int startTime = random.nextInt(24 * 60);
+            int endTime = allowInverted && random.nextInt(8) == 0 ? random.nextInt(24 * 60) : startTime + random.nextInt(24 * 60 - startTime);
+            result.put(day, Schedule.builder().id(1L).startTime(startTime).endTime(endTime).build());
+        }
+        return result;
+    }
+
+    private static EquipmentDataBuffer toBuffer(List<EquipmentData> data) {
+        EquipmentDataBuffer result = new EquipmentDataBuffer(1);
+        result.setEquipmentId(1L);
+        for (var item : data) {
+            result.add(item.getTime().toEpochSecond(), item.getU(), item.getEnabled(), item.isReal());
+        }
+        return result;
+    }
+
+    private static ArrayList<EquipmentData> copyOf(List<EquipmentData> data) {
+        ArrayList<EquipmentData> result = new ArrayList<>();
+        for (var item : data) {
+            result.add(
+                    EquipmentData.builder()
+                            .equipmentId(item.getEquipmentId())
+                            .u(item.getU())
+                            .enabled(item.getEnabled())
+                            .time(item.getTime())
+                            .isReal(item.isReal())
+                            .build()
+            );
+        }
+        return result;
+    }
+}